@@ -0,0 +1,152 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.bench;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Benchmark of the string to number conversions: ScriptRuntime.toNumber
+ * and the global parseInt and parseFloat functions.
+ * <p>
+ * Each operation converts every string of an input set once. The "int"
+ * set holds short decimal integers like request parameters usually are,
+ * "mixed" adds decimals, exponents, hex, whitespace and invalid input.
+ * <p>
+ * Usage: NumberParsingBenchmark [toNumber|parseInt|parseFloat|all]
+ *                               [int|mixed|all] [threads]
+ * where threads is a comma-separated list and defaults to 1.
+ */
+public class NumberParsingBenchmark
+{
+    static final String[] INT_INPUTS = {
+        "0", "1", "7", "42", "100", "255", "1024", "65535", "123456",
+        "2147483647"
+    };
+
+    static final String[] MIXED_INPUTS = {
+        "42", " 17 ", "-3", "3.14159", "0.5", "1e3", "-2.5E-3", "0x1F",
+        "Infinity", "", "abc", "12px", "1.7976931348623157e308", "\t9\n"
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        String which = args.length > 0 ? args[0] : "all";
+        String inputs = args.length > 1 ? args[1] : "all";
+        int[] threadCounts = ThreadScalingRunner.parseThreadCounts(
+            args.length > 2 ? args[2] : "1");
+
+        ContextFactory factory = new ContextFactory();
+        Context cx = factory.enterContext();
+        final Scriptable scope;
+        try {
+            scope = cx.initStandardObjects(null, true);
+        } finally {
+            Context.exit();
+        }
+
+        String[] methods = { "toNumber", "parseInt", "parseFloat" };
+        for (int i = 0; i != methods.length; ++i) {
+            if (!which.equals(methods[i]) && !which.equals("all")) {
+                continue;
+            }
+            if (inputs.equals("int") || inputs.equals("all")) {
+                newRunner(factory, scope, methods[i], INT_INPUTS)
+                    .report(methods[i] + ": int", threadCounts);
+            }
+            if (inputs.equals("mixed") || inputs.equals("all")) {
+                newRunner(factory, scope, methods[i], MIXED_INPUTS)
+                    .report(methods[i] + ": mixed", threadCounts);
+            }
+        }
+    }
+
+    private static ThreadScalingRunner newRunner(ContextFactory factory,
+                                                 final Scriptable scope,
+                                                 final String method,
+                                                 final String[] inputs)
+    {
+        return new ThreadScalingRunner(factory, 1000, 2000) {
+            protected Operation newOperation(Context cx) {
+                if (method.equals("toNumber")) {
+                    return new Operation() {
+                        public void run(Context cx) {
+                            double sum = 0;
+                            for (int i = 0; i != inputs.length; ++i) {
+                                sum += ScriptRuntime.toNumber(inputs[i]);
+                            }
+                            sink(sum);
+                        }
+                    };
+                }
+                final Function f = (Function)ScriptableObject.getProperty(
+                    scope, method);
+                final Object[][] argsList = new Object[inputs.length][];
+                for (int i = 0; i != inputs.length; ++i) {
+                    argsList[i] = new Object[] { inputs[i] };
+                }
+                return new Operation() {
+                    public void run(Context cx) {
+                        double sum = 0;
+                        for (int i = 0; i != argsList.length; ++i) {
+                            Object r = f.call(cx, scope, scope, argsList[i]);
+                            sum += ((Number)r).doubleValue();
+                        }
+                        sink(sum);
+                    }
+                };
+            }
+        };
+    }
+
+    static volatile double blackhole;
+
+    /**
+     * Keep the JIT from dropping the conversions as dead code.
+     */
+    static void sink(double d)
+    {
+        if (d == 12345.678) {
+            blackhole = d;
+        }
+    }
+}
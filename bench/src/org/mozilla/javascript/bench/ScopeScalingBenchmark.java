@@ -0,0 +1,135 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.bench;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Thread-scaling benchmark for a sealed standard-library scope shared by
+ * all threads, as used by servers that run one script per request thread.
+ * <p>
+ * Every thread gets its own top-level scope whose prototype is the shared
+ * sealed scope. The "lookup" workload reads properties of the shared
+ * prototypes directly through ScriptableObject.getProperty; the "script"
+ * workload runs a precompiled script calling standard-library methods.
+ * <p>
+ * Usage: ScopeScalingBenchmark [lookup|script|all] [threads] [optLevel]
+ * where threads is a comma-separated list and defaults to 1,2,4,...,64.
+ */
+public class ScopeScalingBenchmark
+{
+    static final String SCRIPT =
+        "var a = [3, 1, 2];\n"
+        + "a.push(Math.max(a[0], a[1]));\n"
+        + "var o = {x: a.length, y: 'k' + a.join('')};\n"
+        + "o.hasOwnProperty('x') && o.y.charAt(1) == '3' ? a.slice(1) : null;\n";
+
+    static final String[] NAMES = {
+        "Object", "Array", "String", "Math", "parseInt", "undefined"
+    };
+
+    static final String[] PROTO_NAMES = {
+        "toString", "hasOwnProperty", "push", "join", "slice", "valueOf"
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        String which = args.length > 0 ? args[0] : "all";
+        int[] threadCounts = ThreadScalingRunner.parseThreadCounts(
+            args.length > 1 ? args[1] : null);
+        final int optLevel = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        ContextFactory factory = new ContextFactory();
+        Context cx = factory.enterContext();
+        final ScriptableObject shared;
+        final Script script;
+        try {
+            cx.setOptimizationLevel(optLevel);
+            shared = cx.initStandardObjects(null, true);
+            script = cx.compileString(SCRIPT, "bench", 1, null);
+        } finally {
+            Context.exit();
+        }
+        final Scriptable objectProto
+            = ScriptableObject.getObjectPrototype(shared);
+        final Scriptable arrayProto
+            = ScriptableObject.getClassPrototype(shared, "Array");
+
+        if (which.equals("lookup") || which.equals("all")) {
+            new ThreadScalingRunner(factory, 1000, 2000) {
+                protected Operation newOperation(Context cx) {
+                    return new Operation() {
+                        public void run(Context cx) {
+                            for (int i = 0; i != NAMES.length; ++i) {
+                                ScriptableObject.getProperty(shared, NAMES[i]);
+                            }
+                            for (int i = 0; i != PROTO_NAMES.length; ++i) {
+                                ScriptableObject.getProperty(arrayProto,
+                                                             PROTO_NAMES[i]);
+                                ScriptableObject.getProperty(objectProto,
+                                                             PROTO_NAMES[i]);
+                            }
+                        }
+                    };
+                }
+            }.report("lookup: shared sealed prototype property reads",
+                     threadCounts);
+        }
+
+        if (which.equals("script") || which.equals("all")) {
+            new ThreadScalingRunner(factory, 1000, 2000) {
+                protected Operation newOperation(Context cx) {
+                    cx.setOptimizationLevel(optLevel);
+                    final Scriptable scope = cx.newObject(shared);
+                    scope.setPrototype(shared);
+                    scope.setParentScope(null);
+                    return new Operation() {
+                        public void run(Context cx) {
+                            script.exec(cx, scope);
+                        }
+                    };
+                }
+            }.report("script: per-thread scope over a shared sealed scope",
+                     threadCounts);
+        }
+    }
+}
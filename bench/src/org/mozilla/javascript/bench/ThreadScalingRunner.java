@@ -0,0 +1,199 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.bench;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * Minimal throughput harness for the benchmarks in this directory.
+ * <p>
+ * For each thread count, every thread enters its own Context, builds its
+ * operation and calls it in a loop. Operations completed during the warmup
+ * period are discarded; the ones completed during the measurement period
+ * are summed over all threads and reported as operations per second.
+ */
+public abstract class ThreadScalingRunner
+{
+    /**
+     * One unit of work, created and run by a single thread.
+     */
+    public interface Operation
+    {
+        void run(Context cx) throws Exception;
+    }
+
+    private static final int WARMUP = 0;
+    private static final int MEASURE = 1;
+    private static final int STOP = 2;
+
+    private final ContextFactory factory;
+    private final long warmupMillis;
+    private final long measureMillis;
+
+    private volatile int phase;
+
+    protected ThreadScalingRunner(ContextFactory factory,
+                                  long warmupMillis, long measureMillis)
+    {
+        this.factory = factory;
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+    }
+
+    /**
+     * Create the operation one thread will run. Called on that thread
+     * with its Context entered.
+     */
+    protected abstract Operation newOperation(Context cx) throws Exception;
+
+    /**
+     * Run the operation with the given number of threads and return the
+     * number of operations per second completed by all of them together.
+     */
+    public double run(int threadCount) throws Exception
+    {
+        final long[] counts = new long[threadCount];
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        phase = WARMUP;
+        for (int i = 0; i != threadCount; ++i) {
+            final int index = i;
+            threads[i] = new Thread("bench-" + i) {
+                public void run() {
+                    Context cx = factory.enterContext();
+                    try {
+                        Operation op = newOperation(cx);
+                        long count = 0;
+                        int p;
+                        while ((p = phase) != STOP) {
+                            op.run(cx);
+                            if (p == MEASURE) {
+                                ++count;
+                            }
+                        }
+                        counts[index] = count;
+                    } catch (Throwable ex) {
+                        synchronized (failure) {
+                            failure[0] = ex;
+                        }
+                    } finally {
+                        Context.exit();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        Thread.sleep(warmupMillis);
+        phase = MEASURE;
+        long start = System.nanoTime();
+        Thread.sleep(measureMillis);
+        phase = STOP;
+        long elapsed = System.nanoTime() - start;
+        for (int i = 0; i != threadCount; ++i) {
+            threads[i].join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new RuntimeException(failure[0].toString());
+            }
+        }
+        long total = 0;
+        for (int i = 0; i != threadCount; ++i) {
+            total += counts[i];
+        }
+        return total * 1e9 / elapsed;
+    }
+
+    /**
+     * Run with each thread count and print a table of total throughput,
+     * throughput per thread and speedup over the first count.
+     */
+    public void report(String name, int[] threadCounts) throws Exception
+    {
+        System.out.println(name);
+        System.out.println("threads        ops/s   ops/s/thread  speedup");
+        double base = 0;
+        for (int i = 0; i != threadCounts.length; ++i) {
+            int n = threadCounts[i];
+            double opsPerSecond = run(n);
+            if (i == 0) {
+                base = opsPerSecond / n;
+            }
+            System.out.println(pad(String.valueOf(n), 7)
+                               + pad(format(opsPerSecond), 13)
+                               + pad(format(opsPerSecond / n), 15)
+                               + pad(format(opsPerSecond / base), 9));
+        }
+        System.out.println();
+    }
+
+    static String format(double d)
+    {
+        if (d >= 100) {
+            return String.valueOf(Math.round(d));
+        }
+        return String.valueOf(Math.round(d * 100) / 100.0);
+    }
+
+    static String pad(String s, int width)
+    {
+        StringBuffer sb = new StringBuffer(width);
+        for (int i = s.length(); i < width; ++i) {
+            sb.append(' ');
+        }
+        return sb.append(s).toString();
+    }
+
+    /**
+     * Parse "1,2,4" into thread counts, or return the powers of two from
+     * 1 to 64 if arg is null.
+     */
+    static int[] parseThreadCounts(String arg)
+    {
+        if (arg == null) {
+            return new int[] { 1, 2, 4, 8, 16, 32, 64 };
+        }
+        String[] parts = arg.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i != parts.length; ++i) {
+            counts[i] = Integer.parseInt(parts[i].trim());
+        }
+        return counts;
+    }
+}
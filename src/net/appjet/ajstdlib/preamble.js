@@ -16,12 +16,15 @@ var _tstart = (new Date()).valueOf();
 //----------------------------------------------------------------
 (function() {
   // rhino strings come with a bunch of random "html helpers"
-  // that we don't want
+  // that we don't want.  A shared, sealed standard scope has them
+  // removed once before sealing, and deleting from it would throw.
   var htmlStuff = ["bold", "italics", "fixed", "strike",
     "small", "big", "sub", "fontsize", "fontcolor", "link",
     "anchor", "sup", "blink"];
   for(var i in htmlStuff) {
-    delete String.prototype[htmlStuff[i]];
+    if (htmlStuff[i] in String.prototype) {
+      delete String.prototype[htmlStuff[i]];
+    }
   }
 })();
 
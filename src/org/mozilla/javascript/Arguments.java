@@ -101,7 +101,7 @@ final class Arguments extends IdScriptableObject
                     value = activation.get(argName, activation);
                     if (value == NOT_FOUND) Kit.codeBug();
                 }
-                return value;
+                return ScriptRuntime.flattenValue(value);
             }
         }
         return super.get(index, start);
@@ -142,7 +142,7 @@ final class Arguments extends IdScriptableObject
                         if (args == activation.originalArgs) {
                             args = args.clone();
                         }
-                        args[index] = value;
+                        args[index] = ScriptRuntime.flattenValue(value);
                         return;
                     }
                 }
@@ -359,9 +359,17 @@ public class BaseFunction extends IdScriptableObject implements Function
      */
     public Scriptable createObject(Context cx, Scriptable scope)
     {
-        Scriptable newInstance = new NativeObject();
+        NativeObject newInstance = new NativeObject();
         newInstance.setPrototype(getClassPrototype());
         newInstance.setParentScope(getParentScope());
+        if (cx != null && cx.hasFeature(Context.FEATURE_PROPERTY_SHAPES)) {
+            Shape root = instanceShape;
+            if (root == null) {
+                root = new Shape();
+                instanceShape = root;
+            }
+            newInstance.initShape(root);
+        }
         return newInstance;
     }
 
@@ -549,5 +557,7 @@ public class BaseFunction extends IdScriptableObject implements Function
     private Object prototypeProperty;
     // For function object instances, attribute is PERMANENT; see ECMA 15.3.5.2
     private int prototypePropertyAttributes = PERMANENT;
+    // Root shape of objects created by this constructor in shape mode
+    private transient Shape instanceShape;
 }
 
@@ -41,6 +41,7 @@ package org.mozilla.javascript;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Cache of generated classes and data structures to access Java runtime
@@ -54,8 +55,8 @@ public class ClassCache
 {
     private static final Object AKEY = new Object();
     private volatile boolean cachingIsEnabled = true;
-    private HashMap<Class<?>,JavaMembers> classTable
-        = new HashMap<Class<?>,JavaMembers>();
+    private ConcurrentHashMap<Class<?>,JavaMembers> classTable
+        = new ConcurrentHashMap<Class<?>,JavaMembers>();
     private HashMap<Class<?>,JavaMembers> javaAdapterGeneratedClasses
         = new HashMap<Class<?>,JavaMembers>();
     private HashMap<JavaAdapter.JavaAdapterSignature,Class<?>> classAdapterCache
@@ -0,0 +1,308 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Persistent cache of compiled scripts and functions.
+ * <p>
+ * When a cache is installed with
+ * {@link Context#setCompiledScriptCache(CompiledScriptCache)}, the result
+ * of compiling a source is stored in a file in the cache directory: the
+ * class file bytes generated by the optimizer, or the serialized
+ * interpreter code when running interpreted. The file name is a hash of
+ * the source, the source name and line number, the compiler, the
+ * optimization level, the language version and all other compiler flags,
+ * so compiling the same source with the same settings after a restart
+ * loads the stored code instead of parsing and generating it again.
+ * <p>
+ * Scripts are not cached while a debugger is attached, as the debugger
+ * needs the compiler output for each compilation.
+ * <p>
+ * With {@link Context#FEATURE_STORED_ADAPTER_CLASSES} the cache also keeps
+ * the class files {@link JavaAdapter} generates, keyed by the adapted
+ * classes, their methods and the names of the implementing functions.
+ * <p>
+ * The cache directory must be private to the process: anyone who can write
+ * to it can change the code the process runs. Stored entries are
+ * deserialized with an allow-list of the classes compiled code consists of,
+ * so a planted file cannot instantiate arbitrary serializable classes, but
+ * class file bytes are loaded as they are.
+ *
+ * @see Context#setCompiledScriptCache(CompiledScriptCache)
+ */
+public class CompiledScriptCache
+{
+    // Change when the format of stored code changes in incompatible ways
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String FILE_SUFFIX = ".jsc";
+
+    // The only classes stored entries may contain: interpreter code with
+    // its tables and compiled regular expressions, or class file bytes
+    private static final String[] ALLOWED_CLASSES = {
+        "org.mozilla.javascript.InterpreterData",
+        "[Lorg.mozilla.javascript.InterpreterData;",
+        "org.mozilla.javascript.UintMap",
+        "org.mozilla.javascript.regexp.RECompiled",
+        "org.mozilla.javascript.regexp.RECharSet",
+        "[Lorg.mozilla.javascript.regexp.RECharSet;",
+        "java.lang.Number",
+        "java.lang.Integer",
+        "java.lang.Double",
+        "java.lang.Boolean",
+        "[Ljava.lang.Object;",
+        "[Ljava.lang.String;",
+        "[Z", "[B", "[C", "[D", "[I"
+    };
+
+    private final File directory;
+
+    /**
+     * Create a cache that keeps compiled scripts in the given directory.
+     * The directory is created on first store if it does not exist. Only
+     * the user the process runs as may be allowed to write to it.
+     */
+    public CompiledScriptCache(File directory)
+    {
+        if (directory == null) throw new IllegalArgumentException();
+        this.directory = directory;
+    }
+
+    public final File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Remove all cached scripts.
+     */
+    public void clear()
+    {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (int i = 0; i != files.length; ++i) {
+            if (files[i].getName().endsWith(FILE_SUFFIX)) {
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Compute the key of compiling the given source with the given
+     * settings.
+     */
+    String makeKey(Context cx, CompilerEnvirons compilerEnv,
+                   Evaluator compiler, String sourceString,
+                   String sourceName, int lineno, boolean returnFunction)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(FORMAT_VERSION);
+        sb.append('\n').append(cx.getImplementationVersion());
+        sb.append('\n').append(compiler.getClass().getName());
+        sb.append('\n').append(compilerEnv.getOptimizationLevel());
+        sb.append('\n').append(compilerEnv.getLanguageVersion());
+        sb.append('\n').append(compilerEnv.isGenerateDebugInfo());
+        sb.append('\n').append(compilerEnv.isUseDynamicScope());
+        sb.append('\n').append(compilerEnv.isReservedKeywordAsIdentifier());
+        sb.append('\n').append(compilerEnv.isAllowMemberExprAsFunctionName());
+        sb.append('\n').append(compilerEnv.isXmlAvailable());
+        sb.append('\n').append(compilerEnv.isGeneratingSource());
+        sb.append('\n').append(compilerEnv.isStrictMode());
+        sb.append('\n').append(compilerEnv.reportWarningAsError());
+        sb.append('\n').append(compilerEnv.isGenerateObserverCount());
+        sb.append('\n').append(returnFunction);
+        sb.append('\n').append(lineno);
+        sb.append('\n').append(sourceName);
+        sb.append('\n');
+        return hash(sb.toString(), sourceString);
+    }
+
+    /**
+     * Compute the key of a JavaAdapter class given the description of
+     * everything its code depends on.
+     */
+    String makeAdapterKey(Context cx, String description)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(FORMAT_VERSION);
+        sb.append('\n').append(cx.getImplementationVersion());
+        sb.append('\n').append(JavaAdapter.class.getName());
+        sb.append('\n');
+        return hash(sb.toString(), description);
+    }
+
+    private static String hash(String header, String body)
+    {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+            md.update(header.getBytes("UTF-8"));
+            md.update(body.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex.toString());
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex.toString());
+        }
+        byte[] digest = md.digest();
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i != digest.length; ++i) {
+            int b = digest[i] & 0xFF;
+            hex[2 * i] = Character.forDigit(b >>> 4, 16);
+            hex[2 * i + 1] = Character.forDigit(b & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Return the compiled code stored under key or null if there is none.
+     * Unreadable entries are treated as missing.
+     */
+    Object get(String key)
+    {
+        File file = new File(directory, key + FILE_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            in = new FilteredInputStream(new BufferedInputStream(
+                     new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            return in.readObject();
+        } catch (IOException ex) {
+            return null;
+        } catch (ClassNotFoundException ex) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store compiled code under key. Errors are ignored as the cache is
+     * only an optimization.
+     */
+    void put(String key, Object bytecode)
+    {
+        File file = new File(directory, key + FILE_SUFFIX);
+        File tmp = null;
+        ObjectOutputStream out = null;
+        try {
+            directory.mkdirs();
+            // Write to a temporary file first so concurrent readers never
+            // see a partially written entry
+            tmp = File.createTempFile(key, ".tmp", directory);
+            out = new ObjectOutputStream(new BufferedOutputStream(
+                      new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeObject(bytecode);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                tmp.renameTo(file);
+            }
+        } catch (IOException ex) {
+        } finally {
+            closeQuietly(out);
+            if (tmp != null && tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Object stream that only resolves the classes stored entries are
+     * made of.
+     */
+    private static final class FilteredInputStream extends ObjectInputStream
+    {
+        FilteredInputStream(InputStream in) throws IOException
+        {
+            super(in);
+        }
+
+        protected Class resolveClass(ObjectStreamClass desc)
+            throws IOException, ClassNotFoundException
+        {
+            String name = desc.getName();
+            for (int i = 0; i != ALLOWED_CLASSES.length; ++i) {
+                if (ALLOWED_CLASSES[i].equals(name)) {
+                    return super.resolveClass(desc);
+                }
+            }
+            throw new InvalidClassException(name, "not allowed in cache");
+        }
+
+        protected Class resolveProxyClass(String[] interfaces)
+            throws IOException
+        {
+            throw new InvalidClassException("proxy", "not allowed in cache");
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable stream)
+    {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * A JavaScript string built by the '+' operator that is not copied until
+ * it is needed as a {@link String}.
+ * <p>
+ * Appending to a string in a loop with <tt>s += x</tt> would copy the
+ * whole accumulated string on every iteration. Instead the operator
+ * links its two operands into a ConsString node, and the characters are
+ * copied once, into a single array, the first time the value is read
+ * through {@link #toString()}. Flattening replaces the left operand with
+ * the result so that the operand tree can be collected.
+ * <p>
+ * The conversion helpers in {@link ScriptRuntime} and
+ * {@link NativeJavaObject} treat ConsString values as strings. They are
+ * flattened before reaching Java code as call arguments of any callable
+ * other than a script function, through
+ * {@link Context#jsToJava(Object, Class)} and as the result of a top-level
+ * call. Values stored in properties of a {@link ScriptableObject} or in
+ * elements of a {@link NativeArray} are flattened too, so
+ * {@link Scriptable#get(String, Scriptable)} returns a String for them.
+ * Strings held in local variables or passed to script functions stay
+ * unflattened.
+ */
+public final class ConsString implements CharSequence, Serializable
+{
+    static final long serialVersionUID = -8432806714471372570L;
+
+    /**
+     * Concatenations shorter than this are done eagerly; copying a few
+     * characters is cheaper than creating a node and walking it later.
+     */
+    static final int MIN_LENGTH = 64;
+
+    // Either the original left operand or, once flattened, the whole
+    // string. A String of the full length always means flattened.
+    private volatile CharSequence left;
+    private final CharSequence right;
+    private final int length;
+
+    private ConsString(CharSequence left, CharSequence right, int length)
+    {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    /**
+     * Return the concatenation of two JavaScript strings, each either a
+     * String or a ConsString. Other CharSequences are copied to a String.
+     */
+    public static CharSequence concat(CharSequence left, CharSequence right)
+    {
+        if (!(left instanceof String || left instanceof ConsString)) {
+            left = left.toString();
+        }
+        if (!(right instanceof String || right instanceof ConsString)) {
+            right = right.toString();
+        }
+        int length = left.length() + right.length();
+        if (length >= MIN_LENGTH) {
+            return new ConsString(left, right, length);
+        }
+        if (length >= 0) {
+            // No ConsString is that short, so both operands are flat
+            return left.toString().concat(right.toString());
+        }
+        // The length overflowed; let String.concat report it
+        return left.toString().concat(right.toString());
+    }
+
+    public String toString()
+    {
+        CharSequence s = left;
+        if (s instanceof String && s.length() == length) {
+            return (String)s;
+        }
+        String flat = flatten(s);
+        left = flat;
+        return flat;
+    }
+
+    /**
+     * Copy the characters of the tree into one array, starting from the
+     * right end. Only pending left operands are kept on the explicit
+     * stack, so the usual left-leaning trees produced by <tt>s += x</tt>
+     * need no more than one slot however long they are. The stack grows
+     * only for trees that also lean to the right.
+     */
+    private String flatten(CharSequence first)
+    {
+        char[] chars = new char[length];
+        CharSequence[] pending = new CharSequence[8];
+        int top = 0;
+        int end = length;
+        CharSequence s = right;
+        pending[top++] = first;
+        for (;;) {
+            if (s instanceof ConsString) {
+                ConsString cons = (ConsString)s;
+                CharSequence l = cons.left;
+                if (!(l instanceof String) || l.length() != cons.length) {
+                    if (top == pending.length) {
+                        CharSequence[] tmp = new CharSequence[top * 2];
+                        System.arraycopy(pending, 0, tmp, 0, top);
+                        pending = tmp;
+                    }
+                    pending[top++] = l;
+                    s = cons.right;
+                    continue;
+                }
+                s = l;
+            }
+            String str = (String)s;
+            int n = str.length();
+            end -= n;
+            str.getChars(0, n, chars, end);
+            if (top == 0) {
+                break;
+            }
+            s = pending[--top];
+        }
+        return new String(chars);
+    }
+
+    public int length()
+    {
+        return length;
+    }
+
+    public char charAt(int index)
+    {
+        return toString().charAt(index);
+    }
+
+    public CharSequence subSequence(int start, int end)
+    {
+        return toString().substring(start, end);
+    }
+
+    private Object writeReplace() throws ObjectStreamException
+    {
+        return toString();
+    }
+}
@@ -305,6 +305,57 @@ public class Context
      */
     public static final int FEATURE_ENHANCED_JAVA_ACCESS = 13;
 
+    /**
+     * Enables shape mode for objects created by script constructors and
+     * by object literals in interpreted code. Such objects share immutable
+     * property layouts with objects built the same way and only store an
+     * array of property values, falling back to the regular hash table
+     * when used as dictionaries. Their properties enumerate in the same
+     * order as without shape mode, at every optimization level.
+     * <p>
+     * By default {@link #hasFeature(int)} returns false.
+     */
+    public static final int FEATURE_PROPERTY_SHAPES = 14;
+
+    /**
+     * Enables sharing of reflected Java class members between all top-level
+     * scopes in the JVM. Without it, every scope with its own
+     * {@link ClassCache} reflects the classes scripts use again. Each scope
+     * still gets its own function objects for the methods. The shared
+     * tables keep the classes they describe loaded, and are not changed
+     * by lookups of explicit overloads such as <tt>"put(int)"</tt>, so
+     * those names are not listed when a Java object's properties are
+     * enumerated.
+     * <p>
+     * By default {@link #hasFeature(int)} returns false.
+     */
+    public static final int FEATURE_SHARED_JAVA_MEMBERS = 15;
+
+    /**
+     * Enables sharing of the classes generated by {@link JavaAdapter} and
+     * of the interface adapters used to pass functions to Java between all
+     * top-level scopes in the JVM. Adapter classes are shared between
+     * contexts with the same application class loader and no
+     * {@link SecurityController}. Shared adapters stay loaded for the life
+     * of the JVM.
+     * <p>
+     * By default {@link #hasFeature(int)} returns false.
+     */
+    public static final int FEATURE_SHARED_ADAPTER_CLASSES = 16;
+
+    /**
+     * Enables storing the classes generated by {@link JavaAdapter} in the
+     * {@link CompiledScriptCache} of the context, so they are not generated
+     * again after a restart. Stored class files are loaded as they are, so
+     * anyone who can write to the cache directory can run code in the
+     * process; only enable this feature when the directory is private to
+     * it. Classes are never stored for contexts with a
+     * {@link SecurityController}.
+     * <p>
+     * By default {@link #hasFeature(int)} returns false.
+     */
+    public static final int FEATURE_STORED_ADAPTER_CLASSES = 17;
+
 
     public static final String languageVersionProperty = "language version";
     public static final String errorReporterProperty   = "error reporter";
@@ -1037,7 +1088,15 @@ public class Context
      * or removed. This is useful to create a "superglobal" that can be shared
      * among several top-level objects. Note that sealing is not allowed in
      * the current ECMA/ISO language specification, but is likely for
-     * the next version.
+     * the next version.<p>
+     *
+     * With sealed objects, the constructors that are otherwise loaded on
+     * first use (RegExp, Packages, XML, ...) are initialized right away,
+     * since they define properties in the scope when they load. The
+     * returned scope can then itself be sealed with
+     * {@link ScriptableObject#sealObject()} and shared between threads,
+     * each execution using a new object with the shared scope as its
+     * prototype as its top-level scope.
      *
      * @param scope the scope to initialize, or null, in which case a new
      *        object will be created to serve as the scope
@@ -1544,9 +1603,10 @@ public class Context
      * Convenient method to convert java value to its closest representation
      * in JavaScript.
      * <p>
-     * If value is an instance of String, Number, Boolean, Function or
-     * Scriptable, it is returned as it and will be treated as the corresponding
-     * JavaScript type of string, number, boolean, function and object.
+     * If value is an instance of String, {@link ConsString}, Number, Boolean,
+     * Function or Scriptable, it is returned as it and will be treated as the
+     * corresponding JavaScript type of string, number, boolean, function and
+     * object.
      * <p>
      * Note that for Number instances during any arithmetic operation in
      * JavaScript the engine will always use the result of
@@ -1570,8 +1630,9 @@ public class Context
      */
     public static Object javaToJS(Object value, Scriptable scope)
     {
-        if (value instanceof String || value instanceof Number
-            || value instanceof Boolean || value instanceof Scriptable)
+        if (value instanceof String || value instanceof ConsString
+            || value instanceof Number || value instanceof Boolean
+            || value instanceof Scriptable)
         {
             return value;
         } else if (value instanceof Character) {
@@ -1966,6 +2027,66 @@ public class Context
         return wrapFactory;
     }
 
+    /**
+     * Set the persistent cache of compiled scripts.
+     * <p>
+     * With a cache installed, compiling a source that was already compiled
+     * with the same settings, possibly by an earlier run of the JVM, loads
+     * the stored code instead of compiling it again.
+     *
+     * @param cache the cache or null to disable caching
+     * @see CompiledScriptCache
+     */
+    public final void setCompiledScriptCache(CompiledScriptCache cache)
+    {
+        if (sealed) onSealedMutation();
+        this.compiledScriptCache = cache;
+    }
+
+    /**
+     * Return the persistent cache of compiled scripts or null if none is
+     * installed.
+     */
+    public final CompiledScriptCache getCompiledScriptCache()
+    {
+        return compiledScriptCache;
+    }
+
+    /**
+     * Set the threshold for tiered compilation.
+     * <p>
+     * When the optimization level is -1 and the threshold is positive,
+     * scripts compiled with this context start in the interpreter, and
+     * functions invoked or looping more than <tt>threshold</tt> times are
+     * compiled to JVM bytecode in the background and switch to it on
+     * their next call. Zero, the default, disables tiered compilation.
+     * <p>
+     * A continuation can only be captured through interpreted frames, so
+     * promoted functions are not used in calls whose top-level scope
+     * defines <tt>Continuation</tt>. Hosts that want tiered compilation
+     * should delete it from their standard scope.
+     *
+     * @param threshold the invocation and loop iteration count that
+     *        triggers compilation of a function
+     * @see #setOptimizationLevel(int)
+     */
+    public final void setTieredCompilationThreshold(int threshold)
+    {
+        if (sealed) onSealedMutation();
+        if (threshold < 0) throw new IllegalArgumentException();
+        this.tieredCompilationThreshold = threshold;
+    }
+
+    /**
+     * Return the threshold for tiered compilation or zero if it is
+     * disabled.
+     * @see #setTieredCompilationThreshold(int)
+     */
+    public final int getTieredCompilationThreshold()
+    {
+        return tieredCompilationThreshold;
+    }
+
     /**
      * Return the current debugger.
      * @return the debugger, or null if none is attached.
@@ -2238,35 +2359,23 @@ public class Context
             compilationErrorReporter = compilerEnv.getErrorReporter();
         }
 
+        CompiledScriptCache cache = null;
+        boolean tiered = false;
         if (debugger != null) {
             if (sourceReader != null) {
                 sourceString = Kit.readReader(sourceReader);
                 sourceReader = null;
             }
-        }
-
-        /*APPJET*/
-        Parser p = InformativeParser.makeParser(compilerEnv,
-                                                    compilationErrorReporter);
-        if (returnFunction) {
-            p.calledByCompileFunction = true;
-        }
-        ScriptOrFnNode tree;
-        if (sourceString != null) {
-            tree = p.parse(sourceString, sourceName, lineno);
         } else {
-            tree = p.parse(sourceReader, sourceName, lineno);
-        }
-        if (returnFunction) {
-            if (!(tree.getFunctionCount() == 1
-                  && tree.getFirstChild() != null
-                  && tree.getFirstChild().getType() == Token.FUNCTION))
-            {
-                // XXX: the check just look for the first child
-                // and allows for more nodes after it for compatibility
-                // with sources like function() {};;;
-                throw new IllegalArgumentException(
-                    "compileFunction only accepts source with single JS function: "+sourceString);
+            cache = compiledScriptCache;
+            // Tiered compilation parses hot functions again from the source
+            tiered = tieredCompilationThreshold > 0
+                     && optimizationLevel < 0
+                     && getSecurityController() == null
+                     && TieredCompiler.isAvailable();
+            if ((cache != null || tiered) && sourceReader != null) {
+                sourceString = Kit.readReader(sourceReader);
+                sourceReader = null;
             }
         }
 
@@ -2274,11 +2383,51 @@ public class Context
             compiler = createCompiler();
         }
 
-        String encodedSource = p.getEncodedSource();
+        String cacheKey = null;
+        Object bytecode = null;
+        if (cache != null) {
+            cacheKey = cache.makeKey(this, compilerEnv, compiler,
+                                     sourceString, sourceName, lineno,
+                                     returnFunction);
+            bytecode = cache.get(cacheKey);
+        }
 
-        Object bytecode = compiler.compile(compilerEnv,
-                                           tree, encodedSource,
-                                           returnFunction);
+        if (bytecode == null) {
+            /*APPJET*/
+            Parser p = InformativeParser.makeParser(compilerEnv,
+                                                    compilationErrorReporter);
+            if (returnFunction) {
+                p.calledByCompileFunction = true;
+            }
+            ScriptOrFnNode tree;
+            if (sourceString != null) {
+                tree = p.parse(sourceString, sourceName, lineno);
+            } else {
+                tree = p.parse(sourceReader, sourceName, lineno);
+            }
+            if (returnFunction) {
+                if (!(tree.getFunctionCount() == 1
+                      && tree.getFirstChild() != null
+                      && tree.getFirstChild().getType() == Token.FUNCTION))
+                {
+                    // XXX: the check just look for the first child
+                    // and allows for more nodes after it for compatibility
+                    // with sources like function() {};;;
+                    throw new IllegalArgumentException(
+                        "compileFunction only accepts source with single JS function: "+sourceString);
+                }
+            }
+
+            String encodedSource = p.getEncodedSource();
+
+            bytecode = compiler.compile(compilerEnv,
+                                        tree, encodedSource,
+                                        returnFunction);
+
+            if (cacheKey != null) {
+                cache.put(cacheKey, bytecode);
+            }
+        }
 
         if (debugger != null) {
             if (sourceString == null) Kit.codeBug();
@@ -2290,6 +2439,12 @@ public class Context
             }
         }
 
+        if (tiered && bytecode instanceof InterpreterData) {
+            TieredCompiler.prepare(this, (InterpreterData)bytecode,
+                                   sourceString, sourceName, lineno,
+                                   returnFunction);
+        }
+
         Object result;
         if (returnFunction) {
             result = compiler.createFunctionObject(this, scope, bytecode, securityDomain);
@@ -2485,9 +2640,13 @@ public class Context
     private boolean generatingSource=true;
     boolean compileFunctionsWithDynamicScopeFlag;
     boolean useDynamicScope;
+    // True while the top call runs in a scope that defines Continuation
+    boolean isContinuationsTopCall;
     private int optimizationLevel;
     private int maximumInterpreterStackDepth;
     private WrapFactory wrapFactory;
+    private CompiledScriptCache compiledScriptCache;
+    private int tieredCompilationThreshold;
     Debugger debugger;
     private Object debuggerData;
     private int enterCount;
@@ -290,6 +290,18 @@ public class ContextFactory
 
           case Context.FEATURE_ENHANCED_JAVA_ACCESS:
             return false;
+
+          case Context.FEATURE_PROPERTY_SHAPES:
+            return false;
+
+          case Context.FEATURE_SHARED_JAVA_MEMBERS:
+            return false;
+
+          case Context.FEATURE_SHARED_ADAPTER_CLASSES:
+            return false;
+
+          case Context.FEATURE_STORED_ADAPTER_CLASSES:
+            return false;
         }
         // It is a bug to call the method with unknown featureIndex
         throw new IllegalArgumentException(String.valueOf(featureIndex));
@@ -0,0 +1,354 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+/**
+ * Shortest decimal representation of doubles without big integer
+ * arithmetic, using Florian Loitsch's Grisu3 algorithm ("Printing
+ * Floating-Point Numbers Quickly and Accurately with Integers", 2010).
+ * <p>
+ * Grisu3 knows when it cannot prove that its digits are the shortest
+ * correctly rounded ones, which happens for about 0.5% of all doubles.
+ * {@link #numberToString(double)} returns null in that case and the
+ * caller falls back on {@link DToA}.
+ */
+final class FastDtoa
+{
+    private FastDtoa() { }
+
+    private static final long SIGNIFICAND_MASK = 0x000FFFFFFFFFFFFFL;
+    private static final long HIDDEN_BIT = 0x0010000000000000L;
+    private static final int EXPONENT_BIAS = 0x3FF + 52;
+    private static final int DENORMAL_EXPONENT = 1 - EXPONENT_BIAS;
+
+    /* The scaled value must have a binary exponent of at least this so that
+     * its fraction fits 60 bits and its integral part 32 bits. */
+    private static final int MINIMAL_TARGET_EXPONENT = -60;
+
+    private static final double D_1_LOG2_10 = 0.30102999566398114;
+
+    /* Normalized 64-bit approximations of 10^-348, 10^-340, ..., 10^340
+     * rounded to nearest, with their binary exponents. */
+    private static final int CACHED_POWERS_OFFSET = 348;
+    private static final int DECIMAL_EXPONENT_DISTANCE = 8;
+
+    private static final long[] CACHED_POWER_SIGNIFICANDS = {
+        0xfa8fd5a0081c0288L, 0xbaaee17fa23ebf76L, 0x8b16fb203055ac76L,
+        0xcf42894a5dce35eaL, 0x9a6bb0aa55653b2dL, 0xe61acf033d1a45dfL,
+        0xab70fe17c79ac6caL, 0xff77b1fcbebcdc4fL, 0xbe5691ef416bd60cL,
+        0x8dd01fad907ffc3cL, 0xd3515c2831559a83L, 0x9d71ac8fada6c9b5L,
+        0xea9c227723ee8bcbL, 0xaecc49914078536dL, 0x823c12795db6ce57L,
+        0xc21094364dfb5637L, 0x9096ea6f3848984fL, 0xd77485cb25823ac7L,
+        0xa086cfcd97bf97f4L, 0xef340a98172aace5L, 0xb23867fb2a35b28eL,
+        0x84c8d4dfd2c63f3bL, 0xc5dd44271ad3cdbaL, 0x936b9fcebb25c996L,
+        0xdbac6c247d62a584L, 0xa3ab66580d5fdaf6L, 0xf3e2f893dec3f126L,
+        0xb5b5ada8aaff80b8L, 0x87625f056c7c4a8bL, 0xc9bcff6034c13053L,
+        0x964e858c91ba2655L, 0xdff9772470297ebdL, 0xa6dfbd9fb8e5b88fL,
+        0xf8a95fcf88747d94L, 0xb94470938fa89bcfL, 0x8a08f0f8bf0f156bL,
+        0xcdb02555653131b6L, 0x993fe2c6d07b7facL, 0xe45c10c42a2b3b06L,
+        0xaa242499697392d3L, 0xfd87b5f28300ca0eL, 0xbce5086492111aebL,
+        0x8cbccc096f5088ccL, 0xd1b71758e219652cL, 0x9c40000000000000L,
+        0xe8d4a51000000000L, 0xad78ebc5ac620000L, 0x813f3978f8940984L,
+        0xc097ce7bc90715b3L, 0x8f7e32ce7bea5c70L, 0xd5d238a4abe98068L,
+        0x9f4f2726179a2245L, 0xed63a231d4c4fb27L, 0xb0de65388cc8ada8L,
+        0x83c7088e1aab65dbL, 0xc45d1df942711d9aL, 0x924d692ca61be758L,
+        0xda01ee641a708deaL, 0xa26da3999aef774aL, 0xf209787bb47d6b85L,
+        0xb454e4a179dd1877L, 0x865b86925b9bc5c2L, 0xc83553c5c8965d3dL,
+        0x952ab45cfa97a0b3L, 0xde469fbd99a05fe3L, 0xa59bc234db398c25L,
+        0xf6c69a72a3989f5cL, 0xb7dcbf5354e9beceL, 0x88fcf317f22241e2L,
+        0xcc20ce9bd35c78a5L, 0x98165af37b2153dfL, 0xe2a0b5dc971f303aL,
+        0xa8d9d1535ce3b396L, 0xfb9b7cd9a4a7443cL, 0xbb764c4ca7a44410L,
+        0x8bab8eefb6409c1aL, 0xd01fef10a657842cL, 0x9b10a4e5e9913129L,
+        0xe7109bfba19c0c9dL, 0xac2820d9623bf429L, 0x80444b5e7aa7cf85L,
+        0xbf21e44003acdd2dL, 0x8e679c2f5e44ff8fL, 0xd433179d9c8cb841L,
+        0x9e19db92b4e31ba9L, 0xeb96bf6ebadf77d9L, 0xaf87023b9bf0ee6bL
+    };
+
+    private static final short[] CACHED_POWER_BINARY_EXPONENTS = {
+        -1220, -1193, -1166, -1140, -1113, -1087, -1060, -1034, -1007, -980,
+        -954, -927, -901, -874, -847, -821, -794, -768, -741, -715, -688,
+        -661, -635, -608, -582, -555, -529, -502, -475, -449, -422, -396,
+        -369, -343, -316, -289, -263, -236, -210, -183, -157, -130, -103, -77,
+        -50, -24, 3, 30, 56, 83, 109, 136, 162, 189, 216, 242, 269, 295, 322,
+        348, 375, 402, 428, 455, 481, 508, 534, 561, 588, 614, 641, 667, 694,
+        720, 747, 774, 800, 827, 853, 880, 907, 933, 960, 986, 1013, 1039,
+        1066
+    };
+
+    /* Maximal number of digits of a shortest representation */
+    private static final int MAXIMAL_LENGTH = 17;
+
+    /**
+     * Convert a finite non-zero double to a string as specified by
+     * ECMA 9.8.1, or return null if Grisu3 fails for this value.
+     */
+    static String numberToString(double v)
+    {
+        char[] digits = new char[MAXIMAL_LENGTH];
+        int[] decPt = new int[1];
+        boolean negative = (v < 0);
+        int length = grisu3(negative ? -v : v, digits, decPt);
+        if (length < 0) {
+            return null;
+        }
+        return format(negative, digits, length, decPt[0]);
+    }
+
+    /*
+     * Generate the shortest digits of v > 0 into buffer.  Returns the number
+     * of digits and sets decPt[0] to the position of the decimal point
+     * relative to the first digit, or returns -1 if the result could not
+     * be guaranteed to be the shortest and closest one.
+     */
+    private static int grisu3(double v, char[] buffer, int[] decPt)
+    {
+        long bits = Double.doubleToLongBits(v);
+        long f = bits & SIGNIFICAND_MASK;
+        int biasedE = (int)(bits >>> 52);
+        int e;
+        if (biasedE != 0) {
+            f += HIDDEN_BIT;
+            e = biasedE - EXPONENT_BIAS;
+        } else {
+            e = DENORMAL_EXPONENT;
+        }
+
+        // The boundaries m- and m+ lie halfway to the neighbouring doubles;
+        // the lower one is closer when f is a power of two
+        long plusF = (f << 1) + 1;
+        int shift = Long.numberOfLeadingZeros(plusF);
+        plusF <<= shift;
+        int plusE = e - 1 - shift;
+        long minusF;
+        int minusE;
+        if (f == HIDDEN_BIT && biasedE > 1) {
+            minusF = (f << 2) - 1;
+            minusE = e - 2;
+        } else {
+            minusF = (f << 1) - 1;
+            minusE = e - 1;
+        }
+        minusF <<= minusE - plusE;
+
+        shift = Long.numberOfLeadingZeros(f);
+        long wF = f << shift;
+        int wE = e - shift;     // same as plusE
+
+        // Scale by a cached power of ten 10^mk into the target range
+        int minExponent = MINIMAL_TARGET_EXPONENT - (wE + 64);
+        int k = (int)Math.ceil((minExponent + 63) * D_1_LOG2_10);
+        int index = (CACHED_POWERS_OFFSET + k - 1) / DECIMAL_EXPONENT_DISTANCE
+                    + 1;
+        long cF = CACHED_POWER_SIGNIFICANDS[index];
+        int cE = CACHED_POWER_BINARY_EXPONENTS[index];
+        int mk = index * DECIMAL_EXPONENT_DISTANCE - CACHED_POWERS_OFFSET;
+
+        long w = multiply(wF, cF);
+        long low = multiply(minusF, cF);
+        long high = multiply(plusF, cF);
+        int scaledE = wE + cE + 64;
+
+        // Digit generation.  Every value within (low, high) reads back as
+        // v, but each product may be off by one unit, so only values well
+        // inside (tooLow, tooHigh) are known to be safe
+        int oneShift = -scaledE;
+        long oneF = 1L << oneShift;
+        long unit = 1;
+        long tooLow = low - unit;
+        long tooHigh = high + unit;
+        long unsafeInterval = tooHigh - tooLow;
+        long integrals = tooHigh >>> oneShift;
+        long fractionals = tooHigh & (oneF - 1);
+
+        long divisor;
+        int kappa;
+        if (integrals == 0) {
+            divisor = 0;
+            kappa = 0;
+        } else {
+            divisor = 1;
+            kappa = 1;
+            while (divisor * 10 <= integrals) {
+                divisor *= 10;
+                kappa++;
+            }
+        }
+
+        int length = 0;
+        while (kappa > 0) {
+            buffer[length++] = (char)('0' + (int)(integrals / divisor));
+            integrals %= divisor;
+            kappa--;
+            long rest = (integrals << oneShift) + fractionals;
+            if (uLess(rest, unsafeInterval)) {
+                if (!roundWeed(buffer, length, tooHigh - w, unsafeInterval,
+                               rest, divisor << oneShift, unit))
+                {
+                    return -1;
+                }
+                decPt[0] = length + kappa - mk;
+                return length;
+            }
+            divisor /= 10;
+        }
+        for (;;) {
+            if (length == MAXIMAL_LENGTH) {
+                return -1;
+            }
+            fractionals *= 10;
+            unit *= 10;
+            unsafeInterval *= 10;
+            buffer[length++] = (char)('0' + (int)(fractionals >>> oneShift));
+            fractionals &= oneF - 1;
+            kappa--;
+            if (uLess(fractionals, unsafeInterval)) {
+                if (!roundWeed(buffer, length, (tooHigh - w) * unit,
+                               unsafeInterval, fractionals, oneF, unit))
+                {
+                    return -1;
+                }
+                decPt[0] = length + kappa - mk;
+                return length;
+            }
+        }
+    }
+
+    /*
+     * Move the last digit towards w while the result stays inside the safe
+     * interval, then check that the digits are provably the closest ones.
+     * All quantities are unsigned and scaled like rest.
+     */
+    private static boolean roundWeed(char[] buffer, int length,
+                                     long distanceTooHighW,
+                                     long unsafeInterval, long rest,
+                                     long tenKappa, long unit)
+    {
+        long smallDistance = distanceTooHighW - unit;
+        long bigDistance = distanceTooHighW + unit;
+        while (uLess(rest, smallDistance)
+               && !uLess(unsafeInterval - rest, tenKappa)
+               && (uLess(rest + tenKappa, smallDistance)
+                   || !uLess(smallDistance - rest,
+                             rest + tenKappa - smallDistance)))
+        {
+            buffer[length - 1]--;
+            rest += tenKappa;
+        }
+        if (uLess(rest, bigDistance)
+            && !uLess(unsafeInterval - rest, tenKappa)
+            && (uLess(rest + tenKappa, bigDistance)
+                || uLess(rest + tenKappa - bigDistance, bigDistance - rest)))
+        {
+            return false;
+        }
+        return !uLess(rest, 2 * unit)
+               && !uLess(unsafeInterval - 4 * unit, rest);
+    }
+
+    /* Upper 64 bits of the unsigned 128-bit product, rounded */
+    private static long multiply(long x, long y)
+    {
+        long a = x >>> 32, b = x & 0xFFFFFFFFL;
+        long c = y >>> 32, d = y & 0xFFFFFFFFL;
+        long ac = a * c, bc = b * c, ad = a * d, bd = b * d;
+        long tmp = (bd >>> 32) + (ad & 0xFFFFFFFFL) + (bc & 0xFFFFFFFFL)
+                   + (1L << 31);
+        return ac + (ad >>> 32) + (bc >>> 32) + (tmp >>> 32);
+    }
+
+    private static boolean uLess(long x, long y)
+    {
+        return (x ^ Long.MIN_VALUE) < (y ^ Long.MIN_VALUE);
+    }
+
+    /* Lay out the digits like DToA.JS_dtostr in DTOSTR_STANDARD mode */
+    private static String format(boolean negative, char[] digits, int length,
+                                 int decPt)
+    {
+        char[] out = new char[length + 26];
+        int p = 0;
+        if (negative) {
+            out[p++] = '-';
+        }
+        if (decPt < -5 || decPt > 21) {
+            out[p++] = digits[0];
+            if (length != 1) {
+                out[p++] = '.';
+                System.arraycopy(digits, 1, out, p, length - 1);
+                p += length - 1;
+            }
+            out[p++] = 'e';
+            int exp = decPt - 1;
+            if (exp >= 0) {
+                out[p++] = '+';
+            } else {
+                out[p++] = '-';
+                exp = -exp;
+            }
+            if (exp >= 100) {
+                out[p++] = (char)('0' + exp / 100);
+                exp %= 100;
+                out[p++] = (char)('0' + exp / 10);
+            } else if (exp >= 10) {
+                out[p++] = (char)('0' + exp / 10);
+            }
+            out[p++] = (char)('0' + exp % 10);
+        } else if (decPt <= 0) {
+            out[p++] = '0';
+            out[p++] = '.';
+            for (int i = decPt; i != 0; i++) {
+                out[p++] = '0';
+            }
+            System.arraycopy(digits, 0, out, p, length);
+            p += length;
+        } else if (decPt < length) {
+            System.arraycopy(digits, 0, out, p, decPt);
+            p += decPt;
+            out[p++] = '.';
+            System.arraycopy(digits, decPt, out, p, length - decPt);
+            p += length - decPt;
+        } else {
+            System.arraycopy(digits, 0, out, p, length);
+            p += length;
+            for (int i = length; i != decPt; i++) {
+                out[p++] = '0';
+            }
+        }
+        return new String(out, 0, p);
+    }
+}
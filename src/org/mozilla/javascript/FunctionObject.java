@@ -239,6 +239,8 @@ public class FunctionObject extends BaseFunction
                 return arg;
             return ScriptRuntime.toObject(cx, scope, arg);
           case JAVA_OBJECT_TYPE:
+            if (arg instanceof ConsString)
+                return arg.toString();
             return arg;
           default:
             throw new IllegalArgumentException();
@@ -397,7 +397,7 @@ public abstract class IdScriptableObject extends ScriptableObject
             if ((attr & READONLY) == 0) {
                 if (start == this) {
                     int id = (info & 0xFFFF);
-                    setInstanceIdValue(id, value);
+                    setInstanceIdValue(id, ScriptRuntime.flattenValue(value));
                 }
                 else {
                     start.put(name, start, value);
@@ -39,6 +39,8 @@
 package org.mozilla.javascript;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Adapter to use JS function as implementation of Java interfaces with
@@ -46,6 +48,11 @@ import java.lang.reflect.Method;
  */
 public class InterfaceAdapter
 {
+    // Adapters shared by all scopes, see
+    // Context.FEATURE_SHARED_ADAPTER_CLASSES
+    private static final ConcurrentMap<Class<?>,InterfaceAdapter>
+        sharedAdapters = new ConcurrentHashMap<Class<?>,InterfaceAdapter>();
+
     private final Object proxyHelper;
 
     /**
@@ -66,43 +73,66 @@ public class InterfaceAdapter
         adapter = (InterfaceAdapter)cache.getInterfaceAdapter(cl);
         ContextFactory cf = cx.getFactory();
         if (adapter == null) {
-            Method[] methods = cl.getMethods();
-            if (methods.length == 0) {
-                throw Context.reportRuntimeError2(
-                    "msg.no.empty.interface.conversion",
-                    String.valueOf(function),
-                    cl.getClass().getName());
+            // As for JavaAdapter classes, adapters created under a
+            // SecurityController are never shared
+            boolean share
+                = cx.hasFeature(Context.FEATURE_SHARED_ADAPTER_CLASSES)
+                  && cx.getSecurityController() == null;
+            if (share) {
+                adapter = sharedAdapters.get(cl);
             }
-            boolean canCallFunction = false;
-          canCallFunctionChecks: {
-                Class[] argTypes = methods[0].getParameterTypes();
-                // check that the rest of methods has the same signature
-                for (int i = 1; i != methods.length; ++i) {
-                    Class[] types2 = methods[i].getParameterTypes();
-                    if (types2.length != argTypes.length) {
-                        break canCallFunctionChecks;
-                    }
-                    for (int j = 0; j != argTypes.length; ++j) {
-                        if (types2[j] != argTypes[j]) {
-                            break canCallFunctionChecks;
-                        }
+            if (adapter == null) {
+                adapter = newAdapter(cf, cl, function);
+                if (share) {
+                    InterfaceAdapter previous
+                        = sharedAdapters.putIfAbsent(cl, adapter);
+                    if (previous != null) {
+                        adapter = previous;
                     }
                 }
-                canCallFunction= true;
-            }
-            if (!canCallFunction) {
-                throw Context.reportRuntimeError2(
-                    "msg.no.function.interface.conversion",
-                    String.valueOf(function),
-                    cl.getClass().getName());
             }
-            adapter = new InterfaceAdapter(cf, cl);
             cache.cacheInterfaceAdapter(cl, adapter);
         }
         return VMBridge.instance.newInterfaceProxy(
             adapter.proxyHelper, cf, adapter, function, topScope);
     }
 
+    private static InterfaceAdapter newAdapter(ContextFactory cf, Class cl,
+                                               Callable function)
+    {
+        Method[] methods = cl.getMethods();
+        if (methods.length == 0) {
+            throw Context.reportRuntimeError2(
+                "msg.no.empty.interface.conversion",
+                String.valueOf(function),
+                cl.getClass().getName());
+        }
+        boolean canCallFunction = false;
+      canCallFunctionChecks: {
+            Class[] argTypes = methods[0].getParameterTypes();
+            // check that the rest of methods has the same signature
+            for (int i = 1; i != methods.length; ++i) {
+                Class[] types2 = methods[i].getParameterTypes();
+                if (types2.length != argTypes.length) {
+                    break canCallFunctionChecks;
+                }
+                for (int j = 0; j != argTypes.length; ++j) {
+                    if (types2[j] != argTypes[j]) {
+                        break canCallFunctionChecks;
+                    }
+                }
+            }
+            canCallFunction= true;
+        }
+        if (!canCallFunction) {
+            throw Context.reportRuntimeError2(
+                "msg.no.function.interface.conversion",
+                String.valueOf(function),
+                cl.getClass().getName());
+        }
+        return new InterfaceAdapter(cf, cl);
+    }
+
     private InterfaceAdapter(ContextFactory cf, Class cl)
     {
         this.proxyHelper
@@ -50,6 +50,7 @@ final class InterpretedFunction extends NativeFunction implements Script
     SecurityController securityController;
     Object securityDomain;
     Scriptable[] functionRegExps;
+    private transient volatile NativeFunction tieredFunction;
 
     private InterpretedFunction(InterpreterData idata,
                                 Object staticSecurityDomain)
@@ -159,9 +160,32 @@ final class InterpretedFunction extends NativeFunction implements Script
         if (!ScriptRuntime.hasTopCall(cx)) {
             return ScriptRuntime.doTopCall(this, cx, scope, thisObj, args);
         }
+        NativeFunction tiered = getTieredFunction(cx);
+        if (tiered != null) {
+            return tiered.call(cx, scope, thisObj, args);
+        }
         return Interpreter.interpret(this, cx, scope, thisObj, args);
     }
 
+    /**
+     * Return the compiled implementation of this function if
+     * {@link TieredCompiler} promoted it, otherwise null.
+     */
+    NativeFunction getTieredFunction(Context cx)
+    {
+        if (idata.itsTierSource == null || cx.debugger != null
+            || securityController != null || cx.isContinuationsTopCall)
+        {
+            return null;
+        }
+        NativeFunction f = tieredFunction;
+        if (f == null) {
+            f = TieredCompiler.getFunction(cx, this);
+            tieredFunction = f;
+        }
+        return f;
+    }
+
     public Object exec(Context cx, Scriptable scope)
     {
         if (idata.itsFunctionType != 0) {
@@ -193,6 +217,12 @@ final class InterpretedFunction extends NativeFunction implements Script
         return Interpreter.resumeGenerator(cx, scope, operation, state, value);
     }
 
+    public boolean mayRetainArguments(Context cx)
+    {
+        // A debugger gets an activation for every frame
+        return idata.itsNeedsActivation || cx.debugger != null;
+    }
+
     protected int getLanguageVersion()
     {
         return idata.languageVersion;
@@ -180,8 +180,11 @@ public class Interpreter implements Evaluator
 
        Icode_DEBUGGER                   = -64,
 
+    // Property "length" pushed as an unboxed number for arrays and strings
+       Icode_LENGTH                     = -65,
+
        // Last icode
-        MIN_ICODE                       = -64;
+        MIN_ICODE                       = -65;
 
     // data for parsing
 
@@ -453,6 +456,7 @@ public class Interpreter implements Evaluator
           case Icode_GENERATOR:        return "GENERATOR";
           case Icode_GENERATOR_END:    return "GENERATOR_END";
           case Icode_DEBUGGER:         return "DEBUGGER";
+          case Icode_LENGTH:           return "LENGTH";
         }
 
         // icode without name
@@ -508,11 +512,8 @@ public class Interpreter implements Evaluator
 
     public Script createScriptObject(Object bytecode, Object staticSecurityDomain)
     {
-        if(bytecode != itsData)
-        {
-            Kit.codeBug();
-        }
-        return InterpretedFunction.createScript(itsData,
+        checkBytecode(bytecode);
+        return InterpretedFunction.createScript((InterpreterData)bytecode,
                                                 staticSecurityDomain);
     }
 
@@ -524,12 +525,21 @@ public class Interpreter implements Evaluator
     public Function createFunctionObject(Context cx, Scriptable scope,
             Object bytecode, Object staticSecurityDomain)
     {
-        if(bytecode != itsData)
+        checkBytecode(bytecode);
+        return InterpretedFunction.createFunction(cx, scope,
+                                                  (InterpreterData)bytecode,
+                                                  staticSecurityDomain);
+    }
+
+    private void checkBytecode(Object bytecode)
+    {
+        // bytecode may come from CompiledScriptCache rather than compile(),
+        // in which case this instance has not compiled anything
+        if (bytecode != itsData
+            && (itsData != null || !(bytecode instanceof InterpreterData)))
         {
             Kit.codeBug();
         }
-        return InterpretedFunction.createFunction(cx, scope, itsData,
-                                                  staticSecurityDomain);
     }
 
     private void generateFunctionICode()
@@ -1081,7 +1091,11 @@ public class Interpreter implements Evaluator
           case Token.GETPROPNOWARN:
             visitExpression(child, 0);
             child = child.getNext();
-            addStringOp(type, child.getString());
+            if (type == Token.GETPROP && child.getString().equals("length")) {
+                addStringOp(Icode_LENGTH, "length");
+            } else {
+                addStringOp(type, child.getString());
+            }
             break;
 
           case Token.GETELEM:
@@ -2253,6 +2267,229 @@ public class Interpreter implements Evaluator
         return 1;
     }
 
+    private static int doCallSpecial(Context cx, CallFrame frame,
+                                     Object[] stack, double[] sDbl,
+                                     int stackTop, byte[] iCode,
+                                     int indexReg)
+    {
+        int callType = iCode[frame.pc] & 0xFF;
+        boolean isNew =  (iCode[frame.pc + 1] != 0);
+        int sourceLine = getIndex(iCode, frame.pc + 2);
+
+        // indexReg: number of arguments
+        if (isNew) {
+            // stack change: function arg0 .. argN -> newResult
+            stackTop -= indexReg;
+
+            Object function = stack[stackTop];
+            if (function == UniqueTag.DOUBLE_MARK)
+                function = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+            Object[] outArgs = getArgsArray(
+                                   stack, sDbl, stackTop + 1, indexReg);
+            stack[stackTop] = ScriptRuntime.newSpecial(
+                                  cx, function, outArgs, frame.scope, callType);
+        } else {
+            // stack change: function thisObj arg0 .. argN -> result
+            stackTop -= 1 + indexReg;
+
+            // Call code generation ensure that stack here
+            // is ... Callable Scriptable
+            Scriptable functionThis = (Scriptable)stack[stackTop + 1];
+            Callable function = (Callable)stack[stackTop];
+            Object[] outArgs = getArgsArray(
+                                   stack, sDbl, stackTop + 2, indexReg);
+            stack[stackTop] = ScriptRuntime.callSpecial(
+                                  cx, function, functionThis, outArgs,
+                                  frame.scope, frame.thisObj, callType,
+                                  frame.idata.itsSourceFile, sourceLine);
+        }
+        frame.pc += 4;
+        return stackTop;
+    }
+
+    /**
+     * Call a Math function with its number arguments taken directly from
+     * the stack, leaving the result unboxed.
+     * @return false if an argument is not a number
+     */
+    private static boolean doNumericCall(IdFunctionObject f, Object[] stack,
+                                         double[] sDbl, int stackTop,
+                                         int argc)
+    {
+        double x = 0, y = 0;
+        for (int i = 0; i != argc; ++i) {
+            Object arg = stack[stackTop + 2 + i];
+            double d;
+            if (arg == UniqueTag.DOUBLE_MARK) {
+                d = sDbl[stackTop + 2 + i];
+            } else if (arg instanceof Number) {
+                d = ((Number)arg).doubleValue();
+            } else {
+                return false;
+            }
+            if (i == 0) {
+                x = d;
+            } else {
+                y = d;
+            }
+        }
+        stack[stackTop] = UniqueTag.DOUBLE_MARK;
+        sDbl[stackTop] = NativeMath.callNumeric(f, argc, x, y);
+        return true;
+    }
+
+    // The property icodes below run their inline cache outside of
+    // interpretLoop to keep it small enough for the JIT to compile.
+
+    private static Object doGetProp(CallFrame frame, int op, Object lhs,
+                                    String name, Context cx)
+    {
+        Object[] cache = getPropertyCache(frame.idata);
+        int site = frame.pc - 1;
+        Object value = ScriptableObject.getCachedProperty(cache, site, lhs);
+        if (value == Scriptable.NOT_FOUND) {
+            if (op == Token.GETPROP) {
+                value = ScriptRuntime.getObjectProp(lhs, name, cx);
+            } else {
+                value = ScriptRuntime.getObjectPropNoWarn(lhs, name, cx);
+            }
+            ScriptableObject.updatePropertyCache(cache, site, lhs, name);
+        }
+        return value;
+    }
+
+    private static Object doSetProp(CallFrame frame, Object lhs, String name,
+                                    Object rhs, Context cx)
+    {
+        Object[] cache = getPropertyCache(frame.idata);
+        int site = frame.pc - 1;
+        if (!ScriptableObject.putCachedProperty(cache, site, lhs, rhs)) {
+            ScriptRuntime.setObjectProp(lhs, name, rhs, cx);
+            ScriptableObject.updatePropertyCache(cache, site, lhs, name);
+        }
+        return rhs;
+    }
+
+    private static void doPropAndThis(CallFrame frame, Object[] stack,
+                                      int stackTop, Object obj, String name,
+                                      Context cx)
+    {
+        Object[] cache = getPropertyCache(frame.idata);
+        int site = frame.pc - 1;
+        Object value = ScriptableObject.getCachedProperty(cache, site, obj);
+        if (value instanceof Callable) {
+            stack[stackTop] = value;
+            stack[stackTop + 1] = obj;
+            return;
+        }
+        stack[stackTop] = ScriptRuntime.getPropFunctionAndThis(obj, name, cx);
+        stack[stackTop + 1] = ScriptRuntime.lastStoredScriptable(cx);
+        ScriptableObject.updatePropertyCache(cache, site, obj, name);
+    }
+
+    // Elements of a Java double[] indexed by a number are read and written
+    // without boxing them.
+
+    private static void doGetElem(Context cx, Object[] stack, double[] sDbl,
+                                  int stackTop)
+    {
+        Object lhs = stack[stackTop];
+        if (lhs == UniqueTag.DOUBLE_MARK) {
+            lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+        }
+        Object value;
+        Object id = stack[stackTop + 1];
+        if (id != UniqueTag.DOUBLE_MARK) {
+            value = ScriptRuntime.getObjectElem(lhs, id, cx);
+        } else {
+            double d = sDbl[stackTop + 1];
+            if (lhs instanceof NativeJavaArray) {
+                double[] array = ((NativeJavaArray)lhs).doubleArray;
+                int index = (int)d;
+                if (array != null && index == d && 0 <= index
+                    && index < array.length)
+                {
+                    stack[stackTop] = UniqueTag.DOUBLE_MARK;
+                    sDbl[stackTop] = array[index];
+                    return;
+                }
+            }
+            value = ScriptRuntime.getObjectIndex(lhs, d, cx);
+        }
+        stack[stackTop] = value;
+    }
+
+    private static void doSetElem(Context cx, Object[] stack, double[] sDbl,
+                                  int stackTop)
+    {
+        Object rhs = stack[stackTop + 2];
+        Object lhs = stack[stackTop];
+        if (lhs == UniqueTag.DOUBLE_MARK) {
+            lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+        }
+        Object id = stack[stackTop + 1];
+        if (id == UniqueTag.DOUBLE_MARK && lhs instanceof NativeJavaArray
+            && (rhs == UniqueTag.DOUBLE_MARK || rhs instanceof Number))
+        {
+            double[] array = ((NativeJavaArray)lhs).doubleArray;
+            double d = sDbl[stackTop + 1];
+            int index = (int)d;
+            if (array != null && index == d && 0 <= index
+                && index < array.length)
+            {
+                if (rhs == UniqueTag.DOUBLE_MARK) {
+                    array[index] = sDbl[stackTop] = sDbl[stackTop + 2];
+                } else {
+                    array[index] = ((Number)rhs).doubleValue();
+                }
+                stack[stackTop] = rhs;
+                return;
+            }
+        }
+        if (rhs == UniqueTag.DOUBLE_MARK) {
+            rhs = ScriptRuntime.wrapNumber(sDbl[stackTop + 2]);
+        }
+        Object value;
+        if (id != UniqueTag.DOUBLE_MARK) {
+            value = ScriptRuntime.setObjectElem(lhs, id, rhs, cx);
+        } else {
+            double d = sDbl[stackTop + 1];
+            value = ScriptRuntime.setObjectIndex(lhs, d, rhs, cx);
+        }
+        stack[stackTop] = value;
+    }
+
+    private static Object[] getPropertyCache(InterpreterData idata)
+    {
+        Object[] cache = idata.itsPropertyCache;
+        if (cache == null) {
+            // Racing threads may each allocate a table, which is harmless:
+            // the cache is only an optimization.
+            cache = new Object[idata.itsICode.length];
+            idata.itsPropertyCache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * Get the root shape shared by objects of the literal at the given
+     * site, or null if shapes are disabled.
+     */
+    private static Shape getLiteralShape(Context cx, InterpreterData idata,
+                                         int site)
+    {
+        if (!cx.hasFeature(Context.FEATURE_PROPERTY_SHAPES)) {
+            return null;
+        }
+        Object[] cache = getPropertyCache(idata);
+        Shape root = (Shape)cache[site];
+        if (root == null) {
+            root = new Shape();
+            cache[site] = root;
+        }
+        return root;
+    }
+
     static int[] getLineNumbers(InterpreterData data)
     {
         UintMap presentLines = new UintMap();
@@ -3042,16 +3279,11 @@ switch (op) {
         stack[stackTop] = ScriptRuntime.delete(lhs, rhs, cx);
         continue Loop;
     }
-    case Token.GETPROPNOWARN : {
-        Object lhs = stack[stackTop];
-        if (lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-        stack[stackTop] = ScriptRuntime.getObjectPropNoWarn(lhs, stringReg, cx);
-        continue Loop;
-    }
+    case Token.GETPROPNOWARN :
     case Token.GETPROP : {
         Object lhs = stack[stackTop];
         if (lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-        stack[stackTop] = ScriptRuntime.getObjectProp(lhs, stringReg, cx);
+        stack[stackTop] = doGetProp(frame, op, lhs, stringReg, cx);
         continue Loop;
     }
     case Token.SETPROP : {
@@ -3060,8 +3292,7 @@ switch (op) {
         --stackTop;
         Object lhs = stack[stackTop];
         if (lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-        stack[stackTop] = ScriptRuntime.setObjectProp(lhs, stringReg, rhs,
-                                                      cx);
+        stack[stackTop] = doSetProp(frame, lhs, stringReg, rhs, cx);
         continue Loop;
     }
     case Icode_PROP_INC_DEC : {
@@ -3072,44 +3303,14 @@ switch (op) {
         ++frame.pc;
         continue Loop;
     }
-    case Token.GETELEM : {
+    case Token.GETELEM :
         --stackTop;
-        Object lhs = stack[stackTop];
-        if (lhs == DBL_MRK) {
-            lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-        }
-        Object value;
-        Object id = stack[stackTop + 1];
-        if (id != DBL_MRK) {
-            value = ScriptRuntime.getObjectElem(lhs, id, cx);
-        } else {
-            double d = sDbl[stackTop + 1];
-            value = ScriptRuntime.getObjectIndex(lhs, d, cx);
-        }
-        stack[stackTop] = value;
+        doGetElem(cx, stack, sDbl, stackTop);
         continue Loop;
-    }
-    case Token.SETELEM : {
+    case Token.SETELEM :
         stackTop -= 2;
-        Object rhs = stack[stackTop + 2];
-        if (rhs == DBL_MRK) {
-            rhs = ScriptRuntime.wrapNumber(sDbl[stackTop + 2]);
-        }
-        Object lhs = stack[stackTop];
-        if (lhs == DBL_MRK) {
-            lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-        }
-        Object value;
-        Object id = stack[stackTop + 1];
-        if (id != DBL_MRK) {
-            value = ScriptRuntime.setObjectElem(lhs, id, rhs, cx);
-        } else {
-            double d = sDbl[stackTop + 1];
-            value = ScriptRuntime.setObjectIndex(lhs, d, rhs, cx);
-        }
-        stack[stackTop] = value;
+        doSetElem(cx, stack, sDbl, stackTop);
         continue Loop;
-    }
     case Icode_ELEM_INC_DEC: {
         Object rhs = stack[stackTop];
         if (rhs == DBL_MRK) rhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
@@ -3167,10 +3368,8 @@ switch (op) {
         Object obj = stack[stackTop];
         if (obj == DBL_MRK) obj = ScriptRuntime.wrapNumber(sDbl[stackTop]);
         // stringReg: property
-        stack[stackTop] = ScriptRuntime.getPropFunctionAndThis(obj, stringReg,
-                                                               cx);
+        doPropAndThis(frame, stack, stackTop, obj, stringReg, cx);
         ++stackTop;
-        stack[stackTop] = ScriptRuntime.lastStoredScriptable(cx);
         continue Loop;
     }
     case Icode_ELEM_AND_THIS: {
@@ -3194,38 +3393,8 @@ switch (op) {
         if (instructionCounting) {
             cx.instructionCount += INVOCATION_COST;
         }
-        int callType = iCode[frame.pc] & 0xFF;
-        boolean isNew =  (iCode[frame.pc + 1] != 0);
-        int sourceLine = getIndex(iCode, frame.pc + 2);
-
-        // indexReg: number of arguments
-        if (isNew) {
-            // stack change: function arg0 .. argN -> newResult
-            stackTop -= indexReg;
-
-            Object function = stack[stackTop];
-            if (function == DBL_MRK)
-                function = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-            Object[] outArgs = getArgsArray(
-                                   stack, sDbl, stackTop + 1, indexReg);
-            stack[stackTop] = ScriptRuntime.newSpecial(
-                                  cx, function, outArgs, frame.scope, callType);
-        } else {
-            // stack change: function thisObj arg0 .. argN -> result
-            stackTop -= 1 + indexReg;
-
-            // Call code generation ensure that stack here
-            // is ... Callable Scriptable
-            Scriptable functionThis = (Scriptable)stack[stackTop + 1];
-            Callable function = (Callable)stack[stackTop];
-            Object[] outArgs = getArgsArray(
-                                   stack, sDbl, stackTop + 2, indexReg);
-            stack[stackTop] = ScriptRuntime.callSpecial(
-                                  cx, function, functionThis, outArgs,
-                                  frame.scope, frame.thisObj, callType,
-                                  frame.idata.itsSourceFile, sourceLine);
-        }
-        frame.pc += 4;
+        stackTop = doCallSpecial(cx, frame, stack, sDbl, stackTop, iCode,
+                                 indexReg);
         continue Loop;
     }
     case Token.CALL :
@@ -3255,7 +3424,9 @@ switch (op) {
         }
         if (fun instanceof InterpretedFunction) {
             InterpretedFunction ifun = (InterpretedFunction)fun;
-            if (frame.fnOrScript.securityDomain == ifun.securityDomain) {
+            if (frame.fnOrScript.securityDomain == ifun.securityDomain
+                && ifun.getTieredFunction(cx) == null)
+            {
                 CallFrame callParentFrame = frame;
                 CallFrame calleeFrame = new CallFrame();
                 if (op == Icode_TAIL_CALL) {
@@ -3312,6 +3483,11 @@ switch (op) {
 
         if (fun instanceof IdFunctionObject) {
             IdFunctionObject ifun = (IdFunctionObject)fun;
+            if (indexReg <= 2 && NativeMath.isNumericFunction(ifun)
+                && doNumericCall(ifun, stack, sDbl, stackTop, indexReg))
+            {
+                continue Loop;
+            }
             if (Continuation.isContinuationConstructor(ifun)) {
                 captureContinuation(cx, frame, stackTop);
                 continue Loop;
@@ -3322,7 +3498,8 @@ switch (op) {
                 Callable applyCallable = ScriptRuntime.getCallable(funThisObj);
                 if(applyCallable instanceof InterpretedFunction) {
                     InterpretedFunction iApplyCallable = (InterpretedFunction)applyCallable;
-                    if(frame.fnOrScript.securityDomain == iApplyCallable.securityDomain) {
+                    if(frame.fnOrScript.securityDomain == iApplyCallable.securityDomain
+                       && iApplyCallable.getTieredFunction(cx) == null) {
                         frame = initFrameForApplyOrCall(cx, frame, indexReg,
                                 stack, sDbl, stackTop, op, calleeScope, ifun,
                                 iApplyCallable);
@@ -3332,8 +3509,9 @@ switch (op) {
             }
         }
 
-        stack[stackTop] = fun.call(cx, calleeScope, funThisObj, 
-                getArgsArray(stack, sDbl, stackTop + 2, indexReg));
+        stack[stackTop] = fun.call(cx, calleeScope, funThisObj,
+                ScriptRuntime.flattenArgs(fun,
+                    getArgsArray(stack, sDbl, stackTop + 2, indexReg)));
 
         continue Loop;
     }
@@ -3348,7 +3526,9 @@ switch (op) {
         Object lhs = stack[stackTop];
         if (lhs instanceof InterpretedFunction) {
             InterpretedFunction f = (InterpretedFunction)lhs;
-            if (frame.fnOrScript.securityDomain == f.securityDomain) {
+            if (frame.fnOrScript.securityDomain == f.securityDomain
+                && f.getTieredFunction(cx) == null)
+            {
                 Scriptable newInstance = f.createObject(cx, frame.scope);
                 CallFrame calleeFrame = new CallFrame();
                 initFrame(cx, frame.scope, newInstance, stack, sDbl,
@@ -3377,6 +3557,7 @@ switch (op) {
         }
 
         Object[] outArgs = getArgsArray(stack, sDbl, stackTop + 1, indexReg);
+        outArgs = ScriptRuntime.flattenArgs(fun, outArgs);
         stack[stackTop] = fun.construct(cx, frame.scope, outArgs);
         continue Loop;
     }
@@ -3695,8 +3876,9 @@ switch (op) {
         Object val;
         if (op == Token.OBJECTLIT) {
             Object[] ids = (Object[])frame.idata.literalIds[indexReg];
-            val = ScriptRuntime.newObjectLiteral(ids, data, getterSetters, cx,
-                    frame.scope);
+            Shape shapeRoot = getLiteralShape(cx, frame.idata, frame.pc - 1);
+            val = ScriptRuntime.newObjectLiteral(ids, data, getterSetters,
+                                                 shapeRoot, cx, frame.scope);
         } else {
             int[] skipIndexces = null;
             if (op == Icode_SPARE_ARRAYLIT) {
@@ -3748,6 +3930,21 @@ switch (op) {
         }
         continue Loop;
     }
+    case Icode_LENGTH : {
+        Object lhs = stack[stackTop];
+        if (lhs instanceof NativeArray) {
+            stack[stackTop] = DBL_MRK;
+            sDbl[stackTop] = ((NativeArray)lhs).getLength();
+            continue Loop;
+        } else if (lhs instanceof String || lhs instanceof ConsString) {
+            stack[stackTop] = DBL_MRK;
+            sDbl[stackTop] = ((CharSequence)lhs).length();
+            continue Loop;
+        }
+        if (lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+        stack[stackTop] = doGetProp(frame, Token.GETPROP, lhs, stringReg, cx);
+        continue Loop;
+    }
     case Icode_DEBUGGER:
         if (frame.debuggerFrame != null) {
             frame.debuggerFrame.onDebuggerStatement(cx);
@@ -3829,6 +4026,10 @@ switch (op) {
                         addInstructionCount(cx, frame, 2);
                     }
                     int offset = getShort(iCode, frame.pc);
+                    if (offset < 0 && frame.idata.itsTierSource != null) {
+                        // Loop back edge counts towards tiered promotion
+                        ++frame.idata.itsTierCount;
+                    }
                     if (offset != 0) {
                         // -1 accounts for pc pointing to jump opcode + 1
                         frame.pc += offset - 1;
@@ -4570,14 +4771,14 @@ switch (op) {
         } else {
             if (lhs instanceof Scriptable || rhs instanceof Scriptable) {
                 stack[stackTop] = ScriptRuntime.add(lhs, rhs, cx);
-            } else if (lhs instanceof String) {
-                String lstr = (String)lhs;
-                String rstr = ScriptRuntime.toString(rhs);
-                stack[stackTop] = lstr.concat(rstr);
-            } else if (rhs instanceof String) {
-                String lstr = ScriptRuntime.toString(lhs);
-                String rstr = (String)rhs;
-                stack[stackTop] = lstr.concat(rstr);
+            } else if (lhs instanceof String || lhs instanceof ConsString) {
+                CharSequence lstr = (CharSequence)lhs;
+                CharSequence rstr = ScriptRuntime.toCharSequence(rhs);
+                stack[stackTop] = ConsString.concat(lstr, rstr);
+            } else if (rhs instanceof String || rhs instanceof ConsString) {
+                CharSequence lstr = ScriptRuntime.toCharSequence(lhs);
+                CharSequence rstr = (CharSequence)rhs;
+                stack[stackTop] = ConsString.concat(lstr, rstr);
             } else {
                 double lDbl = (lhs instanceof Number)
                     ? ((Number)lhs).doubleValue() : ScriptRuntime.toNumber(lhs);
@@ -4598,13 +4799,13 @@ switch (op) {
                 rhs = tmp;
             }
             stack[stackTop] = ScriptRuntime.add(lhs, rhs, cx);
-        } else if (lhs instanceof String) {
-            String lstr = (String)lhs;
-            String rstr = ScriptRuntime.toString(d);
+        } else if (lhs instanceof String || lhs instanceof ConsString) {
+            CharSequence lstr = (CharSequence)lhs;
+            CharSequence rstr = ScriptRuntime.toString(d);
             if (leftRightOrder) {
-                stack[stackTop] = lstr.concat(rstr);
+                stack[stackTop] = ConsString.concat(lstr, rstr);
             } else {
-                stack[stackTop] = rstr.concat(lstr);
+                stack[stackTop] = ConsString.concat(rstr, lstr);
             }
         } else {
             double lDbl = (lhs instanceof Number)
@@ -124,6 +124,16 @@ final class InterpreterData implements Serializable, DebuggableScript
 
     boolean evalScriptFlag; // true if script corresponds to eval() code
 
+    // Inline caches for property access icodes indexed by icode offset,
+    // allocated on first use
+    transient Object[] itsPropertyCache;
+
+    // Tiered compilation state, see TieredCompiler. itsTierSource is null
+    // for code that never leaves the interpreter.
+    transient TieredCompiler.Source itsTierSource;
+    transient int itsTierCount;
+    transient volatile Object itsTierState;
+
     public boolean isTopLevel()
     {
         return topLevel;
@@ -0,0 +1,294 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.lang.reflect.*;
+
+import org.mozilla.classfile.ByteCode;
+import org.mozilla.classfile.ClassFileWriter;
+
+/**
+ * Generates a {@link MemberInvoker} subclass that calls one Java method
+ * or constructor directly.
+ */
+final class InvokerCodegen
+{
+    private static final String SUPER_CLASS
+        = "org.mozilla.javascript.MemberInvoker";
+
+    // Local variable slots of the generated invoke method
+    private static final int
+        TARGET_ARG   = 1,
+        ARGS_ARG     = 2,
+        LOCALS_COUNT = 3;
+
+    private static int serial;
+
+    private InvokerCodegen() { }
+
+    /**
+     * Return an invoker for <tt>member</tt>, or null if it can not be
+     * called from a generated class.
+     */
+    static MemberInvoker generate(MemberBox member)
+    {
+        Member m = member.member();
+        Class declaringClass = m.getDeclaringClass();
+        Class[] argTypes = member.argTypes;
+        Class returnType = member.isMethod() ? member.method().getReturnType()
+                                             : Void.TYPE;
+        int modifiers = m.getModifiers();
+        if (!Modifier.isPublic(modifiers) || !isPublic(declaringClass))
+            return null;
+        if (member.isCtor()) {
+            if (Modifier.isAbstract(declaringClass.getModifiers()))
+                return null;
+        } else if (declaringClass.isInterface()
+                   && Modifier.isStatic(modifiers))
+        {
+            // Would need an InterfaceMethodref for invokestatic
+            return null;
+        }
+        for (int i = 0; i != argTypes.length; ++i) {
+            if (!isPublic(argTypes[i]))
+                return null;
+        }
+
+        // The generated class refers to MemberInvoker and to the types of
+        // the member, which must all resolve to the same classes through
+        // its class loader
+        ClassLoader rhinoLoader = InvokerCodegen.class.getClassLoader();
+        ClassLoader parent = rhinoLoader;
+        if (!isVisible(member, returnType, parent)) {
+            parent = declaringClass.getClassLoader();
+            if (parent == null || parent == rhinoLoader
+                || !isVisible(member, returnType, parent)
+                || !isVisible(MemberInvoker.class, parent))
+            {
+                return null;
+            }
+        }
+
+        String className;
+        synchronized (InvokerCodegen.class) {
+            className = "org.mozilla.javascript.gen.invoker" + (++serial);
+        }
+        byte[] classBytes = generateCode(className, member, returnType);
+
+        try {
+            GeneratedClassLoader loader;
+            loader = SecurityController.createLoader(parent, null);
+            Class cl = loader.defineClass(className, classBytes);
+            loader.linkClass(cl);
+            return (MemberInvoker)cl.newInstance();
+        } catch (Exception ex) {
+            // Keep using reflection
+            return null;
+        }
+    }
+
+    private static byte[] generateCode(String className, MemberBox member,
+                                       Class returnType)
+    {
+        ClassFileWriter cfw = new ClassFileWriter(className, SUPER_CLASS,
+                                                  "<invoker>");
+        cfw.startMethod("<init>", "()V", ClassFileWriter.ACC_PUBLIC);
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, SUPER_CLASS, "<init>", "()V");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short)1);
+
+        cfw.startMethod("invoke",
+                        "(Ljava/lang/Object;[Ljava/lang/Object;)"
+                        +"Ljava/lang/Object;",
+                        ClassFileWriter.ACC_PUBLIC);
+        Class declaringClass = member.getDeclaringClass();
+        String declaringName = declaringClass.getName();
+        Class[] argTypes = member.argTypes;
+        StringBuffer sb = new StringBuffer();
+        JavaAdapter.appendMethodSignature(argTypes, returnType, sb);
+        String signature = sb.toString();
+
+        if (member.isCtor()) {
+            cfw.add(ByteCode.NEW, declaringName);
+            cfw.add(ByteCode.DUP);
+            generatePushArgs(cfw, argTypes);
+            cfw.addInvoke(ByteCode.INVOKESPECIAL, declaringName, "<init>",
+                          signature);
+        } else {
+            String name = member.getName();
+            if (member.isStatic()) {
+                generatePushArgs(cfw, argTypes);
+                cfw.addInvoke(ByteCode.INVOKESTATIC, declaringName, name,
+                              signature);
+            } else {
+                cfw.addALoad(TARGET_ARG);
+                cfw.add(ByteCode.CHECKCAST, declaringName);
+                generatePushArgs(cfw, argTypes);
+                int opcode = declaringClass.isInterface()
+                             ? ByteCode.INVOKEINTERFACE
+                             : ByteCode.INVOKEVIRTUAL;
+                cfw.addInvoke(opcode, declaringName, name, signature);
+            }
+            if (returnType == Void.TYPE) {
+                cfw.add(ByteCode.ACONST_NULL);
+            } else if (returnType.isPrimitive()) {
+                generateBox(cfw, returnType);
+            }
+        }
+        cfw.add(ByteCode.ARETURN);
+        cfw.stopMethod((short)LOCALS_COUNT);
+        return cfw.toByteArray();
+    }
+
+    /*
+     * Push args[i] for each parameter, unboxed or cast to its type.
+     * Numbers are unboxed through java.lang.Number so that the widening
+     * conversions reflection allows, such as Integer to long, work too.
+     */
+    private static void generatePushArgs(ClassFileWriter cfw,
+                                         Class[] argTypes)
+    {
+        for (int i = 0; i != argTypes.length; ++i) {
+            Class type = argTypes[i];
+            cfw.addALoad(ARGS_ARG);
+            cfw.addPush(i);
+            cfw.add(ByteCode.AALOAD);
+            if (!type.isPrimitive()) {
+                if (type != ScriptRuntime.ObjectClass) {
+                    cfw.add(ByteCode.CHECKCAST, type.getName());
+                }
+            } else if (type == Boolean.TYPE) {
+                cfw.add(ByteCode.CHECKCAST, "java/lang/Boolean");
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Boolean",
+                              "booleanValue", "()Z");
+            } else if (type == Character.TYPE) {
+                cfw.add(ByteCode.CHECKCAST, "java/lang/Character");
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Character",
+                              "charValue", "()C");
+            } else {
+                String typeName = type.getName();
+                String descriptor = typeDescriptor(type);
+                cfw.add(ByteCode.CHECKCAST, "java/lang/Number");
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Number",
+                              typeName + "Value", "()" + descriptor);
+            }
+        }
+    }
+
+    /* Replace the primitive value on the stack by its wrapper */
+    private static void generateBox(ClassFileWriter cfw, Class type)
+    {
+        String wrapper;
+        if (type == Boolean.TYPE) {
+            wrapper = "java/lang/Boolean";
+        } else if (type == Character.TYPE) {
+            wrapper = "java/lang/Character";
+        } else if (type == Integer.TYPE) {
+            wrapper = "java/lang/Integer";
+        } else if (type == Double.TYPE) {
+            wrapper = "java/lang/Double";
+        } else if (type == Long.TYPE) {
+            wrapper = "java/lang/Long";
+        } else if (type == Float.TYPE) {
+            wrapper = "java/lang/Float";
+        } else if (type == Short.TYPE) {
+            wrapper = "java/lang/Short";
+        } else if (type == Byte.TYPE) {
+            wrapper = "java/lang/Byte";
+        } else {
+            throw Kit.codeBug();
+        }
+        cfw.addInvoke(ByteCode.INVOKESTATIC, wrapper, "valueOf",
+                      "(" + typeDescriptor(type) + ")L" + wrapper + ";");
+    }
+
+    private static String typeDescriptor(Class type)
+    {
+        return JavaAdapter.appendTypeString(new StringBuffer(), type)
+               .toString();
+    }
+
+    /* Whether code in any package may refer to the class */
+    private static boolean isPublic(Class c)
+    {
+        while (c.isArray()) {
+            c = c.getComponentType();
+        }
+        for (; c != null; c = c.getDeclaringClass()) {
+            if (!c.isPrimitive() && !Modifier.isPublic(c.getModifiers()))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isVisible(MemberBox member, Class returnType,
+                                     ClassLoader loader)
+    {
+        if (!isVisible(member.getDeclaringClass(), loader)
+            || !isVisible(returnType, loader))
+        {
+            return false;
+        }
+        Class[] argTypes = member.argTypes;
+        for (int i = 0; i != argTypes.length; ++i) {
+            if (!isVisible(argTypes[i], loader))
+                return false;
+        }
+        return true;
+    }
+
+    /* Whether loader finds c under its name */
+    private static boolean isVisible(Class c, ClassLoader loader)
+    {
+        while (c.isArray()) {
+            c = c.getComponentType();
+        }
+        if (c.isPrimitive())
+            return true;
+        try {
+            return Class.forName(c.getName(), false, loader) == c;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        } catch (LinkageError ex) {
+            return false;
+        } catch (SecurityException ex) {
+            return false;
+        }
+    }
+}
@@ -50,6 +50,8 @@ import java.lang.reflect.*;
 import java.io.*;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class JavaAdapter implements IdFunctionCall
 {
@@ -91,7 +93,7 @@ public final class JavaAdapter implements IdFunctionCall
             for (iter.start(); !iter.done(); iter.next()) {
                 String name = (String)iter.getKey();
                 int arity = iter.getValue();
-                if (arity != names.get(name, arity + 1))
+                if (arity != sig.names.get(name, arity + 1))
                     return false;
             }
             return true;
@@ -311,12 +313,21 @@ public final class JavaAdapter implements IdFunctionCall
         sig = new JavaAdapterSignature(superClass, interfaces, names);
         Class<?> adapterClass = generated.get(sig);
         if (adapterClass == null) {
-            String adapterName = "adapter"
-                                 + cache.newClassSerialNumber();
-            byte[] code = createAdapterCode(names, adapterName,
-                                            superClass, interfaces, null);
-
-            adapterClass = loadAdapterClass(adapterName, code);
+            Context cx = Context.getContext();
+            ConcurrentMap<JavaAdapterSignature,Class<?>> shared
+                = getSharedAdapters(cx);
+            if (shared != null) {
+                adapterClass = shared.get(sig);
+            }
+            if (adapterClass == null) {
+                adapterClass = generateAdapterClass(cx, cache, sig);
+                if (shared != null) {
+                    Class<?> previous = shared.putIfAbsent(sig, adapterClass);
+                    if (previous != null) {
+                        adapterClass = previous;
+                    }
+                }
+            }
             if (cache.isCachingEnabled()) {
                 generated.put(sig, adapterClass);
             }
@@ -324,6 +335,115 @@ public final class JavaAdapter implements IdFunctionCall
         return adapterClass;
     }
 
+    /**
+     * Return the JVM-wide adapter classes for the application class loader
+     * of cx, or null if they should not be shared. Classes generated under
+     * a SecurityController belong to the security domain of the calling
+     * code and are never shared.
+     */
+    private static ConcurrentMap<JavaAdapterSignature,Class<?>>
+        getSharedAdapters(Context cx)
+    {
+        if (!cx.hasFeature(Context.FEATURE_SHARED_ADAPTER_CLASSES)
+            || cx.getSecurityController() != null)
+        {
+            return null;
+        }
+        ClassLoader loader = cx.getApplicationClassLoader();
+        if (loader == null) {
+            return null;
+        }
+        ConcurrentMap<JavaAdapterSignature,Class<?>> table
+            = sharedAdapters.get(loader);
+        if (table == null) {
+            table = new ConcurrentHashMap<JavaAdapterSignature,Class<?>>();
+            ConcurrentMap<JavaAdapterSignature,Class<?>> previous
+                = sharedAdapters.putIfAbsent(loader, table);
+            if (previous != null) {
+                table = previous;
+            }
+        }
+        return table;
+    }
+
+    private static Class<?> generateAdapterClass(Context cx, ClassCache cache,
+                                                 JavaAdapterSignature sig)
+    {
+        CompiledScriptCache store = null;
+        if (cx.hasFeature(Context.FEATURE_STORED_ADAPTER_CLASSES)
+            && cx.getSecurityController() == null)
+        {
+            store = cx.getCompiledScriptCache();
+        }
+        if (store == null) {
+            String adapterName = "adapter" + cache.newClassSerialNumber();
+            byte[] code = createAdapterCode(sig.names, adapterName,
+                                            sig.superClass, sig.interfaces,
+                                            null);
+            return loadAdapterClass(adapterName, code);
+        }
+
+        // The class name is part of the stored bytes, so derive it from
+        // the key rather than from the per-scope serial number
+        String key = store.makeAdapterKey(cx, describeAdapter(sig));
+        String adapterName = "adapter_" + key;
+        Object stored = store.get(key);
+        if (stored instanceof byte[]) {
+            return loadAdapterClass(adapterName, (byte[])stored);
+        }
+        byte[] code = createAdapterCode(sig.names, adapterName,
+                                        sig.superClass, sig.interfaces, null);
+        Class<?> adapterClass = loadAdapterClass(adapterName, code);
+        store.put(key, code);
+        return adapterClass;
+    }
+
+    /**
+     * Describe everything the code of an adapter class depends on, so a
+     * stored class is not used again once the classes it extends have
+     * changed.
+     */
+    private static String describeAdapter(JavaAdapterSignature sig)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(sig.superClass.getName()).append('\n');
+        for (int i = 0; i != sig.interfaces.length; ++i) {
+            sb.append(sig.interfaces[i].getName()).append('\n');
+        }
+
+        TreeSet<String> sorted = new TreeSet<String>();
+        ObjToIntMap.Iterator iter = new ObjToIntMap.Iterator(sig.names);
+        for (iter.start(); !iter.done(); iter.next()) {
+            sorted.add(iter.getKey() + "/" + iter.getValue());
+        }
+        appendLines(sb, sorted);
+
+        addMethods(sorted, getOverridableMethods(sig.superClass));
+        addMethods(sorted, sig.superClass.getMethods());
+        for (int i = 0; i != sig.interfaces.length; ++i) {
+            addMethods(sorted, sig.interfaces[i].getMethods());
+        }
+        appendLines(sb, sorted);
+        return sb.toString();
+    }
+
+    private static void addMethods(TreeSet<String> set, Method[] methods)
+    {
+        for (int i = 0; i != methods.length; ++i) {
+            set.add(methods[i].toString());
+        }
+    }
+
+    private static void appendLines(StringBuffer sb, TreeSet<String> lines)
+    {
+        sb.append('\n');
+        Iterator<String> iter = lines.iterator();
+        while (iter.hasNext()) {
+            sb.append(iter.next()).append('\n');
+        }
+        lines.clear();
+    }
+
     public static byte[] createAdapterCode(ObjToIntMap functionNames,
                                            String adapterName,
                                            Class superClass,
@@ -1081,7 +1201,7 @@ public final class JavaAdapter implements IdFunctionCall
         return firstLocal;
     }
 
-    private static StringBuffer appendTypeString(StringBuffer sb, Class type)
+    static StringBuffer appendTypeString(StringBuffer sb, Class type)
     {
         while (type.isArray()) {
             sb.append('[');
@@ -1126,4 +1246,11 @@ public final class JavaAdapter implements IdFunctionCall
 
     private static final Object FTAG = new Object();
     private static final int Id_JavaAdapter = 1;
+
+    // Adapter classes shared by all scopes, by application class loader
+    private static final
+        ConcurrentMap<ClassLoader,
+                      ConcurrentMap<JavaAdapterSignature,Class<?>>>
+        sharedAdapters = new ConcurrentHashMap<ClassLoader,
+                             ConcurrentMap<JavaAdapterSignature,Class<?>>>();
 }
@@ -44,8 +44,16 @@ package org.mozilla.javascript;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Reflected members of a Java class.
+ * <p>
+ * The member tables of a single scope hold the function objects of that
+ * scope. Tables shared by the JavaMembers of every top-level scope, see
+ * {@link Context#FEATURE_SHARED_JAVA_MEMBERS}, hold no scope: methods are
+ * stored as NativeJavaMethod objects without parent or prototype, and
+ * each scope creates its own function objects from them on first access.
  *
  * @author Mike Shaver
  * @author Norris Boyd
@@ -63,15 +71,18 @@ class JavaMembers
     {
         try {
             Context cx = ContextFactory.getGlobal().enterContext();
-            ClassShutter shutter = cx.getClassShutter();
-            if (shutter != null && !shutter.visibleToScripts(cl.getName())) {
-                throw Context.reportRuntimeError1("msg.access.prohibited",
-                                                  cl.getName());
-            }
+            checkVisible(cx, cl);
             this.includePrivate = cx.hasFeature(
                 Context.FEATURE_ENHANCED_JAVA_ACCESS);
-            this.members = new Hashtable(23);
-            this.staticMembers = new Hashtable(7);
+            if (scope != null) {
+                // Explicit overloads are added on lookup
+                this.members = new Hashtable(23);
+                this.staticMembers = new Hashtable(7);
+            } else {
+                // Shared tables are not changed after reflect()
+                this.members = new HashMap(23);
+                this.staticMembers = new HashMap(7);
+            }
             this.cl = cl;
             reflect(scope, includeProtected);
         } finally {
@@ -79,9 +90,34 @@ class JavaMembers
         }
     }
 
+    /*
+     * Members of the same class as shared, with function objects for scope.
+     */
+    private JavaMembers(JavaMembers shared, Scriptable scope)
+    {
+        this.cl = shared.cl;
+        this.members = shared.members;
+        this.fieldAndMethods = shared.fieldAndMethods;
+        this.staticMembers = shared.staticMembers;
+        this.staticFieldAndMethods = shared.staticFieldAndMethods;
+        this.ctors = shared.ctors;
+        this.includePrivate = shared.includePrivate;
+        this.scope = scope;
+        this.boundFunctions = new ConcurrentHashMap();
+    }
+
+    private static void checkVisible(Context cx, Class cl)
+    {
+        ClassShutter shutter = cx.getClassShutter();
+        if (shutter != null && !shutter.visibleToScripts(cl.getName())) {
+            throw Context.reportRuntimeError1("msg.access.prohibited",
+                                              cl.getName());
+        }
+    }
+
     boolean has(String name, boolean isStatic)
     {
-        Hashtable ht = isStatic ? staticMembers : members;
+        Map ht = isStatic ? staticMembers : members;
         Object obj = ht.get(name);
         if (obj != null) {
             return true;
@@ -92,7 +128,7 @@ class JavaMembers
     Object get(Scriptable scope, String name, Object javaObject,
                boolean isStatic)
     {
-        Hashtable ht = isStatic ? staticMembers : members;
+        Map ht = isStatic ? staticMembers : members;
         Object member = ht.get(name);
         if (!isStatic && member == null) {
             // Try to get static member from instance (LC3)
@@ -104,8 +140,11 @@ class JavaMembers
             if (member == null)
                 return Scriptable.NOT_FOUND;
         }
-        if (member instanceof Scriptable) {
-            return member;
+        if (member instanceof Scriptable || member instanceof MemberBox) {
+            if (boundFunctions == null) {
+                return member;
+            }
+            return getFunction(member, name);
         }
         Context cx = Context.getContext();
         Object rval;
@@ -133,7 +172,7 @@ class JavaMembers
     void put(Scriptable scope, String name, Object javaObject,
              Object value, boolean isStatic)
     {
-        Hashtable ht = isStatic ? staticMembers : members;
+        Map ht = isStatic ? staticMembers : members;
         Object member = ht.get(name);
         if (!isStatic && member == null) {
             // Try to get static member from instance (LC3)
@@ -197,13 +236,50 @@ class JavaMembers
 
     Object[] getIds(boolean isStatic)
     {
-        Hashtable ht = isStatic ? staticMembers : members;
-        int len = ht.size();
-        Object[] result = new Object[len];
-        Enumeration keys = ht.keys();
-        for (int i=0; i < len; i++)
-            result[i] = keys.nextElement();
-        return result;
+        Map ht = isStatic ? staticMembers : members;
+        return ht.keySet().toArray();
+    }
+
+    /*
+     * Return the function object of this scope for a method, a field that
+     * shares its name with methods, or an explicitly selected overload,
+     * creating it on first use. Only used with shared tables.
+     */
+    private Object getFunction(Object member, String name)
+    {
+        Object fun = boundFunctions.get(member);
+        if (fun == null) {
+            if (member instanceof FieldAndMethods) {
+                FieldAndMethods fam = (FieldAndMethods)member;
+                fun = new FieldAndMethods(scope, fam.methods, fam.field);
+            } else if (member instanceof NativeJavaMethod) {
+                NativeJavaMethod njm = (NativeJavaMethod)member;
+                NativeJavaMethod f = new NativeJavaMethod(njm.methods);
+                ScriptRuntime.setFunctionProtoAndParent(f, scope);
+                fun = f;
+            } else {
+                fun = newExplicitFunction(scope, (MemberBox)member, name);
+            }
+            Object previous = boundFunctions.putIfAbsent(member, fun);
+            if (previous != null) {
+                fun = previous;
+            }
+        }
+        return fun;
+    }
+
+    private static BaseFunction newExplicitFunction(Scriptable scope,
+                                                    MemberBox methodOrCtor,
+                                                    String name)
+    {
+        BaseFunction fun;
+        if (methodOrCtor.isCtor()) {
+            fun = new NativeJavaConstructor(methodOrCtor);
+        } else {
+            fun = new NativeJavaMethod(methodOrCtor, name);
+        }
+        fun.setPrototype(ScriptableObject.getFunctionPrototype(scope));
+        return fun;
     }
 
     static String javaSignature(Class type)
@@ -254,7 +330,7 @@ class JavaMembers
         int sigStart = name.indexOf('(');
         if (sigStart < 0) { return null; }
 
-        Hashtable ht = isStatic ? staticMembers : members;
+        Map ht = isStatic ? staticMembers : members;
         MemberBox[] methodsOrCtors = null;
         boolean isCtor = (isStatic && sigStart == 0);
 
@@ -290,36 +366,35 @@ class JavaMembers
         return null;
     }
 
+    /*
+     * Return the function of an explicitly selected overload or
+     * constructor, the method if it has no other overloads, or null.
+     * Shared tables are not changed, so for them the MemberBox of the
+     * overload or constructor is returned instead.
+     */
     private Object getExplicitFunction(Scriptable scope, String name,
                                        Object javaObject, boolean isStatic)
     {
-        Hashtable ht = isStatic ? staticMembers : members;
+        Map ht = isStatic ? staticMembers : members;
         Object member = null;
         MemberBox methodOrCtor = findExplicitFunction(name, isStatic);
 
         if (methodOrCtor != null) {
-            Scriptable prototype =
-                ScriptableObject.getFunctionPrototype(scope);
-
             if (methodOrCtor.isCtor()) {
-                NativeJavaConstructor fun =
-                    new NativeJavaConstructor(methodOrCtor);
-                fun.setPrototype(prototype);
-                member = fun;
-                ht.put(name, fun);
+                member = methodOrCtor;
             } else {
                 String trueName = methodOrCtor.getName();
                 member = ht.get(trueName);
 
                 if (member instanceof NativeJavaMethod &&
                     ((NativeJavaMethod)member).methods.length > 1 ) {
-                    NativeJavaMethod fun =
-                        new NativeJavaMethod(methodOrCtor, name);
-                    fun.setPrototype(prototype);
-                    ht.put(name, fun);
-                    member = fun;
+                    member = methodOrCtor;
                 }
             }
+            if (member instanceof MemberBox && boundFunctions == null) {
+                member = newExplicitFunction(scope, methodOrCtor, name);
+                ht.put(name, member);
+            }
         }
 
         return member;
@@ -456,7 +531,7 @@ class JavaMembers
             Method method = methods[i];
             int mods = method.getModifiers();
             boolean isStatic = Modifier.isStatic(mods);
-            Hashtable ht = isStatic ? staticMembers : members;
+            Map ht = isStatic ? staticMembers : members;
             String name = method.getName();
             Object value = ht.get(name);
             if (value == null) {
@@ -481,12 +556,12 @@ class JavaMembers
         // first in staticMembers and then in members
         for (int tableCursor = 0; tableCursor != 2; ++tableCursor) {
             boolean isStatic = (tableCursor == 0);
-            Hashtable ht = (isStatic) ? staticMembers : members;
-            Enumeration e = ht.keys();
-            while (e.hasMoreElements()) {
-                String name = (String)e.nextElement();
+            Map ht = (isStatic) ? staticMembers : members;
+            Iterator it = ht.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry entry = (Map.Entry)it.next();
                 MemberBox[] methodBoxes;
-                Object value = ht.get(name);
+                Object value = entry.getValue();
                 if (value instanceof Method) {
                     methodBoxes = new MemberBox[1];
                     methodBoxes[0] = new MemberBox((Method)value);
@@ -504,7 +579,7 @@ class JavaMembers
                 if (scope != null) {
                     ScriptRuntime.setFunctionProtoAndParent(fun, scope);
                 }
-                ht.put(name, fun);
+                entry.setValue(fun);
             }
         }
 
@@ -519,7 +594,7 @@ class JavaMembers
             }
             try {
                 boolean isStatic = Modifier.isStatic(mods);
-                Hashtable ht = isStatic ? staticMembers : members;
+                Map ht = isStatic ? staticMembers : members;
                 Object member = ht.get(name);
                 if (member == null) {
                     ht.put(name, field);
@@ -527,10 +602,10 @@ class JavaMembers
                     NativeJavaMethod method = (NativeJavaMethod) member;
                     FieldAndMethods fam
                         = new FieldAndMethods(scope, method.methods, field);
-                    Hashtable fmht = isStatic ? staticFieldAndMethods
-                                              : fieldAndMethods;
+                    Map fmht = isStatic ? staticFieldAndMethods
+                                        : fieldAndMethods;
                     if (fmht == null) {
-                        fmht = new Hashtable(4);
+                        fmht = new HashMap(4);
                         if (isStatic) {
                             staticFieldAndMethods = fmht;
                         } else {
@@ -568,15 +643,15 @@ class JavaMembers
         // static members and then for instance members
         for (int tableCursor = 0; tableCursor != 2; ++tableCursor) {
             boolean isStatic = (tableCursor == 0);
-            Hashtable ht = (isStatic) ? staticMembers : members;
+            Map ht = (isStatic) ? staticMembers : members;
 
-            Hashtable toAdd = new Hashtable();
+            Map toAdd = new HashMap();
 
             // Now, For each member, make "bean" properties.
-            for (Enumeration e = ht.keys(); e.hasMoreElements(); ) {
+            for (Iterator it = ht.keySet().iterator(); it.hasNext(); ) {
 
                 // Is this a getter?
-                String name = (String) e.nextElement();
+                String name = (String) it.next();
                 boolean memberIsGetMethod = name.startsWith("get");
                 boolean memberIsSetMethod = name.startsWith("set");
                 boolean memberIsIsMethod = name.startsWith("is");
@@ -653,11 +728,7 @@ class JavaMembers
             }
 
             // Add the new bean properties.
-            for (Enumeration e = toAdd.keys(); e.hasMoreElements();) {
-                Object key = e.nextElement();
-                Object value = toAdd.get(key);
-                ht.put(key, value);
-            }
+            ht.putAll(toAdd);
         }
 
         // Reflect constructors
@@ -716,7 +787,7 @@ class JavaMembers
         return cl.getFields();
     }
 
-    private MemberBox findGetter(boolean isStatic, Hashtable ht, String prefix,
+    private MemberBox findGetter(boolean isStatic, Map ht, String prefix,
                                  String propertyName)
     {
         String getterName = prefix.concat(propertyName);
@@ -807,14 +878,14 @@ class JavaMembers
     Hashtable getFieldAndMethodsObjects(Scriptable scope, Object javaObject,
                                         boolean isStatic)
     {
-        Hashtable ht = isStatic ? staticFieldAndMethods : fieldAndMethods;
+        Map ht = isStatic ? staticFieldAndMethods : fieldAndMethods;
         if (ht == null)
             return null;
         int len = ht.size();
         Hashtable result = new Hashtable(len);
-        Enumeration e = ht.elements();
+        Iterator it = ht.values().iterator();
         while (len-- > 0) {
-            FieldAndMethods fam = (FieldAndMethods) e.nextElement();
+            FieldAndMethods fam = (FieldAndMethods) it.next();
             FieldAndMethods famNew = new FieldAndMethods(scope, fam.methods,
                                                          fam.field);
             famNew.javaObject = javaObject;
@@ -830,6 +901,9 @@ class JavaMembers
         scope = ScriptableObject.getTopLevelScope(scope);
         ClassCache cache = ClassCache.get(scope);
         Map<Class<?>,JavaMembers> ct = cache.getClassCacheMap();
+        Context cx = Context.getCurrentContext();
+        boolean share = cx != null
+                        && cx.hasFeature(Context.FEATURE_SHARED_JAVA_MEMBERS);
 
         Class cl = dynamicType;
         for (;;) {
@@ -838,7 +912,11 @@ class JavaMembers
                 return members;
             }
             try {
-                members = new JavaMembers(scope, cl, includeProtected);
+                if (share) {
+                    members = lookupShared(cx, scope, cl, includeProtected);
+                } else {
+                    members = new JavaMembers(scope, cl, includeProtected);
+                }
                 break;
             } catch (SecurityException e) {
                 // Reflection may fail for objects that are in a restricted
@@ -868,19 +946,56 @@ class JavaMembers
         return members;
     }
 
+    /*
+     * Return members for scope made from the JVM-wide tables of the class,
+     * reflecting it if no scope did so yet.
+     */
+    private static JavaMembers lookupShared(Context cx, Scriptable scope,
+                                            Class cl, boolean includeProtected)
+    {
+        boolean includePrivate
+            = cx.hasFeature(Context.FEATURE_ENHANCED_JAVA_ACCESS);
+        int kind = (includeProtected ? 1 : 0) | (includePrivate ? 2 : 0);
+        ConcurrentHashMap table = sharedMembers[kind];
+        JavaMembers shared = (JavaMembers)table.get(cl);
+        if (shared == null) {
+            // Racing threads may reflect the class more than once, but all
+            // scopes end up with the same tables
+            shared = new JavaMembers(null, cl, includeProtected);
+            JavaMembers previous = (JavaMembers)table.putIfAbsent(cl, shared);
+            if (previous != null) {
+                shared = previous;
+            }
+        } else {
+            checkVisible(cx, cl);
+        }
+        return new JavaMembers(shared, scope);
+    }
+
     RuntimeException reportMemberNotFound(String memberName)
     {
         return Context.reportRuntimeError2(
             "msg.java.member.not.found", cl.getName(), memberName);
     }
 
+    /* Shared members indexed by includeProtected | includePrivate << 1 */
+    private static final ConcurrentHashMap[] sharedMembers = {
+        new ConcurrentHashMap(), new ConcurrentHashMap(),
+        new ConcurrentHashMap(), new ConcurrentHashMap()
+    };
+
     private Class cl;
-    private Hashtable members;
-    private Hashtable fieldAndMethods;
-    private Hashtable staticMembers;
-    private Hashtable staticFieldAndMethods;
+    private Map members;
+    private Map fieldAndMethods;
+    private Map staticMembers;
+    private Map staticFieldAndMethods;
     MemberBox[] ctors;
     private boolean includePrivate;
+
+    // Function objects of this scope by member when the tables are shared,
+    // see getFunction
+    private Scriptable scope;
+    private ConcurrentHashMap boundFunctions;
 }
 
 class BeanProperty
@@ -905,8 +1020,10 @@ class FieldAndMethods extends NativeJavaMethod
     {
         super(methods);
         this.field = field;
-        setParentScope(scope);
-        setPrototype(ScriptableObject.getFunctionPrototype(scope));
+        if (scope != null) {
+            setParentScope(scope);
+            setPrototype(ScriptableObject.getFunctionPrototype(scope));
+        }
     }
 
     public Object getDefaultValue(Class hint)
@@ -60,6 +60,9 @@ final class MemberBox implements Serializable
     transient Class[] argTypes;
     transient Object delegateTo;
     transient boolean vararg;
+    private transient MemberInvoker invoker;
+    private transient int invocationCount;
+    private transient boolean reflectOnly;
 
 
     MemberBox(Method method)
@@ -152,8 +155,38 @@ final class MemberBox implements Serializable
         return memberObject.toString();
     }
 
+    /*
+     * Return the generated invoker for this member, generating it once the
+     * member has been called often enough, or null to use reflection.
+     */
+    private MemberInvoker getInvoker()
+    {
+        MemberInvoker invoker = this.invoker;
+        if (invoker == null && !reflectOnly) {
+            int threshold = MemberInvoker.getInvokerThreshold();
+            if (threshold != 0 && ++invocationCount >= threshold) {
+                invoker = InvokerCodegen.generate(this);
+                if (invoker != null) {
+                    this.invoker = invoker;
+                } else {
+                    reflectOnly = true;
+                }
+            }
+        }
+        return invoker;
+    }
+
     Object invoke(Object target, Object[] args)
     {
+        MemberInvoker invoker = getInvoker();
+        if (invoker != null) {
+            try {
+                return invoker.invoke(target, args);
+            } catch (Throwable ex) {
+                // Same as an InvocationTargetException from reflection
+                throw Context.throwAsScriptRuntimeEx(ex);
+            }
+        }
         Method method = method();
         try {
             try {
@@ -178,6 +211,14 @@ final class MemberBox implements Serializable
 
     Object newInstance(Object[] args)
     {
+        MemberInvoker invoker = getInvoker();
+        if (invoker != null) {
+            try {
+                return invoker.invoke(null, args);
+            } catch (Throwable ex) {
+                throw Context.throwAsScriptRuntimeEx(ex);
+            }
+        }
         Constructor ctor = ctor();
         try {
             try {
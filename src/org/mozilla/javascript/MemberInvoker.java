@@ -0,0 +1,93 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+/**
+ * Base class of the invokers generated for frequently called Java methods
+ * and constructors.
+ * <p>
+ * Once a member reflected to scripts has been called
+ * {@link #getInvokerThreshold()} times, a subclass is generated whose
+ * {@link #invoke} method unboxes the arguments and calls the member with
+ * a plain invokevirtual, invokeinterface, invokestatic or invokespecial
+ * instruction instead of going through {@link java.lang.reflect.Method}
+ * or {@link java.lang.reflect.Constructor}. Only public members of public
+ * classes whose types are visible from the Rhino class loader are
+ * handled this way; others keep using reflection.
+ * <p>
+ * The generated classes are defined by their own class loader, so the
+ * members they use here are public or protected.
+ */
+public abstract class MemberInvoker
+{
+    private static volatile int invokerThreshold = 64;
+
+    protected MemberInvoker() { }
+
+    /**
+     * Return the number of calls after which an invoker is generated for a
+     * Java method or constructor.
+     */
+    public static int getInvokerThreshold()
+    {
+        return invokerThreshold;
+    }
+
+    /**
+     * Set the number of calls after which an invoker is generated for a
+     * Java method or constructor. Zero disables the generation.
+     */
+    public static void setInvokerThreshold(int threshold)
+    {
+        if (threshold < 0) throw new IllegalArgumentException();
+        invokerThreshold = threshold;
+    }
+
+    /**
+     * Call the member with arguments already converted to its parameter
+     * types, primitive values boxed.
+     *
+     * @param target the object to call an instance method on; ignored for
+     *        static methods and constructors
+     * @param args the arguments
+     * @return the boxed result, null for void methods, or the new object
+     *         for constructors
+     */
+    public abstract Object invoke(Object target, Object[] args)
+        throws Throwable;
+}
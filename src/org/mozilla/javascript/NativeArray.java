@@ -40,7 +40,9 @@
 
 package org.mozilla.javascript;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * This class implements the Array native object.
@@ -387,6 +389,7 @@ public class NativeArray extends IdScriptableObject
         if (start == this && !isSealed() && dense != null && 0 <= index &&
             (denseOnly || !isGetterOrSetter(null, index, true)))
         {
+            value = ScriptRuntime.flattenValue(value);
             if (index < dense.length) {
                 dense[index] = value;
                 if (this.length <= index)
@@ -499,6 +502,15 @@ public class NativeArray extends IdScriptableObject
     public long jsGet_length() {
         return getLength();
     }
+
+    /**
+     * Return the dense backing array if it holds all the indexed
+     * elements, or null otherwise.  Slots past the end of the returned
+     * array and slots holding NOT_FOUND are holes.
+     */
+    Object[] getDenseElements() {
+        return denseOnly ? dense : null;
+    }
     
     /**
      * Change the value of the internal flag that determines whether all
@@ -681,8 +693,10 @@ public class NativeArray extends IdScriptableObject
                     if (toSource) {
                         result.append(ScriptRuntime.uneval(cx, scope, elem));
 
-                    } else if (elem instanceof String) {
-                        String s = (String)elem;
+                    } else if (elem instanceof String
+                               || elem instanceof ConsString)
+                    {
+                        String s = elem.toString();
                         if (toSource) {
                             result.append('\"');
                             result.append(ScriptRuntime.escapeString(s));
@@ -738,33 +752,23 @@ public class NativeArray extends IdScriptableObject
         String separator = (args.length < 1 || args[0] == Undefined.instance)
                            ? ","
                            : ScriptRuntime.toString(args[0]);
-        if (thisObj instanceof NativeArray) {
-            NativeArray na = (NativeArray) thisObj;
-            if (na.denseOnly) {
-                StringBuffer sb = new StringBuffer();
-                for (int i = 0; i < length; i++) {
-                    if (i != 0) {
-                        sb.append(separator);
-                    }
-                    if (i < na.dense.length) {
-                        Object temp = na.dense[i];
-                        if (temp != null && temp != Undefined.instance &&
-                            temp != Scriptable.NOT_FOUND)
-                        {
-                            sb.append(ScriptRuntime.toString(temp));
-                        }
-                    }
-                }
-                return sb.toString();
-            }
-        }
         if (length == 0) {
             return "";
         }
         String[] buf = new String[length];
         int total_size = 0;
+        NativeArray na = (thisObj instanceof NativeArray)
+                         ? (NativeArray) thisObj : null;
         for (int i = 0; i != length; i++) {
-            Object temp = getElem(cx, thisObj, i);
+            Object temp = Scriptable.NOT_FOUND;
+            // toString may call back into script and make the array sparse,
+            // so check before every read of the dense store
+            if (na != null && na.denseOnly && i < na.dense.length) {
+                temp = na.dense[i];
+            }
+            if (temp == Scriptable.NOT_FOUND) {
+                temp = getElem(cx, thisObj, i);
+            }
             if (temp != null && temp != Undefined.instance) {
                 String str = ScriptRuntime.toString(temp);
                 total_size += str.length();
@@ -827,48 +831,262 @@ public class NativeArray extends IdScriptableObject
         if (length <= 1) { return thisObj; }
 
         Object compare;
-        Object[] cmpBuf;
-
         if (args.length > 0 && Undefined.instance != args[0]) {
             // sort with given compare function
             compare = args[0];
-            cmpBuf = new Object[2]; // Buffer for cmp arguments
         } else {
             // sort with default compare
             compare = null;
-            cmpBuf = null;
-        }
-        if (thisObj instanceof NativeArray) {
-            NativeArray na = (NativeArray) thisObj;
-            if (na.denseOnly) {
-                int ilength = (int) length;
-                heapsort(cx, scope, na.dense, ilength, compare, cmpBuf);
-                return thisObj;
-            }
         }
 
-        // Should we use the extended sort function, or the faster one?
         if (length >= Integer.MAX_VALUE) {
+            Object[] cmpBuf = (compare == null) ? null : new Object[2];
             heapsort_extended(cx, scope, thisObj, length, compare, cmpBuf);
+            return thisObj;
+        }
+
+        // Sort a copy of the elements, so that an exception from the
+        // compare function leaves the array as it was.
+        int ilength = (int)length;
+        Object[] working = new Object[ilength];
+        if (thisObj instanceof NativeArray
+            && ((NativeArray)thisObj).denseOnly)
+        {
+            NativeArray na = (NativeArray) thisObj;
+            System.arraycopy(na.dense, 0, working, 0, ilength);
         } else {
-            int ilength = (int)length;
-            // copy the JS array into a working array, so it can be
-            // sorted cheaply.
-            Object[] working = new Object[ilength];
             for (int i = 0; i != ilength; ++i) {
                 working[i] = getElem(cx, thisObj, i);
             }
+        }
 
-            heapsort(cx, scope, working, ilength, compare, cmpBuf);
+        sortValues(cx, scope, working, compare);
 
-            // copy the working array back into thisObj
-            for (int i = 0; i != ilength; ++i) {
+        if (thisObj instanceof NativeArray) {
+            NativeArray na = (NativeArray) thisObj;
+            // The compare function may have changed the array
+            if (na.denseOnly && ilength <= na.length) {
+                System.arraycopy(working, 0, na.dense, 0, ilength);
+                return thisObj;
+            }
+        }
+        for (int i = 0; i != ilength; ++i) {
+            if (working[i] == NOT_FOUND) {
+                ScriptableObject.deleteProperty(thisObj, i);
+            } else {
                 setElem(cx, thisObj, i, working[i]);
             }
         }
         return thisObj;
     }
 
+    /**
+     * Sort values with a stable sort. Undefined values and then holes go
+     * to the end without being passed to the compare function.
+     */
+    private static void sortValues(Context cx, Scriptable scope,
+                                   Object[] values, Object compare)
+    {
+        int length = values.length;
+        int count = 0;
+        int undefinedCount = 0;
+        boolean allStrings = true;
+        boolean allNumbers = true;
+        for (int i = 0; i != length; ++i) {
+            Object value = values[i];
+            if (value == NOT_FOUND) {
+                continue;
+            }
+            if (value == Undefined.instance) {
+                ++undefinedCount;
+                continue;
+            }
+            values[count++] = value;
+            if (!(value instanceof String)) allStrings = false;
+            if (!(value instanceof Number)) allNumbers = false;
+        }
+        Arrays.fill(values, count, count + undefinedCount, Undefined.instance);
+        Arrays.fill(values, count + undefinedCount, length, NOT_FOUND);
+        if (count < 2) {
+            return;
+        }
+
+        if (compare == null) {
+            if (allStrings) {
+                Sorting.sort(values, count, STRING_ORDER);
+            } else {
+                // Convert each value to its string key only once
+                Object[] keyed = new Object[count];
+                for (int i = 0; i != count; ++i) {
+                    Object value = values[i];
+                    keyed[i] = new Object[] {
+                        ScriptRuntime.toString(value), value };
+                }
+                Sorting.sort(keyed, count, KEYED_STRING_ORDER);
+                for (int i = 0; i != count; ++i) {
+                    values[i] = ((Object[])keyed[i])[1];
+                }
+            }
+        } else {
+            // Recognizing the compare function is not worth it for a few
+            // calls
+            int order = 0;
+            if (allNumbers && count >= 16) {
+                order = numericCompareOrder(compare);
+            }
+            Comparator c;
+            if (order > 0) {
+                c = NUMBER_ORDER;
+            } else if (order < 0) {
+                c = REVERSE_NUMBER_ORDER;
+            } else {
+                c = new CompareFunction(cx, scope, compare);
+            }
+            Sorting.sort(values, count, c);
+        }
+    }
+
+    /**
+     * Return 1 if the compare function is written as
+     * <tt>function(a, b) { return a - b; }</tt>, -1 if it returns
+     * <tt>b - a</tt> and 0 otherwise. For numbers such functions are
+     * replaced by {@link #NUMBER_ORDER} and {@link #REVERSE_NUMBER_ORDER}.
+     */
+    private static int numericCompareOrder(Object compare)
+    {
+        if (!(compare instanceof NativeFunction)) {
+            return 0;
+        }
+        String source = ((NativeFunction)compare).decompile(0, 0);
+        ArrayList tokens = tokenize(source);
+        // function [name] ( a , b ) { return x - y ; }
+        int start = 1;
+        if (tokens.size() > 1 && isIdentifier((String)tokens.get(1))) {
+            start = 2;
+        }
+        if (tokens.size() != start + 13
+            || !tokens.get(0).equals("function"))
+        {
+            return 0;
+        }
+        String[] pattern = { "(", null, ",", null, ")", "{", "return",
+                             null, "-", null, ";", "}" };
+        for (int i = 0; i != pattern.length; ++i) {
+            String token = (String)tokens.get(start + i);
+            if (pattern[i] == null ? !isIdentifier(token)
+                                   : !pattern[i].equals(token))
+            {
+                return 0;
+            }
+        }
+        String a = (String)tokens.get(start + 1);
+        String b = (String)tokens.get(start + 3);
+        String x = (String)tokens.get(start + 7);
+        String y = (String)tokens.get(start + 9);
+        if (a.equals(b) || a.equals("return") || b.equals("return")) {
+            return 0;
+        }
+        if (x.equals(a) && y.equals(b)) {
+            return 1;
+        } else if (x.equals(b) && y.equals(a)) {
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Split decompiled source into identifiers, keywords and numbers, and
+     * single punctuation characters, dropping whitespace.
+     */
+    private static ArrayList tokenize(String source)
+    {
+        ArrayList tokens = new ArrayList();
+        int length = source.length();
+        int i = 0;
+        while (i != length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (Character.isJavaIdentifierPart(c)) {
+                int end = i + 1;
+                while (end != length
+                       && Character.isJavaIdentifierPart(source.charAt(end)))
+                {
+                    ++end;
+                }
+                tokens.add(source.substring(i, end));
+                i = end;
+            } else {
+                tokens.add(String.valueOf(c));
+                ++i;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifier(String token)
+    {
+        return Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    private static final Comparator STRING_ORDER = new Comparator() {
+        public int compare(Object x, Object y) {
+            return ((String)x).compareTo((String)y);
+        }
+    };
+
+    private static final Comparator KEYED_STRING_ORDER = new Comparator() {
+        public int compare(Object x, Object y) {
+            String a = (String)((Object[])x)[0];
+            String b = (String)((Object[])y)[0];
+            return a.compareTo(b);
+        }
+    };
+
+    private static final Comparator NUMBER_ORDER = new Comparator() {
+        public int compare(Object x, Object y) {
+            double d = ((Number)x).doubleValue() - ((Number)y).doubleValue();
+            return d > 0 ? 1 : (d < 0 ? -1 : 0);
+        }
+    };
+
+    private static final Comparator REVERSE_NUMBER_ORDER = new Comparator() {
+        public int compare(Object x, Object y) {
+            double d = ((Number)y).doubleValue() - ((Number)x).doubleValue();
+            return d > 0 ? 1 : (d < 0 ? -1 : 0);
+        }
+    };
+
+    /**
+     * Comparator calling a JavaScript compare function.
+     */
+    private static final class CompareFunction implements Comparator
+    {
+        private final Context cx;
+        private final Scriptable scope;
+        private final Callable fun;
+        private final Scriptable funThis;
+        private final Object[] cmpBuf = new Object[2];
+
+        CompareFunction(Context cx, Scriptable scope, Object compare)
+        {
+            this.cx = cx;
+            this.scope = scope;
+            this.fun = ScriptRuntime.getValueFunctionAndThis(compare, cx);
+            this.funThis = ScriptRuntime.lastStoredScriptable(cx);
+        }
+
+        public int compare(Object x, Object y)
+        {
+            cmpBuf[0] = x;
+            cmpBuf[1] = y;
+            Object ret = fun.call(cx, scope, funThis, cmpBuf);
+            double d = ScriptRuntime.toNumber(ret);
+            // NaN is treated as equal, like 0
+            return d > 0 ? 1 : (d < 0 ? -1 : 0);
+        }
+    }
+
     // Return true only if x > y
     private static boolean isBigger(Context cx, Scriptable scope,
                                     Object x, Object y,
@@ -917,60 +1135,6 @@ public class NativeArray extends IdScriptableObject
         }
     }
 
-/** Heapsort implementation.
- * See "Introduction to Algorithms" by Cormen, Leiserson, Rivest for details.
- * Adjusted for zero based indexes.
- */
-    private static void heapsort(Context cx, Scriptable scope,
-                                 Object[] array, int length,
-                                 Object cmp, Object[] cmpBuf)
-    {
-        if (length <= 1) Kit.codeBug();
-
-        // Build heap
-        for (int i = length / 2; i != 0;) {
-            --i;
-            Object pivot = array[i];
-            heapify(cx, scope, pivot, array, i, length, cmp, cmpBuf);
-        }
-
-        // Sort heap
-        for (int i = length; i != 1;) {
-            --i;
-            Object pivot = array[i];
-            array[i] = array[0];
-            heapify(cx, scope, pivot, array, 0, i, cmp, cmpBuf);
-        }
-    }
-
-/** pivot and child heaps of i should be made into heap starting at i,
- * original array[i] is never used to have less array access during sorting.
- */
-    private static void heapify(Context cx, Scriptable scope,
-                                Object pivot, Object[] array, int i, int end,
-                                Object cmp, Object[] cmpBuf)
-    {
-        for (;;) {
-            int child = i * 2 + 1;
-            if (child >= end) {
-                break;
-            }
-            Object childVal = array[child];
-            if (child + 1 < end) {
-                Object nextVal = array[child + 1];
-                if (isBigger(cx, scope, nextVal, childVal, cmp, cmpBuf)) {
-                    ++child; childVal = nextVal;
-                }
-            }
-            if (!isBigger(cx, scope, childVal, pivot, cmp, cmpBuf)) {
-                break;
-            }
-            array[i] = childVal;
-            i = child;
-        }
-        array[i] = pivot;
-    }
-
 /** Version of heapsort that call getElem/setElem on target to query/assign
  * array elements instead of Java array access
  */
@@ -1319,9 +1483,12 @@ public class NativeArray extends IdScriptableObject
                 for (int i = 0; i < args.length && canUseDense; i++) {
                     if (ScriptRuntime.instanceOf(args[i], ctor, cx)) {
                         // only try to use dense approach for Array-like
-                        // objects that are actually NativeArrays
-                        canUseDense = args[i] instanceof NativeArray;
-                        length += ((NativeArray) args[i]).length;
+                        // objects that are actually dense NativeArrays
+                        canUseDense = args[i] instanceof NativeArray
+                            && ((NativeArray) args[i]).denseOnly;
+                        if (canUseDense) {
+                            length += ((NativeArray) args[i]).length;
+                        }
                     } else {
                         length++;
                     }
@@ -1389,7 +1556,6 @@ public class NativeArray extends IdScriptableObject
                                 Object[] args)
     {
         Scriptable scope = getTopLevelScope(this);
-        Scriptable result = ScriptRuntime.newObject(cx, scope, "Array", null);
         long length = getLengthProperty(cx, thisObj);
 
         long begin, end;
@@ -1405,6 +1571,18 @@ public class NativeArray extends IdScriptableObject
             }
         }
 
+        if (thisObj instanceof NativeArray && begin < end) {
+            NativeArray na = (NativeArray) thisObj;
+            if (na.denseOnly && end <= na.length) {
+                // Holes are copied as NOT_FOUND and stay holes
+                int count = (int) (end - begin);
+                Object[] copy = new Object[count];
+                System.arraycopy(na.dense, (int) begin, copy, 0, count);
+                return cx.newArray(scope, copy);
+            }
+        }
+
+        Scriptable result = ScriptRuntime.newObject(cx, scope, "Array", null);
         for (long slot = begin; slot < end; slot++) {
             Object temp = getElem(cx, thisObj, slot);
             setElem(cx, result, slot - begin, temp);
@@ -93,6 +93,45 @@ final class NativeDate extends IdScriptableObject
         return date;
     }
 
+    /*
+     * Local time and calendar fields of date for the getters, computed
+     * once per time value: a new value of date makes them stale.
+     */
+    private LocalFields localFields()
+    {
+        double t = date;
+        LocalFields fields = localFields;
+        if (fields == null || fields.time != t) {
+            double local = LocalTime(t);
+            int year = YearFromTime(local);
+            fields = new LocalFields(t, local, year,
+                                     MonthFromTime(local, year),
+                                     DateFromTime(local, year));
+            localFields = fields;
+        }
+        return fields;
+    }
+
+    private double localTime()
+    {
+        return localFields().local;
+    }
+
+    private int localYear()
+    {
+        return localFields().year;
+    }
+
+    private int localMonth()
+    {
+        return localFields().month;
+    }
+
+    private int localDate()
+    {
+        return localFields().date;
+    }
+
     protected void fillConstructorProperties(IdFunctionObject ctor)
     {
         addIdFunctionProperty(ctor, DATE_TAG, ConstructorId_now,
@@ -231,8 +270,11 @@ final class NativeDate extends IdScriptableObject
           case Id_getFullYear:
           case Id_getUTCFullYear:
             if (t == t) {
-                if (id != Id_getUTCFullYear) t = LocalTime(t);
-                t = YearFromTime(t);
+                if (id != Id_getUTCFullYear) {
+                    t = realThis.localYear();
+                } else {
+                    t = YearFromTime(t);
+                }
                 if (id == Id_getYear) {
                     if (cx.hasFeature(Context.FEATURE_NON_ECMA_GET_YEAR)) {
                         if (1900 <= t && t < 2000) {
@@ -248,62 +290,83 @@ final class NativeDate extends IdScriptableObject
           case Id_getMonth:
           case Id_getUTCMonth:
             if (t == t) {
-                if (id == Id_getMonth) t = LocalTime(t);
-                t = MonthFromTime(t);
+                if (id == Id_getMonth) {
+                    t = realThis.localMonth();
+                } else {
+                    t = MonthFromTime(t);
+                }
             }
             return ScriptRuntime.wrapNumber(t);
 
           case Id_getDate:
           case Id_getUTCDate:
             if (t == t) {
-                if (id == Id_getDate) t = LocalTime(t);
-                t = DateFromTime(t);
+                if (id == Id_getDate) {
+                    t = realThis.localDate();
+                } else {
+                    t = DateFromTime(t);
+                }
             }
             return ScriptRuntime.wrapNumber(t);
 
           case Id_getDay:
           case Id_getUTCDay:
             if (t == t) {
-                if (id == Id_getDay) t = LocalTime(t);
-                t = WeekDay(t);
+                if (id == Id_getDay) {
+                    t = WeekDay(realThis.localTime());
+                } else {
+                    t = WeekDay(t);
+                }
             }
             return ScriptRuntime.wrapNumber(t);
 
           case Id_getHours:
           case Id_getUTCHours:
             if (t == t) {
-                if (id == Id_getHours) t = LocalTime(t);
-                t = HourFromTime(t);
+                if (id == Id_getHours) {
+                    t = HourFromTime(realThis.localTime());
+                } else {
+                    t = HourFromTime(t);
+                }
             }
             return ScriptRuntime.wrapNumber(t);
 
           case Id_getMinutes:
           case Id_getUTCMinutes:
             if (t == t) {
-                if (id == Id_getMinutes) t = LocalTime(t);
-                t = MinFromTime(t);
+                if (id == Id_getMinutes) {
+                    t = MinFromTime(realThis.localTime());
+                } else {
+                    t = MinFromTime(t);
+                }
             }
             return ScriptRuntime.wrapNumber(t);
 
           case Id_getSeconds:
           case Id_getUTCSeconds:
             if (t == t) {
-                if (id == Id_getSeconds) t = LocalTime(t);
-                t = SecFromTime(t);
+                if (id == Id_getSeconds) {
+                    t = SecFromTime(realThis.localTime());
+                } else {
+                    t = SecFromTime(t);
+                }
             }
             return ScriptRuntime.wrapNumber(t);
 
           case Id_getMilliseconds:
           case Id_getUTCMilliseconds:
             if (t == t) {
-                if (id == Id_getMilliseconds) t = LocalTime(t);
-                t = msFromTime(t);
+                if (id == Id_getMilliseconds) {
+                    t = msFromTime(realThis.localTime());
+                } else {
+                    t = msFromTime(t);
+                }
             }
             return ScriptRuntime.wrapNumber(t);
 
           case Id_getTimezoneOffset:
             if (t == t) {
-                t = (t - LocalTime(t)) / msPerMinute;
+                t = (t - realThis.localTime()) / msPerMinute;
             }
             return ScriptRuntime.wrapNumber(t);
 
@@ -398,6 +461,15 @@ final class NativeDate extends IdScriptableObject
         return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
     }
 
+    /* month is 1-based */
+    private static int DaysInMonth(int year, int month)
+    {
+        if (month == 2)
+            return IsLeapYear(year) ? 29 : 28;
+        return (month == 4 || month == 6 || month == 9 || month == 11)
+               ? 30 : 31;
+    }
+
     /* math here has to be f.p, because we need
      *  floor((1968 - 1969) / 4) == -1
      */
@@ -414,35 +486,17 @@ final class NativeDate extends IdScriptableObject
 
     private static int YearFromTime(double t)
     {
-        int lo = (int) Math.floor((t / msPerDay) / 366) + 1970;
-        int hi = (int) Math.floor((t / msPerDay) / 365) + 1970;
-        int mid;
-
-        /* above doesn't work for negative dates... */
-        if (hi < lo) {
-            int temp = lo;
-            lo = hi;
-            hi = temp;
+        /* Estimate from the mean length of a Gregorian year.  Over the
+           whole time value range the estimate is at most one year off,
+           so correct it by comparing with the start of the year. */
+        int year = (int) Math.floor(Day(t) / 365.2425) + 1970;
+        while (TimeFromYear(year) > t) {
+            --year;
         }
-
-        /* Use a simple binary search algorithm to find the right
-           year.  This seems like brute force... but the computation
-           of hi and lo years above lands within one year of the
-           correct answer for years within a thousand years of
-           1970; the loop below only requires six iterations
-           for year 270000. */
-        while (hi > lo) {
-            mid = (hi + lo) / 2;
-            if (TimeFromYear(mid) > t) {
-                hi = mid - 1;
-            } else {
-                lo = mid + 1;
-                if (TimeFromYear(lo) > t) {
-                    return mid;
-                }
-            }
+        while (TimeFromYear(year + 1) <= t) {
+            ++year;
         }
-        return lo;
+        return year;
     }
 
     private static double DayFromMonth(int m, int year)
@@ -460,7 +514,11 @@ final class NativeDate extends IdScriptableObject
 
     private static int MonthFromTime(double t)
     {
-        int year = YearFromTime(t);
+        return MonthFromTime(t, YearFromTime(t));
+    }
+
+    private static int MonthFromTime(double t, int year)
+    {
         int d = (int)(Day(t) - DayFromYear(year));
 
         d -= 31 + 28;
@@ -497,7 +555,11 @@ final class NativeDate extends IdScriptableObject
 
     private static int DateFromTime(double t)
     {
-        int year = YearFromTime(t);
+        return DateFromTime(t, YearFromTime(t));
+    }
+
+    private static int DateFromTime(double t, int year)
+    {
         int d = (int)(Day(t) - DayFromYear(year));
 
         d -= 31 + 28;
@@ -571,8 +633,7 @@ final class NativeDate extends IdScriptableObject
             t = MakeDate(day, TimeWithinDay(t));
         }
         if (!TZO_WORKAROUND) {
-            Date date = new Date((long) t);
-            if (thisTimeZone.inDaylightTime(date))
+            if (inDaylightTime((long) t))
                 return msPerHour;
             else
                 return 0;
@@ -604,6 +665,73 @@ final class NativeDate extends IdScriptableObject
         }
     }
 
+    /* Last time covered by the DST transition table: 2038-01-01 UTC */
+    private static final long DST_TABLE_END = 2145916800000L;
+
+    /*
+     * Same as thisTimeZone.inDaylightTime(new Date(t)) for t between 0 and
+     * DST_TABLE_END, but found in the table of DST transitions.
+     */
+    private static boolean inDaylightTime(long t)
+    {
+        long[] transitions = dstTransitions;
+        if (transitions == null) {
+            transitions = initDstTransitions();
+        }
+        int i = java.util.Arrays.binarySearch(transitions, t);
+        int count = (i >= 0) ? i + 1 : -i - 1;
+        return (count & 1) != 0;
+    }
+
+    /*
+     * Find the times between 1970 and DST_TABLE_END at which the time zone
+     * enters or leaves daylight saving time.  Each day is probed and a
+     * change is located to the millisecond by bisection.  The sorted table
+     * starts with Long.MIN_VALUE if DST is in effect at the epoch, so DST
+     * applies at t when an odd number of entries are <= t.
+     */
+    private static synchronized long[] initDstTransitions()
+    {
+        if (dstTransitions != null) {
+            return dstTransitions;
+        }
+        java.util.TimeZone tz = thisTimeZone;
+        long[] table = new long[16];
+        int count = 0;
+        boolean inDst = tz.inDaylightTime(new Date(0));
+        if (inDst) {
+            table[count++] = Long.MIN_VALUE;
+        }
+        long step = (long) msPerDay;
+        long lo = 0;
+        while (lo < DST_TABLE_END) {
+            long hi = Math.min(lo + step, DST_TABLE_END);
+            if (tz.inDaylightTime(new Date(hi)) != inDst) {
+                long changed = hi;
+                while (changed - lo > 1) {
+                    long mid = lo + (changed - lo) / 2;
+                    if (tz.inDaylightTime(new Date(mid)) == inDst) {
+                        lo = mid;
+                    } else {
+                        changed = mid;
+                    }
+                }
+                if (count == table.length) {
+                    long[] tmp = new long[count * 2];
+                    System.arraycopy(table, 0, tmp, 0, count);
+                    table = tmp;
+                }
+                table[count++] = changed;
+                inDst = !inDst;
+            }
+            lo = hi;
+        }
+        long[] transitions = new long[count];
+        System.arraycopy(table, 0, transitions, 0, count);
+        dstTransitions = transitions;
+        return transitions;
+    }
+
     /*
      * Find a year for which any given date will fall on the same weekday.
      *
@@ -786,6 +914,234 @@ final class NativeDate extends IdScriptableObject
     }
 
     private static double date_parseString(String s)
+    {
+        int h = s.hashCode() & (PARSE_CACHE_SIZE - 1);
+        ParsedDate cached = parseCache[h];
+        if (cached != null && cached.string.equals(s)) {
+            return cached.time;
+        }
+        double time = date_parseISO(s);
+        if (time != time) {
+            time = date_parseRFC1123(s);
+            if (time != time) {
+                time = date_parseGeneric(s);
+            }
+        }
+        parseCache[h] = new ParsedDate(s, time);
+        return time;
+    }
+
+    /*
+     * The date time string format of ES5 15.9.1.15,
+     * YYYY[-MM[-DD]][THH:mm[:ss[.sss]][Z|(+|-)HH:mm]] with +YYYYYY or
+     * -YYYYYY for extended years.  Returns NaN if s is not in this format;
+     * the general parser rejects all such strings too.  A missing offset
+     * means UTC.
+     */
+    private static double date_parseISO(String s)
+    {
+        int limit = s.length();
+        int i;
+        int year;
+        char c = limit == 0 ? 0 : s.charAt(0);
+        if (c == '+' || c == '-') {
+            year = parseDigits(s, 1, 6);
+            if (year < 0)
+                return ScriptRuntime.NaN;
+            if (c == '-')
+                year = -year;
+            i = 7;
+        } else {
+            year = parseDigits(s, 0, 4);
+            if (year < 0)
+                return ScriptRuntime.NaN;
+            i = 4;
+        }
+        int mon = 1, mday = 1, hour = 0, min = 0, sec = 0, msec = 0;
+        int tzoffset = 0;
+        if (i < limit && s.charAt(i) == '-') {
+            mon = parseDigits(s, i + 1, 2);
+            if (mon < 1 || mon > 12)
+                return ScriptRuntime.NaN;
+            i += 3;
+            if (i < limit && s.charAt(i) == '-') {
+                mday = parseDigits(s, i + 1, 2);
+                if (mday < 1 || mday > DaysInMonth(year, mon))
+                    return ScriptRuntime.NaN;
+                i += 3;
+            }
+        }
+        if (i < limit && s.charAt(i) == 'T') {
+            hour = parseDigits(s, i + 1, 2);
+            if (hour < 0 || hour > 24 || i + 3 >= limit
+                || s.charAt(i + 3) != ':')
+            {
+                return ScriptRuntime.NaN;
+            }
+            min = parseDigits(s, i + 4, 2);
+            if (min < 0 || min > 59)
+                return ScriptRuntime.NaN;
+            i += 6;
+            if (i < limit && s.charAt(i) == ':') {
+                sec = parseDigits(s, i + 1, 2);
+                if (sec < 0 || sec > 59)
+                    return ScriptRuntime.NaN;
+                i += 3;
+                if (i < limit && s.charAt(i) == '.') {
+                    int start = ++i;
+                    while (i < limit && '0' <= (c = s.charAt(i)) && c <= '9') {
+                        // digits past milliseconds are truncated
+                        if (i - start < 3)
+                            msec = msec * 10 + c - '0';
+                        i++;
+                    }
+                    if (i == start)
+                        return ScriptRuntime.NaN;
+                    for (int k = i - start; k < 3; k++)
+                        msec *= 10;
+                }
+            }
+            if (hour == 24 && (min != 0 || sec != 0 || msec != 0))
+                return ScriptRuntime.NaN;
+            if (i < limit) {
+                c = s.charAt(i);
+                if (c == 'Z') {
+                    i++;
+                } else if (c == '+' || c == '-') {
+                    int tzhour = parseDigits(s, i + 1, 2);
+                    if (tzhour < 0 || tzhour > 23 || i + 3 >= limit
+                        || s.charAt(i + 3) != ':')
+                    {
+                        return ScriptRuntime.NaN;
+                    }
+                    int tzmin = parseDigits(s, i + 4, 2);
+                    if (tzmin < 0 || tzmin > 59)
+                        return ScriptRuntime.NaN;
+                    tzoffset = tzhour * 60 + tzmin;
+                    if (c == '+')       /* plus means east of GMT */
+                        tzoffset = -tzoffset;
+                    i += 6;
+                }
+            }
+        }
+        if (i != limit)
+            return ScriptRuntime.NaN;
+        double result = date_msecFromDate(year, mon - 1, mday, hour, min,
+                                          sec, msec);
+        return result + tzoffset * msPerMinute;
+    }
+
+    /*
+     * "Sun, 06 Nov 1994 08:49:37 GMT" as in RFC 1123 and toUTCString, with
+     * optional week day and seconds and a GMT, UT, UTC or +hhmm/-hhmm zone.
+     * Only fields the general parser reads the same way are accepted, so
+     * the result is always the one it would give; NaN means "not in this
+     * format".
+     */
+    private static double date_parseRFC1123(String s)
+    {
+        int limit = s.length();
+        int i = 0;
+        if (limit > 5 && s.charAt(3) == ',' && s.charAt(4) == ' ') {
+            if (indexOfName(s, 0, WEEK_DAY_NAMES) < 0)
+                return ScriptRuntime.NaN;
+            i = 5;
+        }
+        int mday = parseDigits(s, i, 2);
+        if (mday >= 0) {
+            i += 2;
+        } else {
+            mday = parseDigits(s, i, 1);
+            i += 1;
+        }
+        if (mday < 1 || mday > 31 || i >= limit || s.charAt(i) != ' ')
+            return ScriptRuntime.NaN;
+        int mon = indexOfName(s, i + 1, MONTH_NAMES);
+        if (mon < 0 || i + 4 >= limit || s.charAt(i + 4) != ' ')
+            return ScriptRuntime.NaN;
+        int year = parseDigits(s, i + 5, 4);
+        // two digit and small years get adjusted by the general parser
+        if (year < 100 || i + 9 >= limit || s.charAt(i + 9) != ' ')
+            return ScriptRuntime.NaN;
+        i += 10;
+        int hour = parseDigits(s, i, 2);
+        if (hour < 0 || hour > 23 || i + 2 >= limit || s.charAt(i + 2) != ':')
+            return ScriptRuntime.NaN;
+        int min = parseDigits(s, i + 3, 2);
+        if (min < 0 || min > 59)
+            return ScriptRuntime.NaN;
+        i += 5;
+        int sec = 0;
+        if (i < limit && s.charAt(i) == ':') {
+            sec = parseDigits(s, i + 1, 2);
+            if (sec < 0 || sec > 59)
+                return ScriptRuntime.NaN;
+            i += 3;
+        }
+        if (i >= limit || s.charAt(i) != ' ')
+            return ScriptRuntime.NaN;
+        i++;
+        int tzoffset;
+        char c = i < limit ? s.charAt(i) : 0;
+        if (c == '+' || c == '-') {
+            int n = parseDigits(s, i + 1, 4);
+            if (n < 0 || i + 5 != limit)
+                return ScriptRuntime.NaN;
+            // same reading of the offset as the general parser
+            if (n < 24)
+                n = n * 60;
+            else
+                n = n % 100 + n / 100 * 60;
+            tzoffset = (c == '+') ? -n : n;
+        } else {
+            int length = limit - i;
+            if (!((length == 2 || length == 3)
+                  && s.regionMatches(true, i, "UTC", 0, length))
+                && !(length == 3 && s.regionMatches(true, i, "GMT", 0, 3)))
+            {
+                return ScriptRuntime.NaN;
+            }
+            tzoffset = 0;
+        }
+        double msec = date_msecFromDate(year, mon, mday, hour, min, sec, 0);
+        return msec + tzoffset * msPerMinute;
+    }
+
+    /*
+     * Value of the count decimal digits at s[start], or -1 if there are
+     * not that many.
+     */
+    private static int parseDigits(String s, int start, int count)
+    {
+        int end = start + count;
+        if (end > s.length())
+            return -1;
+        int n = 0;
+        for (int i = start; i != end; i++) {
+            char c = s.charAt(i);
+            if (!('0' <= c && c <= '9'))
+                return -1;
+            n = n * 10 + c - '0';
+        }
+        return n;
+    }
+
+    /*
+     * Index of the three letter abbreviation at s[start] in names, ignoring
+     * case, or -1.
+     */
+    private static int indexOfName(String s, int start, String names)
+    {
+        if (start + 3 > s.length())
+            return -1;
+        for (int i = 0; i * 3 < names.length(); i++) {
+            if (names.regionMatches(true, i * 3, s, start, 3))
+                return i;
+        }
+        return -1;
+    }
+
+    private static double date_parseGeneric(String s)
     {
         int year = -1;
         int mon = -1;
@@ -1003,13 +1359,13 @@ final class NativeDate extends IdScriptableObject
         /* 09:41:40 GMT-0800 (PST) */
 
         if (methodId != Id_toTimeString) {
+            int year = YearFromTime(local);
             appendWeekDayName(result, WeekDay(local));
             result.append(' ');
-            appendMonthName(result, MonthFromTime(local));
+            appendMonthName(result, MonthFromTime(local, year));
             result.append(' ');
-            append0PaddedUint(result, DateFromTime(local), 2);
+            append0PaddedUint(result, DateFromTime(local, year), 2);
             result.append(' ');
-            int year = YearFromTime(local);
             if (year < 0) {
                 result.append('-');
                 year = -year;
@@ -1028,8 +1384,7 @@ final class NativeDate extends IdScriptableObject
 
             // offset from GMT in minutes.  The offset includes daylight
             // savings, if it applies.
-            int minutes = (int) Math.floor((LocalTZA + DaylightSavingTA(t))
-                                           / msPerMinute);
+            int minutes = (int) Math.floor((local - t) / msPerMinute);
             // map 510 minutes to 0830 hours
             int offset = (minutes / 60) * 100 + minutes % 60;
             if (offset > 0) {
@@ -1040,9 +1395,6 @@ final class NativeDate extends IdScriptableObject
             }
             append0PaddedUint(result, offset, 4);
 
-            if (timeZoneFormatter == null)
-                timeZoneFormatter = new java.text.SimpleDateFormat("zzz");
-
             // Find an equivalent year before getting the timezone
             // comment.  See DaylightSavingTA.
             if (t < 0.0 || t > 2145916800000.0) {
@@ -1051,15 +1403,30 @@ final class NativeDate extends IdScriptableObject
                 t = MakeDate(day, TimeWithinDay(t));
              }
             result.append(" (");
-            java.util.Date date = new Date((long) t);
-            synchronized (timeZoneFormatter) {
-                result.append(timeZoneFormatter.format(date));
-            }
+            result.append(timeZoneName((long) t));
             result.append(')');
         }
         return result.toString();
     }
 
+    /*
+     * The "zzz" name of the time zone at t.  It only depends on whether
+     * daylight saving time is in effect, so both names are kept once
+     * formatted.
+     */
+    private static String timeZoneName(long t)
+    {
+        int index = inDaylightTime(t) ? 1 : 0;
+        String name = timeZoneNames[index];
+        if (name == null) {
+            java.text.DateFormat formatter
+                = new java.text.SimpleDateFormat("zzz");
+            name = formatter.format(new Date(t));
+            timeZoneNames[index] = name;
+        }
+        return name;
+    }
+
     /* the javascript constructor */
     private static Object jsConstructor(Object[] args)
     {
@@ -1078,9 +1445,9 @@ final class NativeDate extends IdScriptableObject
             if (arg0 instanceof Scriptable)
                 arg0 = ((Scriptable) arg0).getDefaultValue(null);
             double date;
-            if (arg0 instanceof String) {
+            if (arg0 instanceof String || arg0 instanceof ConsString) {
                 // it's a string; parse it.
-                date = date_parseString((String)arg0);
+                date = date_parseString(arg0.toString());
             } else {
                 // if it's not a string, use it as a millisecond date
                 date = ScriptRuntime.toNumber(arg0);
@@ -1101,36 +1468,33 @@ final class NativeDate extends IdScriptableObject
 
     private static String toLocale_helper(double t, int methodId)
     {
-        java.text.DateFormat formatter;
-        switch (methodId) {
-          case Id_toLocaleString:
-            if (localeDateTimeFormatter == null) {
-                localeDateTimeFormatter
-                    = DateFormat.getDateTimeInstance(DateFormat.LONG,
-                                                     DateFormat.LONG);
-            }
-            formatter = localeDateTimeFormatter;
-            break;
-          case Id_toLocaleTimeString:
-            if (localeTimeFormatter == null) {
-                localeTimeFormatter
-                    = DateFormat.getTimeInstance(DateFormat.LONG);
-            }
-            formatter = localeTimeFormatter;
-            break;
-          case Id_toLocaleDateString:
-            if (localeDateFormatter == null) {
-                localeDateFormatter
-                    = DateFormat.getDateInstance(DateFormat.LONG);
-            }
-            formatter = localeDateFormatter;
-            break;
-          default: formatter = null; // unreachable
+        // DateFormat is not thread safe, so each thread gets its own
+        // formatters instead of all threads locking shared ones
+        java.text.DateFormat[] formatters
+            = (java.text.DateFormat[]) localeFormatters.get();
+        if (formatters == null) {
+            formatters = new java.text.DateFormat[3];
+            localeFormatters.set(formatters);
         }
-
-        synchronized (formatter) {
-            return formatter.format(new Date((long) t));
+        int index = methodId - Id_toLocaleString;
+        java.text.DateFormat formatter = formatters[index];
+        if (formatter == null) {
+            switch (methodId) {
+              case Id_toLocaleString:
+                formatter = DateFormat.getDateTimeInstance(DateFormat.LONG,
+                                                           DateFormat.LONG);
+                break;
+              case Id_toLocaleTimeString:
+                formatter = DateFormat.getTimeInstance(DateFormat.LONG);
+                break;
+              case Id_toLocaleDateString:
+                formatter = DateFormat.getDateInstance(DateFormat.LONG);
+                break;
+              default: throw Kit.codeBug();
+            }
+            formatters[index] = formatter;
         }
+        return formatter.format(new Date((long) t));
     }
 
     private static String js_toUTCString(double date)
@@ -1194,20 +1558,17 @@ final class NativeDate extends IdScriptableObject
         // Take advantage of the fact that all month abbreviations
         // have the same length to minimize amount of strings runtime has
         // to keep in memory
-        String months = "Jan"+"Feb"+"Mar"+"Apr"+"May"+"Jun"
-                       +"Jul"+"Aug"+"Sep"+"Oct"+"Nov"+"Dec";
         index *= 3;
         for (int i = 0; i != 3; ++i) {
-            sb.append(months.charAt(index + i));
+            sb.append(MONTH_NAMES.charAt(index + i));
         }
     }
 
     private static void appendWeekDayName(StringBuffer sb, int index)
     {
-        String days = "Sun"+"Mon"+"Tue"+"Wed"+"Thu"+"Fri"+"Sat";
         index *= 3;
         for (int i = 0; i != 3; ++i) {
-            sb.append(days.charAt(index + i));
+            sb.append(WEEK_DAY_NAMES.charAt(index + i));
         }
     }
 
@@ -1593,12 +1954,59 @@ final class NativeDate extends IdScriptableObject
     /* cached values */
     private static java.util.TimeZone thisTimeZone;
     private static double LocalTZA;
-    private static java.text.DateFormat timeZoneFormatter;
-    private static java.text.DateFormat localeDateTimeFormatter;
-    private static java.text.DateFormat localeDateFormatter;
-    private static java.text.DateFormat localeTimeFormatter;
+    private static volatile long[] dstTransitions;
+    private static final String[] timeZoneNames = new String[2];
+    private static final ThreadLocal localeFormatters = new ThreadLocal();
+
+    /* recently parsed date strings, indexed by hash code */
+    private static final int PARSE_CACHE_SIZE = 64;
+    private static final ParsedDate[] parseCache
+        = new ParsedDate[PARSE_CACHE_SIZE];
+
+    private static final String WEEK_DAY_NAMES
+        = "Sun"+"Mon"+"Tue"+"Wed"+"Thu"+"Fri"+"Sat";
+    private static final String MONTH_NAMES
+        = "Jan"+"Feb"+"Mar"+"Apr"+"May"+"Jun"
+         +"Jul"+"Aug"+"Sep"+"Oct"+"Nov"+"Dec";
 
     private double date;
+
+    private transient LocalFields localFields;
+
+    /* Immutable, so a cache slot can be replaced without locking */
+    private static final class ParsedDate
+    {
+        ParsedDate(String string, double time)
+        {
+            this.string = string;
+            this.time = time;
+        }
+
+        final String string;
+        final double time;
+    }
+
+    /*
+     * Immutable, so threads sharing a Date see the fields of one time
+     * value together or not at all
+     */
+    private static final class LocalFields
+    {
+        LocalFields(double time, double local, int year, int month, int date)
+        {
+            this.time = time;
+            this.local = local;
+            this.year = year;
+            this.month = month;
+            this.date = date;
+        }
+
+        final double time;
+        final double local;
+        final int year;
+        final int month;
+        final int date;
+    }
 }
 
 
@@ -132,6 +132,20 @@ public abstract class NativeFunction extends BaseFunction
     }
 
 
+    /**
+     * Return false if a call to the function can not keep a reference to
+     * its argument array, so the caller may fill the same array again for
+     * the next call. Functions with an activation object keep the array
+     * for their "arguments" object.
+     * <p>
+     * Not intended for public use.
+     */
+    public boolean mayRetainArguments(Context cx)
+    {
+        // Overridden by interpreted and optimizer-compiled functions
+        return true;
+    }
+
     protected abstract int getLanguageVersion();
 
     /**
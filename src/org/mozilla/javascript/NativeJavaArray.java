@@ -78,6 +78,9 @@ public class NativeJavaArray extends NativeJavaObject
         this.array = array;
         this.length = Array.getLength(array);
         this.cls = cl.getComponentType();
+        if (array instanceof double[]) {
+            this.doubleArray = (double[])array;
+        }
     }
 
     public boolean has(String id, Scriptable start) {
@@ -104,7 +107,16 @@ public class NativeJavaArray extends NativeJavaObject
     public Object get(int index, Scriptable start) {
         if (0 <= index && index < length) {
             Context cx = Context.getContext();
-            Object obj = Array.get(array, index);
+            Object obj;
+            if (array instanceof Object[]) {
+                obj = ((Object[])array)[index];
+            } else if (doubleArray != null) {
+                obj = Double.valueOf(doubleArray[index]);
+            } else if (array instanceof int[]) {
+                obj = Integer.valueOf(((int[])array)[index]);
+            } else {
+                obj = Array.get(array, index);
+            }
             return cx.getWrapFactory().wrap(cx, this, obj, cls);
         }
         return Undefined.instance;
@@ -119,7 +131,7 @@ public class NativeJavaArray extends NativeJavaObject
 
     public void put(int index, Scriptable start, Object value) {
         if (0 <= index && index < length) {
-            Array.set(array, index, Context.jsToJava(value, cls));
+            NativeJavaObject.setArrayElement(array, cls, index, value);
         }
         else {
             throw Context.reportRuntimeError2(
@@ -165,4 +177,8 @@ public class NativeJavaArray extends NativeJavaObject
     Object array;
     int length;
     Class cls;
+
+    // Same as array when it is a double[], so the interpreter can index it
+    // without reflection or boxing
+    double[] doubleArray;
 }
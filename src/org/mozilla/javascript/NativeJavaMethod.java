@@ -90,7 +90,9 @@ public class NativeJavaMethod extends BaseFunction
                 s = "null";
             } else if (value instanceof Boolean) {
                 s = "boolean";
-            } else if (value instanceof String) {
+            } else if (value instanceof String
+                       || value instanceof ConsString)
+            {
                 s = "string";
             } else if (value instanceof Number) {
                 s = "number";
@@ -154,7 +156,7 @@ public class NativeJavaMethod extends BaseFunction
             throw new RuntimeException("No methods defined for call");
         }
 
-        int index = findFunction(cx, methods, args);
+        int index = findCachedFunction(cx, args);
         if (index < 0) {
             Class c = methods[0].method().getDeclaringClass();
             String sig = c.getName() + '.' + getFunctionName() + '(' +
@@ -191,9 +193,8 @@ public class NativeJavaMethod extends BaseFunction
                 varArgs = Array.newInstance(componentType, 
                                             args.length - argTypes.length + 1);            
                 for (int i = 0; i < Array.getLength(varArgs); i++) {
-                    Object value = Context.jsToJava(args[argTypes.length-1 + i], 
-                                                    componentType);
-                    Array.set(varArgs, i, value);
+                    NativeJavaObject.setArrayElement(varArgs, componentType, i,
+                        args[argTypes.length-1 + i]);
                 }
             }
             
@@ -266,6 +267,61 @@ public class NativeJavaMethod extends BaseFunction
         return wrapped;
     }
 
+    /**
+     * Return the number of calls that found their overload in the cache of
+     * recently seen argument types.
+     */
+    public long getOverloadCacheHits()
+    {
+        return overloadCacheHits;
+    }
+
+    /**
+     * Return the number of calls to an overloaded method that had to
+     * search all overloads.
+     */
+    public long getOverloadCacheMisses()
+    {
+        return overloadCacheMisses;
+    }
+
+    /**
+     * Same as findFunction(cx, methods, args), but remembers the choice for
+     * the last few patterns of argument types.  The choice only depends on
+     * the JS type code of each argument and the class of Java objects and
+     * other scriptables, see NativeJavaObject.getConversionWeight.
+     */
+    private int findCachedFunction(Context cx, Object[] args)
+    {
+        if (methods.length < 2) {
+            return findFunction(cx, methods, args);
+        }
+        boolean enhancedAccess
+            = cx.hasFeature(Context.FEATURE_ENHANCED_JAVA_ACCESS);
+        ResolvedOverload[] cache = overloadCache;
+        if (cache != null) {
+            for (int i = 0; i != OVERLOAD_CACHE_SIZE; ++i) {
+                ResolvedOverload entry = cache[i];
+                if (entry != null && entry.matches(args, enhancedAccess)) {
+                    ++overloadCacheHits;
+                    return entry.index;
+                }
+            }
+        }
+        ++overloadCacheMisses;
+        int index = findFunction(cx, methods, args);
+        if (index >= 0) {
+            if (cache == null) {
+                cache = new ResolvedOverload[OVERLOAD_CACHE_SIZE];
+                overloadCache = cache;
+            }
+            // Entries are immutable, so racing updates only lose entries
+            int slot = overloadCacheNext++ & (OVERLOAD_CACHE_SIZE - 1);
+            cache[slot] = new ResolvedOverload(args, enhancedAccess, index);
+        }
+        return index;
+    }
+
     /**
      * Find the index of the correct function to call given the set of methods
      * or constructors and the arguments.
@@ -570,7 +626,56 @@ public class NativeJavaMethod extends BaseFunction
         }
     }
 
+    /* The overload chosen for one pattern of argument types */
+    private static final class ResolvedOverload
+    {
+        ResolvedOverload(Object[] args, boolean enhancedAccess, int index)
+        {
+            int N = args.length;
+            this.typeCodes = new int[N];
+            this.classes = new Class[N];
+            for (int i = 0; i != N; ++i) {
+                int code = NativeJavaObject.getJSTypeCode(args[i]);
+                typeCodes[i] = code;
+                classes[i] = NativeJavaObject.getConversionClass(args[i],
+                                                                 code);
+            }
+            this.enhancedAccess = enhancedAccess;
+            this.index = index;
+        }
+
+        boolean matches(Object[] args, boolean enhancedAccess)
+        {
+            if (args.length != typeCodes.length
+                || enhancedAccess != this.enhancedAccess)
+            {
+                return false;
+            }
+            for (int i = 0; i != args.length; ++i) {
+                int code = NativeJavaObject.getJSTypeCode(args[i]);
+                if (code != typeCodes[i]
+                    || NativeJavaObject.getConversionClass(args[i], code)
+                       != classes[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private final int[] typeCodes;
+        private final Class[] classes;
+        private final boolean enhancedAccess;
+        final int index;
+    }
+
+    private static final int OVERLOAD_CACHE_SIZE = 8;
+
     MemberBox[] methods;
     private String functionName;
+    private transient ResolvedOverload[] overloadCache;
+    private transient int overloadCacheNext;
+    private transient long overloadCacheHits;
+    private transient long overloadCacheMisses;
 }
 
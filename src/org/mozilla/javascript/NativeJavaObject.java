@@ -265,6 +265,9 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
      * "preferred method conversions" from Live Connect 3</a>
      */
     static int getConversionWeight(Object fromObj, Class to) {
+        if (fromObj instanceof ConsString) {
+            fromObj = fromObj.toString();
+        }
         int fromCode = getJSTypeCode(fromObj);
 
         switch (fromCode) {
@@ -442,14 +445,14 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
         }
     }
 
-    private static int getJSTypeCode(Object value) {
+    static int getJSTypeCode(Object value) {
         if (value == null) {
             return JSTYPE_NULL;
         }
         else if (value == Undefined.instance) {
             return JSTYPE_UNDEFINED;
         }
-        else if (value instanceof String) {
+        else if (value instanceof String || value instanceof ConsString) {
             return JSTYPE_STRING;
         }
         else if (value instanceof Number) {
@@ -486,6 +489,25 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
         }
     }
 
+    /**
+     * Return the class of value that getConversionWeight looks at besides
+     * its JS type code, or null if the weight only depends on the type code.
+     */
+    static Class getConversionClass(Object value, int typeCode) {
+        switch (typeCode) {
+        case JSTYPE_JAVA_OBJECT:
+        case JSTYPE_JAVA_ARRAY:
+            if (value instanceof Wrapper) {
+                value = ((Wrapper)value).unwrap();
+            }
+            return (value == null) ? null : value.getClass();
+        case JSTYPE_OBJECT:
+            return value.getClass();
+        default:
+            return null;
+        }
+    }
+
     /**
      * Not intended for public use. Callers should use the
      * public API Context.toType.
@@ -503,6 +525,9 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
      */
     static Object coerceTypeImpl(Class type, Object value)
     {
+        if (value instanceof ConsString) {
+            value = value.toString();
+        }
         if (value != null && value.getClass() == type) {
             return value;
         }
@@ -649,23 +674,7 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
                 return new Date((long)time);
             }
             else if (type.isArray() && value instanceof NativeArray) {
-                // Make a new java array, and coerce the JS array components
-                // to the target (component) type.
-                NativeArray array = (NativeArray) value;
-                long length = array.getLength();
-                Class arrayType = type.getComponentType();
-                Object Result = Array.newInstance(arrayType, (int)length);
-                for (int i = 0 ; i < length ; ++i) {
-                    try  {
-                        Array.set(Result, i, coerceType(arrayType,
-                                                        array.get(i, array)));
-                    }
-                    catch (EvaluatorException ee) {
-                        reportConversionError(value, type);
-                    }
-                }
-
-                return Result;
+                return coerceArray(type, (NativeArray)value);
             }
             else if (value instanceof Wrapper) {
                 value = ((Wrapper)value).unwrap();
@@ -707,6 +716,83 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
         return value;
     }
 
+    /**
+     * Make a new java array, and coerce the JS array components
+     * to the target (component) type.
+     */
+    private static Object coerceArray(Class type, NativeArray array)
+    {
+        long length = array.getLength();
+        Class componentType = type.getComponentType();
+        Object result = Array.newInstance(componentType, (int)length);
+        Object[] dense = array.getDenseElements();
+        for (int i = 0 ; i < length ; ++i) {
+            Object elem;
+            if (dense == null) {
+                elem = array.get(i, array);
+            } else {
+                elem = (i < dense.length) ? dense[i] : Scriptable.NOT_FOUND;
+            }
+            try  {
+                if (!setArrayElement(result, componentType, i, elem)) {
+                    // The conversion may have run script that changed
+                    // the array, so look at its storage again
+                    dense = array.getDenseElements();
+                }
+            }
+            catch (EvaluatorException ee) {
+                reportConversionError(array, type);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Store value at the given index of a Java array after converting it to
+     * the component type.  Numbers and strings going to double[], int[]
+     * and String[] are stored directly; everything else goes through
+     * {@link #coerceTypeImpl(Class, Object)}.
+     *
+     * @return false if the slow conversion was used, which may have called
+     *         back into script code
+     */
+    static boolean setArrayElement(Object result, Class componentType,
+                                   int index, Object value)
+    {
+        if (result instanceof double[]) {
+            if (value instanceof Number) {
+                ((double[])result)[index] = ((Number)value).doubleValue();
+                return true;
+            }
+        } else if (result instanceof int[]) {
+            if (value instanceof Integer) {
+                ((int[])result)[index] = ((Integer)value).intValue();
+                return true;
+            }
+            if (value instanceof Double) {
+                double d = ((Double)value).doubleValue();
+                int i = (int)d;
+                if (i == d) {
+                    ((int[])result)[index] = i;
+                    return true;
+                }
+            }
+        } else if (result instanceof String[]) {
+            if (value instanceof String || value instanceof ConsString) {
+                ((String[])result)[index] = value.toString();
+                return true;
+            }
+        }
+
+        Object converted = coerceTypeImpl(componentType, value);
+        if (result instanceof Object[]) {
+            ((Object[])result)[index] = converted;
+        } else {
+            Array.set(result, index, converted);
+        }
+        return false;
+    }
+
     private static Object coerceToNumber(Class type, Object value)
     {
         Class valueClass = value.getClass();
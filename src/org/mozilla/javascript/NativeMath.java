@@ -121,21 +121,104 @@ final class NativeMath extends IdScriptableObject
         if (!f.hasTag(MATH_TAG)) {
             return super.execIdCall(f, cx, scope, thisObj, args);
         }
-        double x;
+        double x, y;
         int methodId = f.methodId();
         switch (methodId) {
             case Id_toSource:
                 return "Math";
 
-            case Id_abs:
+            case Id_max:
+            case Id_min:
+                x = (methodId == Id_max)
+                    ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+                for (int i = 0; i != args.length; ++i) {
+                    double d = ScriptRuntime.toNumber(args[i]);
+                    x = minOrMax(methodId, x, d);
+                    if (x != x) {
+                        break;
+                    }
+                }
+                return ScriptRuntime.wrapNumber(x);
+
+            case Id_atan2:
+            case Id_pow:
                 x = ScriptRuntime.toNumber(args, 0);
+                y = ScriptRuntime.toNumber(args, 1);
+                break;
+
+            case Id_random:
+                x = y = 0;
+                break;
+
+            default:
+                x = ScriptRuntime.toNumber(args, 0);
+                y = 0;
+                break;
+        }
+        return ScriptRuntime.wrapNumber(compute(methodId, x, y));
+    }
+
+    /**
+     * Check if f is a Math method that {@link #callNumeric} can run.
+     */
+    static boolean isNumericFunction(IdFunctionObject f)
+    {
+        return f.hasTag(MATH_TAG) && f.methodId() != Id_toSource;
+    }
+
+    /**
+     * Call a Math method with at most two arguments that are already
+     * numbers. Used by the interpreter to avoid boxing the arguments and
+     * the result.
+     */
+    static double callNumeric(IdFunctionObject f, int argc,
+                              double x, double y)
+    {
+        if (argc < 2) {
+            y = Double.NaN;
+            if (argc < 1) {
+                x = Double.NaN;
+            }
+        }
+        int methodId = f.methodId();
+        if (methodId == Id_max || methodId == Id_min) {
+            double result = (methodId == Id_max)
+                            ? Double.NEGATIVE_INFINITY
+                            : Double.POSITIVE_INFINITY;
+            if (argc >= 1) {
+                result = minOrMax(methodId, result, x);
+                if (argc == 2 && result == result) {
+                    result = minOrMax(methodId, result, y);
+                }
+            }
+            return result;
+        }
+        return compute(methodId, x, y);
+    }
+
+    private static double minOrMax(int methodId, double x, double d)
+    {
+        if (d != d) {
+            return d; // NaN
+        }
+        if (methodId == Id_max) {
+            // if (x < d) x = d; does not work due to -0.0 >= +0.0
+            return Math.max(x, d);
+        } else {
+            return Math.min(x, d);
+        }
+    }
+
+    private static double compute(int methodId, double x, double y)
+    {
+        switch (methodId) {
+            case Id_abs:
                 // abs(-0.0) should be 0.0, but -0.0 < 0.0 == false
                 x = (x == 0.0) ? 0.0 : (x < 0.0) ? -x : x;
                 break;
 
             case Id_acos:
             case Id_asin:
-                x = ScriptRuntime.toNumber(args, 0);
                 if (x == x && -1.0 <= x && x <= 1.0) {
                     x = (methodId == Id_acos) ? Math.acos(x) : Math.asin(x);
                 } else {
@@ -144,67 +227,40 @@ final class NativeMath extends IdScriptableObject
                 break;
 
             case Id_atan:
-                x = ScriptRuntime.toNumber(args, 0);
                 x = Math.atan(x);
                 break;
 
             case Id_atan2:
-                x = ScriptRuntime.toNumber(args, 0);
-                x = Math.atan2(x, ScriptRuntime.toNumber(args, 1));
+                x = Math.atan2(x, y);
                 break;
 
             case Id_ceil:
-                x = ScriptRuntime.toNumber(args, 0);
                 x = Math.ceil(x);
                 break;
 
             case Id_cos:
-                x = ScriptRuntime.toNumber(args, 0);
                 x = (x == Double.POSITIVE_INFINITY
                      || x == Double.NEGATIVE_INFINITY)
                     ? Double.NaN : Math.cos(x);
                 break;
 
             case Id_exp:
-                x = ScriptRuntime.toNumber(args, 0);
                 x = (x == Double.POSITIVE_INFINITY) ? x
                     : (x == Double.NEGATIVE_INFINITY) ? 0.0
                     : Math.exp(x);
                 break;
 
             case Id_floor:
-                x = ScriptRuntime.toNumber(args, 0);
                 x = Math.floor(x);
                 break;
 
             case Id_log:
-                x = ScriptRuntime.toNumber(args, 0);
                 // Java's log(<0) = -Infinity; we need NaN
                 x = (x < 0) ? Double.NaN : Math.log(x);
                 break;
 
-            case Id_max:
-            case Id_min:
-                x = (methodId == Id_max)
-                    ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
-                for (int i = 0; i != args.length; ++i) {
-                    double d = ScriptRuntime.toNumber(args[i]);
-                    if (d != d) {
-                        x = d; // NaN
-                        break;
-                    }
-                    if (methodId == Id_max) {
-                        // if (x < d) x = d; does not work due to -0.0 >= +0.0
-                        x = Math.max(x, d);
-                    } else {
-                        x = Math.min(x, d);
-                    }
-                }
-                break;
-
             case Id_pow:
-                x = ScriptRuntime.toNumber(args, 0);
-                x = js_pow(x, ScriptRuntime.toNumber(args, 1));
+                x = js_pow(x, y);
                 break;
 
             case Id_random:
@@ -212,7 +268,6 @@ final class NativeMath extends IdScriptableObject
                 break;
 
             case Id_round:
-                x = ScriptRuntime.toNumber(args, 0);
                 if (x == x && x != Double.POSITIVE_INFINITY
                     && x != Double.NEGATIVE_INFINITY)
                 {
@@ -232,29 +287,26 @@ final class NativeMath extends IdScriptableObject
                 break;
 
             case Id_sin:
-                x = ScriptRuntime.toNumber(args, 0);
                 x = (x == Double.POSITIVE_INFINITY
                      || x == Double.NEGATIVE_INFINITY)
                     ? Double.NaN : Math.sin(x);
                 break;
 
             case Id_sqrt:
-                x = ScriptRuntime.toNumber(args, 0);
                 x = Math.sqrt(x);
                 break;
 
             case Id_tan:
-                x = ScriptRuntime.toNumber(args, 0);
                 x = Math.tan(x);
                 break;
 
             default: throw new IllegalStateException(String.valueOf(methodId));
         }
-        return ScriptRuntime.wrapNumber(x);
+        return x;
     }
 
     // See Ecma 15.8.2.13
-    private double js_pow(double x, double y) {
+    private static double js_pow(double x, double y) {
         double result;
         if (y != y) {
             // y is NaN, result is always NaN
@@ -616,16 +616,15 @@ final class NativeString extends IdScriptableObject
     private static Object js_split(Context cx, Scriptable scope,
                                    String target, Object[] args)
     {
-        // create an empty Array to return;
+        // The pieces are collected first and the dense Array is
+        // created from them at the end
         Scriptable top = getTopLevelScope(scope);
-        Scriptable result = ScriptRuntime.newObject(cx, top, "Array", null);
 
         // return an array consisting of the target if no separator given
         // don't check against undefined, because we want
         // 'fooundefinedbar'.split(void 0) to split to ['foo', 'bar']
         if (args.length < 1) {
-            result.put(0, result, target);
-            return result;
+            return cx.newArray(top, new Object[] { target });
         }
 
         // Use the second argument as the split limit, if given.
@@ -651,18 +650,25 @@ final class NativeString extends IdScriptableObject
                 }
             }
         }
+        int version = cx.getLanguageVersion();
         if (re == null) {
             separator = ScriptRuntime.toString(args[0]);
             matchlen[0] = separator.length();
+            if (version == Context.VERSION_DEFAULT
+                || version >= Context.VERSION_1_3)
+            {
+                int max = limited ? (int)limit : Integer.MAX_VALUE;
+                return cx.newArray(top, split_string(target, separator, max));
+            }
         }
 
         // split target with separator or re
+        ObjArray result = new ObjArray();
         int[] ip = { 0 };
         int match;
         int len = 0;
         boolean[] matched = { false };
         String[][] parens = { null };
-        int version = cx.getLanguageVersion();
         while ((match = find_split(cx, scope, target, separator, version,
                                    reProxy, re, ip, matchlen, matched, parens))
                >= 0)
@@ -676,7 +682,7 @@ final class NativeString extends IdScriptableObject
             else
                 substr = target.substring(ip[0], match);
 
-            result.put(len, result, substr);
+            result.add(substr);
             len++;
         /*
          * Imitate perl's feature of including parenthesized substrings
@@ -688,7 +694,7 @@ final class NativeString extends IdScriptableObject
                 for (int num = 0; num < size; num++) {
                     if (limited && len >= limit)
                         break;
-                    result.put(len, result, parens[0][num]);
+                    result.add(parens[0][num]);
                     len++;
                 }
                 matched[0] = false;
@@ -706,7 +712,47 @@ final class NativeString extends IdScriptableObject
                     break;
             }
         }
-        return result;
+        return cx.newArray(top, result.toArray());
+    }
+
+    /*
+     * ECMA split of target by a separator string into at most max
+     * pieces, searching with indexOf instead of going through
+     * find_split for every piece.
+     */
+    private static Object[] split_string(String target, String separator,
+                                         int max)
+    {
+        int length = target.length();
+        int seplen = separator.length();
+        if (max == 0 || (seplen == 0 && length == 0)) {
+            return ScriptRuntime.emptyArgs;
+        }
+        if (seplen == 0) {
+            int count = Math.min(length, max);
+            Object[] pieces = new Object[count];
+            for (int i = 0; i != count; ++i) {
+                pieces[i] = String.valueOf(target.charAt(i));
+            }
+            return pieces;
+        }
+        ObjArray pieces = new ObjArray();
+        char sepChar = separator.charAt(0);
+        int start = 0;
+        for (;;) {
+            int i = (seplen == 1) ? target.indexOf(sepChar, start)
+                                  : target.indexOf(separator, start);
+            if (i < 0) {
+                pieces.add(target.substring(start));
+                break;
+            }
+            pieces.add(target.substring(start, i));
+            if (pieces.size() == max) {
+                break;
+            }
+            start = i + seplen;
+        }
+        return pieces.toArray();
     }
 
     /*
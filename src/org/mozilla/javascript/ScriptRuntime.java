@@ -232,6 +232,12 @@ public class ScriptRuntime {
             new LazilyLoadedCtor(scope, topProperty, className, sealed);
         }
 
+        if (sealed) {
+            // The constructors define properties in scope when they load,
+            // which would fail once the caller seals it for sharing
+            scope.initLazilyLoadedCtors();
+        }
+
         return scope;
     }
 
@@ -284,8 +290,8 @@ public class ScriptRuntime {
                 return ((Boolean) val).booleanValue();
             if (val == null || val == Undefined.instance)
                 return false;
-            if (val instanceof String)
-                return ((String) val).length() != 0;
+            if (val instanceof String || val instanceof ConsString)
+                return ((CharSequence) val).length() != 0;
             if (val instanceof Number) {
                 double d = ((Number) val).doubleValue();
                 return (d == d && d != 0.0);
@@ -325,8 +331,8 @@ public class ScriptRuntime {
                 return +0.0;
             if (val == Undefined.instance)
                 return NaN;
-            if (val instanceof String)
-                return toNumber((String) val);
+            if (val instanceof String || val instanceof ConsString)
+                return toNumber(val.toString());
             if (val instanceof Boolean)
                 return ((Boolean) val).booleanValue() ? 1 : +0.0;
             if (val instanceof Scriptable) {
@@ -517,6 +523,20 @@ public class ScriptRuntime {
      */
     public static double toNumber(String s) {
         int len = s.length();
+        // Fast path for short decimal integers
+        if (len != 0 && len <= 9) {
+            int value = 0;
+            int i = 0;
+            while (i != len) {
+                char c = s.charAt(i);
+                if (c < '0' || '9' < c)
+                    break;
+                value = value * 10 + (c - '0');
+                ++i;
+            }
+            if (i == len)
+                return value;
+        }
         int start = 0;
         char startChar;
         for (;;) {
@@ -549,41 +569,119 @@ public class ScriptRuntime {
             }
         }
 
-        int end = len - 1;
-        char endChar;
-        while (Character.isWhitespace(endChar = s.charAt(end)))
+        int end = len;
+        while (Character.isWhitespace(s.charAt(end - 1)))
             end--;
-        if (endChar == 'y') {
-            // check for "Infinity"
-            if (startChar == '+' || startChar == '-')
-                start++;
-            if (start + 7 == end && s.regionMatches(start, "Infinity", 0, 8))
-                return startChar == '-'
-                    ? Double.NEGATIVE_INFINITY
-                    : Double.POSITIVE_INFINITY;
-            return NaN;
+        // A non-hexadecimal number
+        return stringToDecimal(s, start, end, false);
+    }
+
+    /*
+     * Helper function for toNumber and parseFloat: converts an optionally
+     * signed decimal literal or Infinity in s between start and end.  If
+     * prefix is set, the longest prefix forming such a literal is converted,
+     * otherwise the whole range must be one.  Returns NaN if there is none.
+     *
+     * Values with at most 18 significant digits that are exact after one
+     * multiplication or division by a power of ten are computed directly;
+     * only the remaining ones go through Double.parseDouble.
+     */
+    static double stringToDecimal(String s, int start, int end,
+                                  boolean prefix)
+    {
+        int i = start;
+        boolean negative = false;
+        if (i != end) {
+            char c = s.charAt(i);
+            if (c == '+' || c == '-') {
+                negative = (c == '-');
+                ++i;
+            }
         }
-        // A non-hexadecimal, non-infinity number:
-        // just try a normal floating point conversion
-        String sub = s.substring(start, end+1);
-        if (MSJVM_BUG_WORKAROUNDS) {
-            // The MS JVM will accept non-conformant strings
-            // rather than throwing a NumberFormatException
-            // as it should.
-            for (int i=sub.length()-1; i >= 0; i--) {
-                char c = sub.charAt(i);
-                if (('0' <= c && c <= '9') || c == '.' ||
-                    c == 'e' || c == 'E'  ||
-                    c == '+' || c == '-')
-                    continue;
+        if (end - i >= 8 && s.regionMatches(i, "Infinity", 0, 8)) {
+            if (!prefix && i + 8 != end)
                 return NaN;
+            return negative ? Double.NEGATIVE_INFINITY
+                            : Double.POSITIVE_INFINITY;
+        }
+
+        int literalStart = i;
+        long mantissa = 0;
+        int digits = 0;         // significant digits in mantissa
+        int exp10 = 0;
+        boolean exact = true;   // no digits were dropped
+        boolean sawDigit = false;
+        boolean fraction = false;
+        for (; i != end; ++i) {
+            char c = s.charAt(i);
+            if (c == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            if (c < '0' || '9' < c)
+                break;
+            sawDigit = true;
+            if (mantissa == 0 && c == '0') {
+                // leading zero
+                if (fraction)
+                    --exp10;
+            } else if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                ++digits;
+                if (fraction)
+                    --exp10;
+            } else {
+                exact = false;
             }
         }
-        try {
-            return Double.valueOf(sub).doubleValue();
-        } catch (NumberFormatException ex) {
+        if (!sawDigit)
             return NaN;
+
+        int literalEnd = i;
+        if (i != end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            ++i;
+            boolean negativeExp = false;
+            if (i != end && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                negativeExp = (s.charAt(i) == '-');
+                ++i;
+            }
+            int expStart = i;
+            int exp = 0;
+            for (; i != end; ++i) {
+                char c = s.charAt(i);
+                if (c < '0' || '9' < c)
+                    break;
+                if (exp < 100000)
+                    exp = exp * 10 + (c - '0');
+            }
+            // "1e" and "1e+" are not part of the literal
+            if (i != expStart) {
+                literalEnd = i;
+                exp10 += negativeExp ? -exp : exp;
+            }
         }
+        if (!prefix && literalEnd != end)
+            return NaN;
+
+        double value;
+        if (exact && (mantissa == 0 || exp10 == 0)) {
+            value = mantissa;
+        } else if (exact && mantissa < (1L << 53)
+                   && -22 <= exp10 && exp10 <= 22)
+        {
+            // Both mantissa and 10^|exp10| are exact doubles, so a single
+            // correctly rounded operation gives the correct result
+            value = mantissa;
+            if (exp10 < 0) {
+                value /= DToA.tens[-exp10];
+            } else {
+                value *= DToA.tens[exp10];
+            }
+        } else {
+            // The range was checked above, so this can not throw
+            value = Double.parseDouble(s.substring(literalStart, literalEnd));
+        }
+        return negative ? -value : value;
     }
 
     /**
@@ -609,9 +707,6 @@ public class ScriptRuntime {
         return result;
     }
 
-    /* Work around Microsoft Java VM bugs. */
-    private final static boolean MSJVM_BUG_WORKAROUNDS = true;
-
     public static String escapeString(String s)
     {
         return escapeString(s, '"');
@@ -764,6 +859,18 @@ public class ScriptRuntime {
         if (base != 10) {
             return DToA.JS_dtobasestr(base, d);
         } else {
+            // Integers below 2^53 print exactly as their digits
+            long l = (long)d;
+            if (l == d && -MAX_EXACT_INTEGER < l && l < MAX_EXACT_INTEGER) {
+                if (0 <= l && l < SMALL_INT_STRING_CACHE_SIZE) {
+                    return smallIntToString((int)l);
+                }
+                return Long.toString(l);
+            }
+            String s = FastDtoa.numberToString(d);
+            if (s != null) {
+                return s;
+            }
             StringBuffer result = new StringBuffer();
             DToA.JS_dtostr(result, DToA.DTOSTR_STANDARD, 0, d);
             return result.toString();
@@ -771,6 +878,24 @@ public class ScriptRuntime {
 
     }
 
+    private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+    private static final int SMALL_INT_STRING_CACHE_SIZE = 1024;
+
+    private static final String[] smallIntStrings
+        = new String[SMALL_INT_STRING_CACHE_SIZE];
+
+    private static String smallIntToString(int i)
+    {
+        // Racing threads may both create the string, which is harmless
+        String s = smallIntStrings[i];
+        if (s == null) {
+            s = Integer.toString(i);
+            smallIntStrings[i] = s;
+        }
+        return s;
+    }
+
     static String uneval(Context cx, Scriptable scope, Object value)
     {
         if (value == null) {
@@ -779,8 +904,8 @@ public class ScriptRuntime {
         if (value == Undefined.instance) {
             return "undefined";
         }
-        if (value instanceof String) {
-            String escaped = escapeString((String)value);
+        if (value instanceof String || value instanceof ConsString) {
+            String escaped = escapeString(value.toString());
             StringBuffer sb = new StringBuffer(escaped.length() + 2);
             sb.append('\"');
             sb.append(escaped);
@@ -929,7 +1054,8 @@ public class ScriptRuntime {
         if (val == Undefined.instance) {
             throw typeError0("msg.undef.to.object");
         }
-        String className = val instanceof String ? "String" :
+        String className = (val instanceof String
+                            || val instanceof ConsString) ? "String" :
                            val instanceof Number ? "Number" :
                            val instanceof Boolean ? "Boolean" :
                            null;
@@ -2264,7 +2390,7 @@ public class ScriptRuntime {
             throw notFunctionError(fun);
         }
         Function function = (Function)fun;
-        return function.construct(cx, scope, args);
+        return function.construct(cx, scope, flattenArgs(function, args));
     }
 
     public static Object callSpecial(Context cx, Callable fun,
@@ -2287,7 +2413,7 @@ public class ScriptRuntime {
             throw Kit.codeBug();
         }
 
-        return fun.call(cx, scope, thisObj, args);
+        return fun.call(cx, scope, thisObj, flattenArgs(fun, args));
     }
 
     public static Object newSpecial(Context cx, Object fun,
@@ -2345,7 +2471,8 @@ public class ScriptRuntime {
             }
         }
 
-        return function.call(cx, scope, callThis, callArgs);
+        return function.call(cx, scope, callThis,
+                             flattenArgs(function, callArgs));
     }
 
     static Object[] getApplyArguments(Context cx, Object arg1)
@@ -2386,7 +2513,7 @@ public class ScriptRuntime {
         if (args.length < 1)
             return Undefined.instance;
         Object x = args[0];
-        if (!(x instanceof String)) {
+        if (!(x instanceof String || x instanceof ConsString)) {
             if (cx.hasFeature(Context.FEATURE_STRICT_MODE) ||
                 cx.hasFeature(Context.FEATURE_STRICT_EVAL))
             {
@@ -2419,7 +2546,7 @@ public class ScriptRuntime {
 
         // Compile with explicit interpreter instance to force interpreter
         // mode.
-        Script script = cx.compileString((String)x, evaluator,
+        Script script = cx.compileString(x.toString(), evaluator,
                                          reporter, sourceName, 1, null);
         evaluator.setEvalScriptFlag(script);
         Callable c = (Callable)script;
@@ -2446,7 +2573,7 @@ public class ScriptRuntime {
                 return "xml";
             return (value instanceof Callable) ? "function" : "object";
         }
-        if (value instanceof String)
+        if (value instanceof String || value instanceof ConsString)
             return "string";
         if (value instanceof Number)
             return "number";
@@ -2501,23 +2628,87 @@ public class ScriptRuntime {
             val1 = ((Scriptable) val1).getDefaultValue(null);
         if (val2 instanceof Scriptable)
             val2 = ((Scriptable) val2).getDefaultValue(null);
-        if (!(val1 instanceof String) && !(val2 instanceof String))
+        if (!(val1 instanceof String || val1 instanceof ConsString)
+            && !(val2 instanceof String || val2 instanceof ConsString))
             if ((val1 instanceof Number) && (val2 instanceof Number))
                 return wrapNumber(((Number)val1).doubleValue() +
                                   ((Number)val2).doubleValue());
             else
                 return wrapNumber(toNumber(val1) + toNumber(val2));
-        return toString(val1).concat(toString(val2));
+        return ConsString.concat(toCharSequence(val1), toCharSequence(val2));
+    }
+
+    public static CharSequence add(CharSequence val1, Object val2) {
+        return ConsString.concat(val1, toCharSequence(val2));
     }
 
+    public static CharSequence add(Object val1, CharSequence val2) {
+        return ConsString.concat(toCharSequence(val1), val2);
+    }
+
+    /**
+     * @deprecated The method is only present for compatibility.
+     */
     public static String add(String val1, Object val2) {
         return val1.concat(toString(val2));
     }
 
+    /**
+     * @deprecated The method is only present for compatibility.
+     */
     public static String add(Object val1, String val2) {
         return toString(val1).concat(val2);
     }
 
+    /**
+     * Convert a value to a string for concatenation, keeping a
+     * {@link ConsString} as it is instead of flattening it.
+     */
+    static CharSequence toCharSequence(Object val)
+    {
+        if (val instanceof ConsString) {
+            return (ConsString)val;
+        }
+        return toString(val);
+    }
+
+    /**
+     * Return value, or the String for it if it is a {@link ConsString}.
+     * Values are flattened before they are stored in an object property or
+     * array element, so that Java code reading them gets a String.
+     */
+    static Object flattenValue(Object value)
+    {
+        if (value instanceof ConsString) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    /**
+     * Return the arguments for a call of fun with every {@link ConsString}
+     * replaced by a String. Script functions take the arguments as they
+     * are, but any other callable may be Java code that expects strings to
+     * be java.lang.String; it gets a copy of args if one had to change.
+     */
+    public static Object[] flattenArgs(Callable fun, Object[] args)
+    {
+        if (fun instanceof NativeFunction) {
+            return args;
+        }
+        Object[] result = args;
+        for (int i = 0; i != args.length; ++i) {
+            Object arg = args[i];
+            if (arg instanceof ConsString) {
+                if (result == args) {
+                    result = args.clone();
+                }
+                result[i] = arg.toString();
+            }
+        }
+        return result;
+    }
+
     /**
      * @deprecated The method is only present for compatibility.
      */
@@ -2698,8 +2889,8 @@ public class ScriptRuntime {
             return false;
         } else if (x instanceof Number) {
             return eqNumber(((Number)x).doubleValue(), y);
-        } else if (x instanceof String) {
-            return eqString((String)x, y);
+        } else if (x instanceof String || x instanceof ConsString) {
+            return eqString(x.toString(), y);
         } else if (x instanceof Boolean) {
             boolean b = ((Boolean)x).booleanValue();
             if (y instanceof Boolean) {
@@ -2751,8 +2942,8 @@ public class ScriptRuntime {
                 return eqNumber(d, x);
             } else if (y instanceof Number) {
                 return eqNumber(((Number)y).doubleValue(), x);
-            } else if (y instanceof String) {
-                return eqString((String)y, x);
+            } else if (y instanceof String || y instanceof ConsString) {
+                return eqString(y.toString(), x);
             }
             // covers the case when y == Undefined.instance as well
             return false;
@@ -2764,7 +2955,7 @@ public class ScriptRuntime {
     
     private static boolean isPrimitive(Object obj) {
         return (obj instanceof Number) || (obj instanceof String) ||
-               (obj instanceof Boolean);
+               (obj instanceof ConsString) || (obj instanceof Boolean);
     }
 
     static boolean eqNumber(double x, Object y)
@@ -2774,7 +2965,7 @@ public class ScriptRuntime {
                 return false;
             } else if (y instanceof Number) {
                 return x == ((Number)y).doubleValue();
-            } else if (y instanceof String) {
+            } else if (y instanceof String || y instanceof ConsString) {
                 return x == toNumber(y);
             } else if (y instanceof Boolean) {
                 return x == (((Boolean)y).booleanValue() ? 1.0 : +0.0);
@@ -2799,8 +2990,8 @@ public class ScriptRuntime {
         for (;;) {
             if (y == null || y == Undefined.instance) {
                 return false;
-            } else if (y instanceof String) {
-                return x.equals(y);
+            } else if (y instanceof String || y instanceof ConsString) {
+                return x.equals(y.toString());
             } else if (y instanceof Number) {
                 return toNumber(x) == ((Number)y).doubleValue();
             } else if (y instanceof Boolean) {
@@ -2836,9 +3027,9 @@ public class ScriptRuntime {
             if (y instanceof Number) {
                 return ((Number)x).doubleValue() == ((Number)y).doubleValue();
             }
-        } else if (x instanceof String) {
-            if (y instanceof String) {
-                return x.equals(y);
+        } else if (x instanceof String || x instanceof ConsString) {
+            if (y instanceof String || y instanceof ConsString) {
+                return x.toString().equals(y.toString());
             }
         } else if (x instanceof Boolean) {
             if (y instanceof Boolean) {
@@ -2926,8 +3117,10 @@ public class ScriptRuntime {
                 val1 = ((Scriptable) val1).getDefaultValue(NumberClass);
             if (val2 instanceof Scriptable)
                 val2 = ((Scriptable) val2).getDefaultValue(NumberClass);
-            if (val1 instanceof String && val2 instanceof String) {
-                return ((String)val1).compareTo((String)val2) < 0;
+            if ((val1 instanceof String || val1 instanceof ConsString)
+                && (val2 instanceof String || val2 instanceof ConsString))
+            {
+                return val1.toString().compareTo(val2.toString()) < 0;
             }
             d1 = toNumber(val1);
             d2 = toNumber(val2);
@@ -2946,8 +3139,10 @@ public class ScriptRuntime {
                 val1 = ((Scriptable) val1).getDefaultValue(NumberClass);
             if (val2 instanceof Scriptable)
                 val2 = ((Scriptable) val2).getDefaultValue(NumberClass);
-            if (val1 instanceof String && val2 instanceof String) {
-                return ((String)val1).compareTo((String)val2) <= 0;
+            if ((val1 instanceof String || val1 instanceof ConsString)
+                && (val2 instanceof String || val2 instanceof ConsString))
+            {
+                return val1.toString().compareTo(val2.toString()) <= 0;
             }
             d1 = toNumber(val1);
             d2 = toNumber(val2);
@@ -2999,9 +3194,14 @@ public class ScriptRuntime {
         Object result;
         cx.topCallScope = ScriptableObject.getTopLevelScope(scope);
         cx.useDynamicScope = cx.hasFeature(Context.FEATURE_DYNAMIC_SCOPE);
+        cx.isContinuationsTopCall = ScriptableObject.hasProperty(
+            cx.topCallScope, "Continuation");
         ContextFactory f = cx.getFactory();
         try {
             result = f.doTopCall(callable, cx, scope, thisObj, args);
+            if (result instanceof ConsString) {
+                result = result.toString();
+            }
         } finally {
             cx.topCallScope = null;
             // Cleanup cached references
@@ -3347,6 +3547,9 @@ public class ScriptRuntime {
             Object[] sparse;
             if (skipCount == 0) {
                 sparse = objects;
+                for (int i = 0; i != length; ++i) {
+                    sparse[i] = flattenValue(sparse[i]);
+                }
             } else {
                 sparse = new Object[length];
                 int skip = 0;
@@ -3356,7 +3559,7 @@ public class ScriptRuntime {
                         ++skip;
                         continue;
                     }
-                    sparse[i] = objects[j];
+                    sparse[i] = flattenValue(objects[j]);
                     ++j;
                 }
             }
@@ -3398,8 +3601,24 @@ public class ScriptRuntime {
                                               Object[] propertyValues,
                                               int [] getterSetters,
                                               Context cx, Scriptable scope)
+    {
+        return newObjectLiteral(propertyIds, propertyValues, getterSetters,
+                                null, cx, scope);
+    }
+
+    /**
+     * Create an object literal that starts in shape mode with the given
+     * root shape if shapeRoot is not null.
+     */
+    static Scriptable newObjectLiteral(Object[] propertyIds,
+                                       Object[] propertyValues,
+                                       int [] getterSetters, Shape shapeRoot,
+                                       Context cx, Scriptable scope)
     {
         Scriptable object = cx.newObject(scope);
+        if (shapeRoot != null && object.getClass() == NativeObject.class) {
+            ((NativeObject)object).initShape(shapeRoot);
+        }
         for (int i = 0, end = propertyIds.length; i != end; ++i) {
             Object id = propertyIds[i];
             int getterSetter = getterSetters[i];
@@ -44,8 +44,9 @@
 
 package org.mozilla.javascript;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.*;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.io.*;
 import org.mozilla.javascript.debug.DebuggableObject;
 
@@ -140,8 +141,18 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
     // cache; may be removed for smaller memory footprint
     private transient Slot lastAccess = REMOVED;
 
-    // associated values are not serialized
-    private transient volatile Hashtable associatedValues;
+    // Shape mode: while shape is not null, named properties are stored in
+    // shapeValues at the indexes given by shape and slots stays empty.
+    private transient volatile Shape shape;
+    private transient Object[] shapeValues;
+
+    // Read-only open addressing copy of slots for sealed objects, so that
+    // lookups on shared sealed scopes neither lock nor write to the object
+    private transient Slot[] frozenSlots;
+
+    // associated values are not serialized; the map is copied on write
+    // so that readers never lock
+    private transient volatile HashMap associatedValues;
 
     private static final int SLOT_QUERY = 1;
     private static final int SLOT_MODIFY = 2;
@@ -149,6 +160,7 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
     private static final int SLOT_MODIFY_GETTER_SETTER = 4;
     private static final int SLOT_MODIFY_CONST = 5;
 
+
     private static class Slot implements Serializable
     {
         static final long serialVersionUID = -3539051633409902634L;
@@ -181,7 +193,7 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
             return attributes;
         }
 
-        final synchronized void setAttributes(int value)
+        final void setAttributes(int value)
         {
             checkValidAttributes(value);
             attributes = (short)value;
@@ -250,6 +262,10 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
      */
     public boolean has(String name, Scriptable start)
     {
+        Shape s = shape;
+        if (s != null) {
+            return s.lookup(name) >= 0;
+        }
         return null != getSlot(name, 0, SLOT_QUERY);
     }
 
@@ -343,6 +359,14 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
     public void delete(String name)
     {
         checkNotSealed(name, 0);
+        Shape s = shape;
+        if (s != null) {
+            if (s.lookup(name) < 0) {
+                // Nothing to remove, so keep the shape
+                return;
+            }
+            toDictionaryMode();
+        }
         accessSlot(name, 0, SLOT_REMOVE);
     }
 
@@ -1527,9 +1551,38 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
      *
      * @since 1.4R3
      */
-    public synchronized void sealObject() {
-        if (count >= 0) {
-            count = ~count;
+    public void sealObject() {
+        synchronized (this) {
+            if (count >= 0) {
+                if (shape != null) {
+                    toDictionaryMode();
+                }
+                count = ~count;
+                freezeSlots();
+            }
+        }
+    }
+
+    /**
+     * Initialize the lazily loaded constructors defined in this object.
+     */
+    void initLazilyLoadedCtors()
+    {
+        ObjArray names = new ObjArray();
+        Slot[] s = slots;
+        if (s != null) {
+            for (int i = 0; i != s.length; ++i) {
+                for (Slot slot = s[i]; slot != null; slot = slot.next) {
+                    if (slot.value instanceof LazilyLoadedCtor
+                        && slot.name != null)
+                    {
+                        names.add(slot.name);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i != names.size(); ++i) {
+            getImpl((String)names.get(i), 0, this);
         }
     }
 
@@ -1892,7 +1945,7 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
      */
     public final Object getAssociatedValue(Object key)
     {
-        Hashtable h = associatedValues;
+        HashMap h = associatedValues;
         if (h == null)
             return null;
         return h.get(key);
@@ -1942,21 +1995,35 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
     public final Object associateValue(Object key, Object value)
     {
         if (value == null) throw new IllegalArgumentException();
-        Hashtable h = associatedValues;
-        if (h == null) {
-            synchronized (this) {
-                h = associatedValues;
-                if (h == null) {
-                    h = new Hashtable();
-                    associatedValues = h;
+        synchronized (this) {
+            HashMap h = associatedValues;
+            if (h == null) {
+                h = new HashMap();
+            } else {
+                Object current = h.get(key);
+                if (current != null) {
+                    return current;
                 }
+                h = new HashMap(h);
             }
+            h.put(key, value);
+            associatedValues = h;
         }
-        return Kit.initHash(h, key, value);
+        return value;
     }
 
     private Object getImpl(String name, int index, Scriptable start)
     {
+        if (name != null) {
+            Shape s = shape;
+            if (s != null) {
+                Object[] values = shapeValues;
+                if (values != null) {
+                    int i = s.lookup(name);
+                    return (i < 0) ? Scriptable.NOT_FOUND : values[i];
+                }
+            }
+        }
         Slot slot = getSlot(name, index, SLOT_QUERY);
         if (slot == null) {
             return Scriptable.NOT_FOUND;
@@ -2012,6 +2079,17 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
     private boolean putImpl(String name, int index, Scriptable start,
                             Object value, int constFlag)
     {
+        value = ScriptRuntime.flattenValue(value);
+        if (name != null && shape != null) {
+            if (this != start) {
+                // Shape properties are plain data properties, so the
+                // value always goes to start
+                return false;
+            }
+            if (constFlag == EMPTY && putShapeProperty(name, value)) {
+                return true;
+            }
+        }
         Slot slot;
         if (this != start) {
             slot = getSlot(name, index, SLOT_QUERY);
@@ -2095,6 +2173,21 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
      */
     private Slot getSlot(String name, int index, int accessType)
     {
+        Shape s = shape;
+        if (s != null) {
+            if (accessType != SLOT_QUERY) {
+                toDictionaryMode();
+            } else if (name != null) {
+                Object[] values = shapeValues;
+                if (values != null) {
+                    // Answer queries from the shape. The slot is a copy
+                    // since shape properties have no slots of their own.
+                    int i = s.lookup(name);
+                    return (i < 0) ? null : newShapeSlot(s, values, i);
+                }
+            }
+        }
+
         Slot slot;
 
         // Query last access cache and check that it was not deleted.
@@ -2122,8 +2215,9 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         }
 
         slot = accessSlot(name, index, accessType);
-        if (slot != null) {
-            // Update the cache
+        if (slot != null && count >= 0) {
+            // Update the cache. Sealed objects are often shared between
+            // threads, so they are never written to on lookup.
             lastAccess = slot;
         }
         return slot;
@@ -2140,6 +2234,14 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         {
             // Check the hashtable without using synchronization
 
+            Slot[] frozen = frozenSlots;
+            if (frozen != null && accessType != SLOT_MODIFY_GETTER_SETTER) {
+                Slot slot = lookupFrozenSlot(frozen, name, indexOrHash);
+                if (slot != null || accessType == SLOT_QUERY) {
+                    return slot;
+                }
+            }
+
             Slot[] slotsLocalRef = slots; // Get stable local reference
             if (slotsLocalRef == null) {
                 if (accessType == SLOT_QUERY)
@@ -2158,7 +2260,9 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
                                 // This will avoid calling String.equals when
                                 // slot is accessed with same string object
                                 // next time.
-                                slot.name = name;
+                                if (count >= 0) {
+                                    slot.name = name;
+                                }
                                 break;
                             }
                         }
@@ -2186,6 +2290,7 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
             // by GetterSlot. Time to synchronize.
 
             synchronized (this) {
+                frozenSlots = null;
                 // Refresh local ref if another thread triggered grow
                 slotsLocalRef = slots;
                 int insertPos;
@@ -2263,6 +2368,7 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
 
         } else if (accessType == SLOT_REMOVE) {
             synchronized (this) {
+                frozenSlots = null;
                 Slot[] slotsLocalRef = slots;
                 if (count != 0) {
                     int tableSize = slots.length;
@@ -2303,6 +2409,61 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         }
     }
 
+    /**
+     * Build the read-only lookup table of a sealed object.
+     * Must be inside synchronized (this).
+     */
+    private void freezeSlots()
+    {
+        Slot[] s = slots;
+        int n = (count < 0) ? ~count : count;
+        if (s == null || n == 0) {
+            return;
+        }
+        int tableSize = 4;
+        while (tableSize < 2 * n) {
+            tableSize <<= 1;
+        }
+        Slot[] frozen = new Slot[tableSize];
+        int mask = tableSize - 1;
+        for (int i = 0; i != s.length; ++i) {
+            for (Slot slot = s[i]; slot != null; slot = slot.next) {
+                int pos = slot.indexOrHash & mask;
+                while (frozen[pos] != null) {
+                    pos = (pos + 1) & mask;
+                }
+                frozen[pos] = slot;
+            }
+        }
+        frozenSlots = frozen;
+    }
+
+    private static Slot lookupFrozenSlot(Slot[] frozen, String name,
+                                         int indexOrHash)
+    {
+        int mask = frozen.length - 1;
+        int pos = indexOrHash & mask;
+        for (;;) {
+            Slot slot = frozen[pos];
+            if (slot == null) {
+                return null;
+            }
+            if (slot.indexOrHash == indexOrHash) {
+                String sname = slot.name;
+                if (name == null) {
+                    if (sname == null) {
+                        return slot;
+                    }
+                } else if (sname == name
+                           || (sname != null && name.equals(sname)))
+                {
+                    return slot;
+                }
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
     private static int getSlotIndex(int tableSize, int indexOrHash)
     {
         return (indexOrHash & 0x7fffffff) % tableSize;
@@ -2348,7 +2509,367 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         }
     }
 
+    /**
+     * Switch an object without properties to shape mode. Objects passed the
+     * same root shape and given the same properties in the same order will
+     * share their shape. Objects that already have properties are left
+     * unchanged.
+     *
+     * @see Shape
+     */
+    final void initShape(Shape root)
+    {
+        synchronized (this) {
+            if (count == 0 && slots == null && shape == null) {
+                int capacity = root.getCapacityHint();
+                shapeValues = (capacity == 0) ? ScriptRuntime.emptyArgs
+                                              : new Object[capacity];
+                shape = root;
+            }
+        }
+    }
+
+    /**
+     * Set the value of a named property while in shape mode.
+     * @return false if the object had to leave shape mode and the property
+     *         must be stored in the hash table
+     */
+    private boolean putShapeProperty(String name, Object value)
+    {
+        // Writes take the lock too: a store into a values array that
+        // another thread is growing or moving into slots would be lost
+        synchronized (this) {
+            Shape s = shape;
+            if (s == null) {
+                return false;
+            }
+            Object[] values = shapeValues;
+            int i = s.lookup(name);
+            if (i < 0) {
+                Shape next = s.addProperty(name);
+                if (next == null) {
+                    toDictionaryMode();
+                    return false;
+                }
+                i = s.count;
+                if (i == values.length) {
+                    int capacity = Math.max(next.getCapacityHint(),
+                                            (i < 4) ? 4 : 2 * i);
+                    Object[] newValues = new Object[capacity];
+                    System.arraycopy(values, 0, newValues, 0, i);
+                    values = newValues;
+                    shapeValues = values;
+                }
+                values[i] = value;
+                // Publish the new shape after its value is in place
+                shape = next;
+            } else {
+                values[i] = value;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move the properties of an object in shape mode into the hash table.
+     */
+    private void toDictionaryMode()
+    {
+        synchronized (this) {
+            toDictionaryModeImpl();
+        }
+    }
+
+    /**
+     * Build the hash table that adding the properties of a shape one by
+     * one would have created, growing it the same way getSlotImpl does.
+     * Objects leaving shape mode thus get the table, and so the
+     * enumeration order, they would have had without shapes.
+     *
+     * @param values the property values or null for slots without values
+     */
+    private static Slot[] newShapeTable(Shape s, Object[] values)
+    {
+        int n = s.count;
+        Slot[] table = new Slot[5];
+        for (int i = 0; i != n; ++i) {
+            if (4 * (i + 1) > 3 * table.length) {
+                Slot[] newTable = new Slot[table.length * 2 + 1];
+                copyTable(table, newTable, i);
+                table = newTable;
+            }
+            Slot slot = newShapeSlot(s, values, i);
+            addKnownAbsentSlot(table, slot,
+                               getSlotIndex(table.length, slot.indexOrHash));
+        }
+        return table;
+    }
+
+    /**
+     * Return the names of the properties of a shape in the order of the
+     * table built by {@link #newShapeTable(Shape, Object[])}.
+     */
+    static Object[] getShapeTableIds(Shape s)
+    {
+        Slot[] table = newShapeTable(s, null);
+        Object[] ids = new Object[s.count];
+        int n = 0;
+        for (int i = 0; i != table.length; ++i) {
+            for (Slot slot = table[i]; slot != null; slot = slot.next) {
+                ids[n++] = slot.name;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Create a slot holding the shape property at the given index. Shape
+     * properties are plain data properties without attributes.
+     */
+    private static Slot newShapeSlot(Shape s, Object[] values, int index)
+    {
+        String name = s.getName(index);
+        Slot slot = new Slot(name, name.hashCode(), 0);
+        if (values != null) {
+            slot.value = values[index];
+        }
+        return slot;
+    }
+
+    private void toDictionaryModeImpl()
+    {
+        Shape s = shape;
+        if (s == null) {
+            return;
+        }
+        Object[] values = shapeValues;
+        int n = s.count;
+        if (n != 0) {
+            slots = newShapeTable(s, values);
+            count = n;
+        }
+        // Readers see the hash table once shape is cleared
+        shape = null;
+        shapeValues = null;
+    }
+
+    /**
+     * Inline cache entry for one property access site of the interpreter.
+     * Without a shape it remembers the receiver of the last access and the
+     * slot holding the property. With a shape the property was found on
+     * the direct prototype of a shape mode receiver: the reference is the
+     * prototype and the entry applies to all receivers with that shape and
+     * prototype. Objects are weakly referenced so caches kept in shared
+     * InterpreterData never keep request objects alive.
+     */
+    private static final class PropertyCacheEntry extends WeakReference
+    {
+        final Slot slot;
+        final Shape shape;
+        final int misses;
+        // Set once the entry served an access, racy but only a hint
+        boolean hit;
+
+        PropertyCacheEntry(Object referent, Slot slot, Shape shape,
+                           int misses)
+        {
+            super(referent);
+            this.slot = slot;
+            this.shape = shape;
+            this.misses = misses;
+        }
+    }
+
+    /**
+     * Inline cache entry for an own property of shape mode receivers.
+     */
+    private static final class ShapeCacheEntry
+    {
+        final Shape shape;
+        final int index;
+        final int misses;
+        // Set once the entry served an access, racy but only a hint
+        boolean hit;
+
+        ShapeCacheEntry(Shape shape, int index, int misses)
+        {
+            this.shape = shape;
+            this.index = index;
+            this.misses = misses;
+        }
+    }
+
+    // Sites that missed more often than this in a row, without a hit in
+    // between, stop caching
+    private static final int PROPERTY_CACHE_MISS_LIMIT = 8;
+
+    private static final Object MEGAMORPHIC_SITE = new Object();
+
+    /**
+     * Get the value of a property cached for the given site or
+     * {@link Scriptable#NOT_FOUND} if the cache does not apply to obj.
+     */
+    static Object getCachedProperty(Object[] cache, int site, Object obj)
+    {
+        Object entry = cache[site];
+        if (entry instanceof ShapeCacheEntry) {
+            if (obj instanceof ScriptableObject) {
+                ScriptableObject so = (ScriptableObject)obj;
+                ShapeCacheEntry e = (ShapeCacheEntry)entry;
+                if (so.shape == e.shape) {
+                    Object[] values = so.shapeValues;
+                    if (values != null) {
+                        if (!e.hit) {
+                            e.hit = true;
+                        }
+                        return values[e.index];
+                    }
+                }
+            }
+        } else if (entry instanceof PropertyCacheEntry) {
+            PropertyCacheEntry e = (PropertyCacheEntry)entry;
+            Slot slot = e.slot;
+            if (slot.wasDeleted == 0) {
+                if (e.shape == null) {
+                    // A cleared referent must not match a null receiver
+                    Object receiver = e.get();
+                    if (receiver != null && receiver == obj) {
+                        if (!e.hit) {
+                            e.hit = true;
+                        }
+                        return slot.value;
+                    }
+                } else if (obj instanceof ScriptableObject) {
+                    ScriptableObject so = (ScriptableObject)obj;
+                    Object holder = e.get();
+                    if (so.shape == e.shape && holder != null
+                        && so.prototypeObject == holder)
+                    {
+                        if (!e.hit) {
+                            e.hit = true;
+                        }
+                        return slot.value;
+                    }
+                }
+            }
+        }
+        return Scriptable.NOT_FOUND;
+    }
+
+    /**
+     * Store value into an own property cached for the given site.
+     * @return false if the cache does not apply and the generic put must
+     *         be used
+     */
+    static boolean putCachedProperty(Object[] cache, int site, Object obj,
+                                     Object value)
+    {
+        Object entry = cache[site];
+        if (entry instanceof ShapeCacheEntry) {
+            if (obj instanceof ScriptableObject) {
+                ScriptableObject so = (ScriptableObject)obj;
+                ShapeCacheEntry e = (ShapeCacheEntry)entry;
+                value = ScriptRuntime.flattenValue(value);
+                // Locked like putShapeProperty so the store cannot go to
+                // a values array being replaced
+                synchronized (so) {
+                    if (so.shape == e.shape) {
+                        so.shapeValues[e.index] = value;
+                        if (!e.hit) {
+                            e.hit = true;
+                        }
+                        return true;
+                    }
+                }
+            }
+        } else if (entry instanceof PropertyCacheEntry) {
+            PropertyCacheEntry e = (PropertyCacheEntry)entry;
+            Object receiver = e.get();
+            if (e.shape == null && receiver != null && receiver == obj) {
+                Slot slot = e.slot;
+                if (slot.wasDeleted == 0
+                    && (slot.getAttributes() & READONLY) == 0
+                    && !((ScriptableObject)obj).isSealed())
+                {
+                    slot.value = ScriptRuntime.flattenValue(value);
+                    if (!e.hit) {
+                        e.hit = true;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Refill the cache for the given site after a miss. Only plain
+     * {@link NativeObject} receivers are cached, as their property lookup
+     * is exactly the slot or shape lookup; host objects and classes
+     * overriding get/put always go through the generic path.
+     */
+    static void updatePropertyCache(Object[] cache, int site, Object obj,
+                                    String name)
+    {
+        Object entry = cache[site];
+        if (entry == MEGAMORPHIC_SITE) {
+            return;
+        }
+        // Count the misses since the entry last produced a hit, so sites
+        // that see a new receiver per request keep caching
+        int misses = 0;
+        if (entry instanceof PropertyCacheEntry) {
+            PropertyCacheEntry e = (PropertyCacheEntry)entry;
+            misses = e.hit ? 1 : e.misses + 1;
+        } else if (entry instanceof ShapeCacheEntry) {
+            ShapeCacheEntry e = (ShapeCacheEntry)entry;
+            misses = e.hit ? 1 : e.misses + 1;
+        }
+        if (misses > PROPERTY_CACHE_MISS_LIMIT) {
+            cache[site] = MEGAMORPHIC_SITE;
+            return;
+        }
+        Object newEntry = null;
+        if (obj != null && obj.getClass() == NativeObject.class) {
+            ScriptableObject so = (ScriptableObject)obj;
+            Shape s = so.shape;
+            if (s == null) {
+                Slot slot = so.getSlot(name, 0, SLOT_QUERY);
+                if (slot != null && !(slot instanceof GetterSlot)) {
+                    newEntry = new PropertyCacheEntry(obj, slot, null, misses);
+                }
+            } else {
+                int index = s.lookup(name);
+                if (index >= 0) {
+                    newEntry = new ShapeCacheEntry(s, index, misses);
+                } else {
+                    Scriptable proto = so.prototypeObject;
+                    if (proto != null
+                        && proto.getClass() == NativeObject.class
+                        && ((ScriptableObject)proto).shape == null)
+                    {
+                        Slot slot = ((ScriptableObject)proto).getSlot(
+                                        name, 0, SLOT_QUERY);
+                        if (slot != null && !(slot instanceof GetterSlot)) {
+                            newEntry = new PropertyCacheEntry(proto, slot, s,
+                                                              misses);
+                        }
+                    }
+                }
+            }
+        }
+        if (newEntry == null) {
+            // Record the miss with an entry that never matches
+            newEntry = new PropertyCacheEntry(null, REMOVED, null, misses);
+        }
+        cache[site] = newEntry;
+    }
+
     Object[] getIds(boolean getAll) {
+        Shape shape = this.shape;
+        if (shape != null) {
+            return shape.getIds();
+        }
         Slot[] s = slots;
         Object[] a = ScriptRuntime.emptyArgs;
         if (s == null)
@@ -2373,29 +2894,56 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         return result;
     }
 
-    private synchronized void writeObject(ObjectOutputStream out)
+    private void writeObject(ObjectOutputStream out)
         throws IOException
     {
-        out.defaultWriteObject();
-        int objectsCount = count;
-        if (objectsCount < 0) {
-            // "this" was sealed
-            objectsCount = ~objectsCount;
-        }
-        if (objectsCount == 0) {
-            out.writeInt(0);
-        } else {
-            out.writeInt(slots.length);
-            for (int i = 0; i < slots.length; ++i) {
-                Slot slot = slots[i];
-                while (slot != null) {
-                    out.writeObject(slot);
-                    slot = slot.next;
-                    if (--objectsCount == 0)
-                        return;
+        // Take a consistent snapshot under the lock but write it outside,
+        // as writing other objects takes their locks.
+        int countSnapshot;
+        int tableSize = 0;
+        Slot[] slotsSnapshot = null;
+        synchronized (this) {
+            Shape s = shape;
+            Slot[] table = slots;
+            if (s != null) {
+                // Write the slots toDictionaryMode would create, without
+                // leaving shape mode; readObject builds the hash table
+                countSnapshot = s.count;
+                if (countSnapshot != 0) {
+                    table = newShapeTable(s, shapeValues);
+                }
+            } else {
+                countSnapshot = count;
+            }
+            int objectsCount = countSnapshot;
+            if (objectsCount < 0) {
+                // "this" was sealed
+                objectsCount = ~objectsCount;
+            }
+            if (objectsCount != 0) {
+                tableSize = table.length;
+                slotsSnapshot = new Slot[objectsCount];
+                int n = 0;
+                for (int i = 0; i < tableSize; ++i) {
+                    for (Slot slot = table[i]; slot != null;
+                         slot = slot.next)
+                    {
+                        slotsSnapshot[n++] = slot;
+                    }
                 }
             }
         }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("prototypeObject", prototypeObject);
+        fields.put("parentScopeObject", parentScopeObject);
+        fields.put("count", countSnapshot);
+        out.writeFields();
+        out.writeInt(tableSize);
+        if (slotsSnapshot != null) {
+            for (int i = 0; i != slotsSnapshot.length; ++i) {
+                out.writeObject(slotsSnapshot[i]);
+            }
+        }
     }
 
     private void readObject(ObjectInputStream in)
@@ -2417,6 +2965,9 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
                 int slotIndex = getSlotIndex(tableSize, slot.indexOrHash);
                 addKnownAbsentSlot(slots, slot, slotIndex);
             }
+            if (count < 0) {
+                freezeSlots();
+            }
         }
     }
 
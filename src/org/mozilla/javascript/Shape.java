@@ -0,0 +1,204 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.util.HashMap;
+
+/**
+ * Immutable description of the named properties of objects in shape mode.
+ * <p>
+ * Objects built the same way, for example by the same object literal or
+ * by the same constructor, start from a common root shape and follow the
+ * same transitions as properties are added, so they end up sharing one
+ * Shape instance. Such objects only keep an array of property values;
+ * the shape maps each property name to its index in that array.
+ * <p>
+ * Shape properties are always plain data properties with no attributes.
+ * Deleting a property, changing attributes, defining getters or setters,
+ * adding index properties or sealing turns the object back into the
+ * regular hash table representation of {@link ScriptableObject}.
+ *
+ * @see ScriptableObject#initShape(Shape)
+ */
+final class Shape
+{
+    /**
+     * Maximum number of properties in a shape; objects that grow larger
+     * switch to the hash table.
+     */
+    static final int MAX_PROPERTIES = 32;
+
+    /**
+     * Maximum number of distinct transitions from a single shape. Objects
+     * used as dictionaries with varying keys exceed this quickly and then
+     * stop creating new shapes.
+     */
+    static final int MAX_TRANSITIONS = 16;
+
+    private static final String[] EMPTY_NAMES = new String[0];
+
+    final Shape root;
+    final int count;
+    private final String[] names;
+
+    // The most recently used transition, checked without locking
+    private volatile Shape lastTransition;
+    // All transitions, guarded by this
+    private HashMap transitions;
+
+    // Property names in hash table order, computed by getIds
+    private volatile Object[] tableIds;
+
+    // Largest property count seen among shapes of this root, used to
+    // size value arrays of new objects. Only meaningful for root shapes.
+    private volatile int capacityHint;
+
+    /**
+     * Create a new root shape without properties.
+     */
+    Shape()
+    {
+        this.root = this;
+        this.count = 0;
+        this.names = EMPTY_NAMES;
+    }
+
+    private Shape(Shape parent, String name)
+    {
+        this.root = parent.root;
+        this.count = parent.count + 1;
+        String[] names = new String[count];
+        System.arraycopy(parent.names, 0, names, 0, parent.count);
+        names[parent.count] = name;
+        this.names = names;
+    }
+
+    /**
+     * Return the index of the property with the given name or -1 if the
+     * shape has no such property.
+     */
+    int lookup(String name)
+    {
+        String[] names = this.names;
+        for (int i = count; i != 0;) {
+            --i;
+            if (names[i] == name) {
+                return i;
+            }
+        }
+        for (int i = count; i != 0;) {
+            --i;
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String getName(int index)
+    {
+        return names[index];
+    }
+
+    /**
+     * Return the property names in the order objects with this shape
+     * would enumerate them without shapes, see
+     * {@link ScriptableObject#getShapeTableIds(Shape)}.
+     */
+    Object[] getIds()
+    {
+        if (count == 0) {
+            return ScriptRuntime.emptyArgs;
+        }
+        Object[] ids = tableIds;
+        if (ids == null) {
+            // Racing threads compute equal arrays
+            ids = ScriptableObject.getShapeTableIds(this);
+            tableIds = ids;
+        }
+        Object[] result = new Object[count];
+        System.arraycopy(ids, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Return the shape of objects with this shape's properties followed by
+     * the given property or null if limits on shape size or number of
+     * transitions were reached.
+     */
+    Shape addProperty(String name)
+    {
+        Shape next = lastTransition;
+        if (next != null) {
+            String lastName = next.names[count];
+            if (lastName == name || lastName.equals(name)) {
+                return next;
+            }
+        }
+        if (count == MAX_PROPERTIES) {
+            return null;
+        }
+        synchronized (this) {
+            if (transitions == null) {
+                transitions = new HashMap();
+            }
+            next = (Shape)transitions.get(name);
+            if (next == null) {
+                if (transitions.size() == MAX_TRANSITIONS) {
+                    return null;
+                }
+                next = new Shape(this, name);
+                transitions.put(name, next);
+                if (root.capacityHint < next.count) {
+                    root.capacityHint = next.count;
+                }
+            }
+            lastTransition = next;
+        }
+        return next;
+    }
+
+    /**
+     * Return the size of value arrays to allocate for objects with this
+     * root shape.
+     */
+    int getCapacityHint()
+    {
+        return root.capacityHint;
+    }
+}
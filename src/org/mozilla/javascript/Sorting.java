@@ -0,0 +1,281 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.util.Comparator;
+
+/**
+ * Stable merge sort used by Array.prototype.sort.
+ * <p>
+ * This is a simplified TimSort: the input is split into natural ascending
+ * or strictly descending runs, short runs are extended with binary
+ * insertion sort, and runs are merged from a stack that keeps their
+ * lengths balanced. Before each merge the elements already in place at
+ * either end are skipped with a binary search, so presorted and nearly
+ * sorted arrays need close to n comparisons.
+ * <p>
+ * Only the sign of <tt>compare(x, y) &gt; 0</tt> is used, meaning x must
+ * be placed after y. JavaScript compare functions are often inconsistent,
+ * so the sort never relies on the comparator being a total order: a bad
+ * comparator gives an unspecified order but always a permutation of the
+ * input, unlike {@link java.util.Arrays#sort(Object[], Comparator)} which
+ * may throw.
+ */
+final class Sorting
+{
+    // Arrays shorter than this are sorted with binary insertion sort
+    private static final int MIN_MERGE = 32;
+
+    // Enough for any int length given the run length invariants
+    private static final int MAX_RUNS = 49;
+
+    private final Object[] a;
+    private final Comparator c;
+    private Object[] tmp;
+
+    private final int[] runBase = new int[MAX_RUNS];
+    private final int[] runLength = new int[MAX_RUNS];
+    private int runCount;
+
+    private Sorting(Object[] a, Comparator c)
+    {
+        this.a = a;
+        this.c = c;
+    }
+
+    /**
+     * Sort the first <tt>length</tt> elements of the array.
+     */
+    static void sort(Object[] a, int length, Comparator c)
+    {
+        if (length < 2) {
+            return;
+        }
+        if (length < MIN_MERGE) {
+            Sorting s = new Sorting(a, c);
+            int run = s.makeAscendingRun(0, length);
+            s.insertionSort(0, length, run);
+            return;
+        }
+        new Sorting(a, c).sort(length);
+    }
+
+    private void sort(int length)
+    {
+        int minRun = minRunLength(length);
+        int lo = 0;
+        int remaining = length;
+        do {
+            int run = makeAscendingRun(lo, length);
+            if (run < minRun) {
+                int forced = Math.min(remaining, minRun);
+                insertionSort(lo, lo + forced, lo + run);
+                run = forced;
+            }
+            runBase[runCount] = lo;
+            runLength[runCount] = run;
+            ++runCount;
+            mergeCollapse();
+            lo += run;
+            remaining -= run;
+        } while (remaining != 0);
+
+        while (runCount > 1) {
+            int n = runCount - 2;
+            if (n > 0 && runLength[n - 1] < runLength[n + 1]) {
+                --n;
+            }
+            mergeAt(n);
+        }
+    }
+
+    private static int minRunLength(int n)
+    {
+        int r = 0;
+        while (n >= MIN_MERGE) {
+            r |= n & 1;
+            n >>= 1;
+        }
+        return n + r;
+    }
+
+    /**
+     * Return the length of the run starting at lo, reversing it first if
+     * it is strictly descending. Strictness keeps the sort stable.
+     */
+    private int makeAscendingRun(int lo, int hi)
+    {
+        int runHi = lo + 1;
+        if (runHi == hi) {
+            return 1;
+        }
+        if (c.compare(a[lo], a[runHi]) > 0) {
+            ++runHi;
+            while (runHi < hi && c.compare(a[runHi - 1], a[runHi]) > 0) {
+                ++runHi;
+            }
+            for (int i = lo, j = runHi - 1; i < j; ++i, --j) {
+                Object t = a[i];
+                a[i] = a[j];
+                a[j] = t;
+            }
+        } else {
+            ++runHi;
+            while (runHi < hi && !(c.compare(a[runHi - 1], a[runHi]) > 0)) {
+                ++runHi;
+            }
+        }
+        return runHi - lo;
+    }
+
+    /**
+     * Sort a[lo, hi) given that a[lo, start) is already sorted.
+     */
+    private void insertionSort(int lo, int hi, int start)
+    {
+        for (int i = start; i < hi; ++i) {
+            Object pivot = a[i];
+            int pos = upperBound(pivot, lo, i);
+            System.arraycopy(a, pos, a, pos + 1, i - pos);
+            a[pos] = pivot;
+        }
+    }
+
+    /**
+     * Return the first index in [lo, hi) with an element placed after key.
+     */
+    private int upperBound(Object key, int lo, int hi)
+    {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (c.compare(a[mid], key) > 0) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Return the first index in [lo, hi) with an element not placed
+     * before key.
+     */
+    private int lowerBound(Object key, int lo, int hi)
+    {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (c.compare(key, a[mid]) > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Merge adjacent runs until the lengths on the stack shrink fast
+     * enough for the stack to stay shallow and the merges balanced.
+     */
+    private void mergeCollapse()
+    {
+        while (runCount > 1) {
+            int n = runCount - 2;
+            int[] len = runLength;
+            if ((n > 0 && len[n - 1] <= len[n] + len[n + 1])
+                || (n > 1 && len[n - 2] <= len[n - 1] + len[n]))
+            {
+                if (len[n - 1] < len[n + 1]) {
+                    --n;
+                }
+            } else if (len[n] > len[n + 1]) {
+                break;
+            }
+            mergeAt(n);
+        }
+    }
+
+    private void mergeAt(int i)
+    {
+        int base1 = runBase[i];
+        int length1 = runLength[i];
+        int base2 = runBase[i + 1];
+        int length2 = runLength[i + 1];
+
+        runLength[i] = length1 + length2;
+        if (i == runCount - 3) {
+            runBase[i + 1] = runBase[i + 2];
+            runLength[i + 1] = runLength[i + 2];
+        }
+        --runCount;
+
+        // Leading elements of run 1 that are not after run 2's first
+        // element, and trailing elements of run 2 that are not before run
+        // 1's last element, are already in place.
+        int k = upperBound(a[base2], base1, base1 + length1);
+        length1 -= k - base1;
+        base1 = k;
+        if (length1 == 0) {
+            return;
+        }
+        length2 = lowerBound(a[base1 + length1 - 1], base2, base2 + length2)
+                  - base2;
+        if (length2 == 0) {
+            return;
+        }
+
+        if (tmp == null || tmp.length < length1) {
+            tmp = new Object[length1];
+        }
+        System.arraycopy(a, base1, tmp, 0, length1);
+        int i1 = 0;
+        int i2 = base2;
+        int end2 = base2 + length2;
+        int dest = base1;
+        while (i1 < length1 && i2 < end2) {
+            if (c.compare(tmp[i1], a[i2]) > 0) {
+                a[dest++] = a[i2++];
+            } else {
+                a[dest++] = tmp[i1++];
+            }
+        }
+        // Whatever is left of run 2 is already in place
+        System.arraycopy(tmp, i1, a, dest, length1 - i1);
+    }
+}
@@ -0,0 +1,314 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript;
+
+import java.lang.reflect.Constructor;
+import java.util.LinkedList;
+
+/**
+ * Background compiler that promotes hot interpreted functions to
+ * JVM bytecode.
+ * <p>
+ * Scripts compiled with a positive
+ * {@link Context#setTieredCompilationThreshold(int) threshold} run in the
+ * interpreter. Each eligible function counts its invocations and loop
+ * back edges, and once the count reaches the threshold the function is
+ * parsed again from the retained source and compiled by the optimizer on
+ * a daemon thread. The next call of any closure of that function then
+ * runs the compiled code.
+ * <p>
+ * Functions that need an activation object (those using
+ * <tt>arguments</tt>, <tt>eval</tt>, <tt>with</tt> or <tt>yield</tt>)
+ * and named function expressions are never promoted. While a debugger is
+ * attached, or while the top-level scope of the call defines
+ * <tt>Continuation</tt>, every function runs in the interpreter: a
+ * continuation cannot be captured through a compiled frame, and any
+ * callee might capture one.
+ */
+final class TieredCompiler implements Runnable
+{
+    private static final Class codegenClass = Kit.classOrNull(
+                             "org.mozilla.javascript.optimizer.Codegen");
+
+    private static final int OPTIMIZATION_LEVEL = 9;
+
+    // Values of InterpreterData.itsTierState besides the compiled bytecode
+    // and the constructor of its loaded class
+    private static final Object PENDING = new Object();
+    private static final Object DISABLED = new Object();
+
+    private static final LinkedList queue = new LinkedList();
+    private static Thread worker;
+
+    /**
+     * Everything needed to compile the functions of one script again.
+     */
+    static final class Source
+    {
+        Source(ContextFactory factory, CompilerEnvirons compilerEnv,
+               String sourceString, String sourceName, int lineno,
+               boolean returnFunction, int threshold)
+        {
+            this.factory = factory;
+            this.compilerEnv = compilerEnv;
+            this.sourceString = sourceString;
+            this.sourceName = sourceName;
+            this.lineno = lineno;
+            this.returnFunction = returnFunction;
+            this.threshold = threshold;
+        }
+
+        final ContextFactory factory;
+        final CompilerEnvirons compilerEnv;
+        final String sourceString;
+        final String sourceName;
+        final int lineno;
+        final boolean returnFunction;
+        final int threshold;
+    }
+
+    private TieredCompiler()
+    {
+    }
+
+    static boolean isAvailable()
+    {
+        return codegenClass != null;
+    }
+
+    /**
+     * Mark the eligible functions of a freshly compiled script for
+     * promotion.
+     */
+    static void prepare(Context cx, InterpreterData idata,
+                        String sourceString, String sourceName, int lineno,
+                        boolean returnFunction)
+    {
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(cx);
+        compilerEnv.setOptimizationLevel(OPTIMIZATION_LEVEL);
+        Source source = new Source(cx.getFactory(), compilerEnv,
+                                   sourceString, sourceName, lineno,
+                                   returnFunction,
+                                   cx.getTieredCompilationThreshold());
+        prepare_r(idata, source);
+    }
+
+    private static void prepare_r(InterpreterData idata, Source source)
+    {
+        if (idata.itsFunctionType != 0 && !idata.itsNeedsActivation
+            && !(idata.itsFunctionType == FunctionNode.FUNCTION_EXPRESSION
+                 && idata.itsName != null && idata.itsName.length() != 0))
+        {
+            idata.itsTierSource = source;
+        }
+        if (idata.itsNestedFunctions != null) {
+            for (int i = 0; i != idata.itsNestedFunctions.length; ++i) {
+                prepare_r(idata.itsNestedFunctions[i], source);
+            }
+        }
+    }
+
+    /**
+     * Return the compiled implementation of the given closure or null if
+     * it should keep running in the interpreter. Counts the invocation
+     * towards the promotion threshold.
+     */
+    static NativeFunction getFunction(Context cx, InterpretedFunction f)
+    {
+        InterpreterData idata = f.idata;
+        Object state = idata.itsTierState;
+        if (state == null) {
+            if (++idata.itsTierCount >= idata.itsTierSource.threshold) {
+                request(idata);
+            }
+            return null;
+        }
+        if (state instanceof Object[]) {
+            synchronized (idata) {
+                state = idata.itsTierState;
+                if (state instanceof Object[]) {
+                    return defineFunction(cx, f, state);
+                }
+            }
+        }
+        if (state instanceof Constructor) {
+            Object[] initArgs = { f.getParentScope(), cx, Integer.valueOf(0) };
+            try {
+                return (NativeFunction)((Constructor)state).newInstance(
+                    initArgs);
+            } catch (Exception ex) {
+                synchronized (idata) {
+                    idata.itsTierState = DISABLED;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Called with idata locked
+    private static NativeFunction defineFunction(Context cx,
+                                                 InterpretedFunction f,
+                                                 Object bytecode)
+    {
+        InterpreterData idata = f.idata;
+        NativeFunction result;
+        try {
+            Evaluator codegen = (Evaluator)Kit.newInstanceOrNull(codegenClass);
+            result = (NativeFunction)codegen.createFunctionObject(
+                cx, f.getParentScope(), bytecode, null);
+        } catch (RuntimeException ex) {
+            idata.itsTierState = DISABLED;
+            return null;
+        }
+        idata.itsTierState = result.getClass().getConstructors()[0];
+        return result;
+    }
+
+    private static void request(InterpreterData idata)
+    {
+        synchronized (queue) {
+            if (idata.itsTierState != null) {
+                return;
+            }
+            idata.itsTierState = PENDING;
+            queue.addLast(idata);
+            if (worker == null) {
+                worker = new Thread(new TieredCompiler(),
+                                    "Rhino tiered compiler");
+                worker.setDaemon(true);
+                worker.start();
+            }
+            queue.notify();
+        }
+    }
+
+    public void run()
+    {
+        for (;;) {
+            InterpreterData idata;
+            synchronized (queue) {
+                while (queue.isEmpty()) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException ex) {
+                        // ignore and keep serving requests
+                    }
+                }
+                idata = (InterpreterData)queue.removeFirst();
+            }
+            Object bytecode;
+            try {
+                bytecode = compile(idata);
+            } catch (RuntimeException ex) {
+                bytecode = null;
+            }
+            synchronized (idata) {
+                if (idata.itsTierState == PENDING) {
+                    idata.itsTierState = (bytecode != null)
+                                         ? bytecode : DISABLED;
+                }
+            }
+        }
+    }
+
+    private static Object compile(final InterpreterData idata)
+    {
+        final Source source = idata.itsTierSource;
+        return source.factory.call(new ContextAction() {
+            public Object run(Context cx)
+            {
+                return compile(source, idata);
+            }
+        });
+    }
+
+    private static Object compile(Source source, InterpreterData idata)
+    {
+        CompilerEnvirons compilerEnv = source.compilerEnv;
+        Parser p = InformativeParser.makeParser(
+            compilerEnv, compilerEnv.getErrorReporter());
+        p.calledByCompileFunction = source.returnFunction;
+        ScriptOrFnNode tree = p.parse(source.sourceString, source.sourceName,
+                                      source.lineno);
+
+        // Locate the function node by its path of nested function indexes
+        int depth = 0;
+        for (InterpreterData d = idata; d.parentData != null;
+             d = d.parentData)
+        {
+            ++depth;
+        }
+        int[] path = new int[depth];
+        for (InterpreterData d = idata; d.parentData != null;
+             d = d.parentData)
+        {
+            InterpreterData[] siblings = d.parentData.itsNestedFunctions;
+            int index = 0;
+            while (siblings[index] != d) {
+                ++index;
+            }
+            path[--depth] = index;
+        }
+        ScriptOrFnNode node = source.returnFunction
+                              ? tree.getFunctionNode(0) : tree;
+        for (int i = 0; i != path.length; ++i) {
+            node = node.getFunctionNode(path[i]);
+        }
+        FunctionNode fn = (FunctionNode)node;
+        if (fn.getEncodedSourceEnd() - fn.getEncodedSourceStart()
+            != idata.encodedSourceEnd - idata.encodedSourceStart)
+        {
+            Kit.codeBug();
+        }
+
+        // Compile the function as if it were given to compileFunction
+        ScriptOrFnNode script = new ScriptOrFnNode(Token.SCRIPT);
+        script.setSourceName(source.sourceName);
+        script.setBaseLineno(fn.getBaseLineno());
+        script.setEndLineno(fn.getEndLineno());
+        script.setEncodedSourceBounds(fn.getEncodedSourceStart(),
+                                      fn.getEncodedSourceEnd());
+        script.addFunction(fn);
+
+        Evaluator codegen = (Evaluator)Kit.newInstanceOrNull(codegenClass);
+        return codegen.compile(compilerEnv, script, p.getEncodedSource(),
+                               true);
+    }
+}
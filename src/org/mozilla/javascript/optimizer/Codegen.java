@@ -795,7 +795,8 @@ public class Codegen implements Evaluator
         final int Do_getParamOrVarName    = 3;
         final int Do_getEncodedSource     = 4;
         final int Do_getParamOrVarConst   = 5;
-        final int SWITCH_COUNT            = 6;
+        final int Do_mayRetainArguments   = 6;
+        final int SWITCH_COUNT            = 7;
 
         for (int methodIndex = 0; methodIndex != SWITCH_COUNT; ++methodIndex) {
             if (methodIndex == Do_getEncodedSource && encodedSource == null) {
@@ -840,6 +841,12 @@ public class Codegen implements Evaluator
                                 ClassFileWriter.ACC_PUBLIC);
                 cfw.addPush(encodedSource);
                 break;
+              case Do_mayRetainArguments:
+                methodLocals = 1 + 1; // this + cx
+                cfw.startMethod("mayRetainArguments",
+                                "(Lorg/mozilla/javascript/Context;)Z",
+                                ClassFileWriter.ACC_PUBLIC);
+                break;
               default:
                 throw Kit.codeBug();
             }
@@ -982,6 +989,19 @@ public class Codegen implements Evaluator
                     cfw.add(ByteCode.ARETURN);
                     break;
 
+                  case Do_mayRetainArguments:
+                    // Only functions with an activation keep the argument
+                    // array, the others copy it into registers on entry
+                    if (n.getType() == Token.SCRIPT) {
+                        cfw.addPush(true);
+                    } else {
+                        FunctionNode fn = (FunctionNode)n;
+                        cfw.addPush(fn.requiresActivation()
+                                    || fn.isGenerator());
+                    }
+                    cfw.add(ByteCode.IRETURN);
+                    break;
+
                   default:
                     throw Kit.codeBug();
                 }
@@ -2491,14 +2511,14 @@ class BodyCodegen
                       default:
                         if (child.getType() == Token.STRING) {
                             addScriptRuntimeInvoke("add",
-                                "(Ljava/lang/String;"
+                                "(Ljava/lang/CharSequence;"
                                 +"Ljava/lang/Object;"
-                                +")Ljava/lang/String;");
+                                +")Ljava/lang/CharSequence;");
                         } else if (child.getNext().getType() == Token.STRING) {
                             addScriptRuntimeInvoke("add",
                                 "(Ljava/lang/Object;"
-                                +"Ljava/lang/String;"
-                                +")Ljava/lang/String;");
+                                +"Ljava/lang/CharSequence;"
+                                +")Ljava/lang/CharSequence;");
                         } else {
                             cfw.addALoad(contextLocal);
                             addScriptRuntimeInvoke("add",
@@ -3512,10 +3532,10 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                 +"[Ljava/lang/Object;"
                 +")Lorg/mozilla/javascript/Scriptable;");
         } else {
-            cfw.addInvoke(ByteCode.INVOKEINTERFACE,
-                "org/mozilla/javascript/Callable",
-                "call",
-                "(Lorg/mozilla/javascript/Context;"
+            addOptRuntimeInvoke(
+                "callRegular",
+                "(Lorg/mozilla/javascript/Callable;"
+                +"Lorg/mozilla/javascript/Context;"
                 +"Lorg/mozilla/javascript/Scriptable;"
                 +"Lorg/mozilla/javascript/Scriptable;"
                 +"[Ljava/lang/Object;"
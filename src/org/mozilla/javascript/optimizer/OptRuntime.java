@@ -63,7 +63,8 @@ public final class OptRuntime extends ScriptRuntime
     public static Object call1(Callable fun, Scriptable thisObj, Object arg0,
                                Context cx, Scriptable scope)
     {
-        return fun.call(cx, scope, thisObj, new Object[] { arg0 } );
+        return fun.call(cx, scope, thisObj,
+                        flattenArgs(fun, new Object[] { arg0 }));
     }
 
     /**
@@ -73,7 +74,8 @@ public final class OptRuntime extends ScriptRuntime
                                Object arg0, Object arg1,
                                Context cx, Scriptable scope)
     {
-        return fun.call(cx, scope, thisObj, new Object[] { arg0, arg1 });
+        return fun.call(cx, scope, thisObj,
+                        flattenArgs(fun, new Object[] { arg0, arg1 }));
     }
 
     /**
@@ -83,7 +85,18 @@ public final class OptRuntime extends ScriptRuntime
                                Object[] args,
                                Context cx, Scriptable scope)
     {
-        return fun.call(cx, scope, thisObj, args);
+        return fun.call(cx, scope, thisObj, flattenArgs(fun, args));
+    }
+
+    /**
+     * Implement the regular call of an optimized direct call site, taken
+     * when the called function is not the direct call target.
+     */
+    public static Object callRegular(Callable fun, Context cx,
+                                     Scriptable scope, Scriptable thisObj,
+                                     Object[] args)
+    {
+        return fun.call(cx, scope, thisObj, flattenArgs(fun, args));
     }
 
     /**
@@ -94,7 +107,7 @@ public final class OptRuntime extends ScriptRuntime
     {
         Callable f = getNameFunctionAndThis(name, cx, scope);
         Scriptable thisObj = lastStoredScriptable(cx);
-        return f.call(cx, scope, thisObj, args);
+        return f.call(cx, scope, thisObj, flattenArgs(f, args));
     }
 
     /**
@@ -123,18 +136,18 @@ public final class OptRuntime extends ScriptRuntime
     {
         if (val1 instanceof Scriptable)
             val1 = ((Scriptable) val1).getDefaultValue(null);
-        if (!(val1 instanceof String))
+        if (!(val1 instanceof String || val1 instanceof ConsString))
             return wrapDouble(toNumber(val1) + val2);
-        return ((String)val1).concat(toString(val2));
+        return ConsString.concat((CharSequence)val1, toString(val2));
     }
 
     public static Object add(double val1, Object val2)
     {
         if (val2 instanceof Scriptable)
             val2 = ((Scriptable) val2).getDefaultValue(null);
-        if (!(val2 instanceof String))
+        if (!(val2 instanceof String || val2 instanceof ConsString))
             return wrapDouble(toNumber(val2) + val1);
-        return toString(val1).concat((String)val2);
+        return ConsString.concat(toString(val1), (CharSequence)val2);
     }
 
     public static Object elemIncrDecr(Object obj, double index,
@@ -0,0 +1,183 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript.regexp;
+
+/**
+ * Base class of the matchers generated for frequently executed regular
+ * expressions.
+ * <p>
+ * Once a compiled regular expression has been executed
+ * {@link #getCompileThreshold()} times, its program is translated into a
+ * subclass whose {@link #match} method tests the input directly instead
+ * of walking the program bytecode. Only programs made of literal
+ * characters and strings, character classes, anchors, word boundaries,
+ * capturing parentheses and quantifiers applied to a single character are
+ * translated; backtracking into a quantifier uses a small array of
+ * integers instead of allocated state. Other programs keep using the
+ * interpreter in {@link NativeRegExp}.
+ * <p>
+ * The generated classes are defined by their own class loader, so the
+ * members they use here are public or protected.
+ */
+public abstract class CompiledRegExp
+{
+    private static volatile int compileThreshold = 32;
+
+    RECharSet[] classList;
+
+    protected CompiledRegExp() { }
+
+    /**
+     * Return the number of executions after which a regular expression is
+     * translated to JVM bytecode.
+     */
+    public static int getCompileThreshold()
+    {
+        return compileThreshold;
+    }
+
+    /**
+     * Set the number of executions after which a regular expression is
+     * translated to JVM bytecode. Zero disables the translation.
+     */
+    public static void setCompileThreshold(int threshold)
+    {
+        if (threshold < 0) throw new IllegalArgumentException();
+        compileThreshold = threshold;
+    }
+
+    /**
+     * Match the regular expression against <tt>chars</tt> starting exactly
+     * at <tt>start</tt>.
+     *
+     * @param chars the input
+     * @param start index where the match must begin
+     * @param end length of the input
+     * @param parens the captures, reset by the caller, or null if the
+     *        expression has no capturing parentheses
+     * @param multiline whether <tt>RegExp.multiline</tt> is set
+     * @return the index just past the match, or -1 if there is no match
+     */
+    public abstract int match(char[] chars, int start, int end,
+                              long[] parens, boolean multiline);
+
+    protected final boolean inClass(char ch, int index)
+    {
+        return NativeRegExp.classMatcher(null, classList[index], ch);
+    }
+
+    protected static boolean isDigit(char c)
+    {
+        return NativeRegExp.isDigit(c);
+    }
+
+    protected static boolean isWord(char c)
+    {
+        return NativeRegExp.isWord(c);
+    }
+
+    protected static boolean isLineTerm(char c)
+    {
+        return NativeRegExp.isLineTerm(c);
+    }
+
+    protected static boolean isSpace(char c)
+    {
+        return NativeRegExp.isREWhiteSpace(c);
+    }
+
+    protected static char upcase(char c)
+    {
+        return NativeRegExp.upcase(c);
+    }
+
+    protected static boolean isBOL(char[] chars, int pos, boolean multiline)
+    {
+        return pos == 0 || (multiline && isLineTerm(chars[pos - 1]));
+    }
+
+    protected static boolean isEOL(char[] chars, int pos, int end,
+                                   boolean multiline)
+    {
+        return pos == end || (multiline && isLineTerm(chars[pos]));
+    }
+
+    protected static boolean isWordBoundary(char[] chars, int pos, int end)
+    {
+        return (pos == 0 || !isWord(chars[pos - 1]))
+               ^ !(pos < end && isWord(chars[pos]));
+    }
+
+    protected static boolean matchFlat(char[] chars, int pos, int end,
+                                       String s)
+    {
+        int length = s.length();
+        if (end - pos < length)
+            return false;
+        for (int i = 0; i != length; ++i) {
+            if (chars[pos + i] != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    protected static boolean matchFlatFold(char[] chars, int pos, int end,
+                                           String s)
+    {
+        int length = s.length();
+        if (end - pos < length)
+            return false;
+        for (int i = 0; i != length; ++i) {
+            if (upcase(chars[pos + i]) != upcase(s.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    protected static void openParen(long[] parens, int index, int pos)
+    {
+        parens[index] = pos & 0xffffffffL;
+    }
+
+    protected static void closeParen(long[] parens, int index, int pos)
+    {
+        long start = parens[index] & 0xffffffffL;
+        parens[index] = start | ((long)(pos - (int)start) << 32);
+    }
+}
@@ -41,8 +41,6 @@
 
 package org.mozilla.javascript.regexp;
 
-import java.io.Serializable;
-
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.IdFunctionObject;
@@ -86,60 +84,60 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static final boolean debug = false;
 
-    private static final byte REOP_EMPTY         = 0;  /* match rest of input against rest of r.e. */
-    private static final byte REOP_ALT           = 1;  /* alternative subexpressions in kid and next */
-    private static final byte REOP_BOL           = 2;  /* beginning of input (or line if multiline) */
-    private static final byte REOP_EOL           = 3;  /* end of input (or line if multiline) */
-    private static final byte REOP_WBDRY         = 4;  /* match "" at word boundary */
-    private static final byte REOP_WNONBDRY      = 5;  /* match "" at word non-boundary */
-    private static final byte REOP_QUANT         = 6;  /* quantified atom: atom{1,2} */
-    private static final byte REOP_STAR          = 7;  /* zero or more occurrences of kid */
-    private static final byte REOP_PLUS          = 8;  /* one or more occurrences of kid */
-    private static final byte REOP_OPT           = 9;  /* optional subexpression in kid */
-    private static final byte REOP_LPAREN        = 10; /* left paren bytecode: kid is u.num'th sub-regexp */
-    private static final byte REOP_RPAREN        = 11; /* right paren bytecode */
-    private static final byte REOP_DOT           = 12; /* stands for any character */
+    static final byte REOP_EMPTY         = 0;  /* match rest of input against rest of r.e. */
+    static final byte REOP_ALT           = 1;  /* alternative subexpressions in kid and next */
+    static final byte REOP_BOL           = 2;  /* beginning of input (or line if multiline) */
+    static final byte REOP_EOL           = 3;  /* end of input (or line if multiline) */
+    static final byte REOP_WBDRY         = 4;  /* match "" at word boundary */
+    static final byte REOP_WNONBDRY      = 5;  /* match "" at word non-boundary */
+    static final byte REOP_QUANT         = 6;  /* quantified atom: atom{1,2} */
+    static final byte REOP_STAR          = 7;  /* zero or more occurrences of kid */
+    static final byte REOP_PLUS          = 8;  /* one or more occurrences of kid */
+    static final byte REOP_OPT           = 9;  /* optional subexpression in kid */
+    static final byte REOP_LPAREN        = 10; /* left paren bytecode: kid is u.num'th sub-regexp */
+    static final byte REOP_RPAREN        = 11; /* right paren bytecode */
+    static final byte REOP_DOT           = 12; /* stands for any character */
 //    private static final byte REOP_CCLASS        = 13; /* character class: [a-f] */
-    private static final byte REOP_DIGIT         = 14; /* match a digit char: [0-9] */
-    private static final byte REOP_NONDIGIT      = 15; /* match a non-digit char: [^0-9] */
-    private static final byte REOP_ALNUM         = 16; /* match an alphanumeric char: [0-9a-z_A-Z] */
-    private static final byte REOP_NONALNUM      = 17; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
-    private static final byte REOP_SPACE         = 18; /* match a whitespace char */
-    private static final byte REOP_NONSPACE      = 19; /* match a non-whitespace char */
-    private static final byte REOP_BACKREF       = 20; /* back-reference (e.g., \1) to a parenthetical */
-    private static final byte REOP_FLAT          = 21; /* match a flat string */
-    private static final byte REOP_FLAT1         = 22; /* match a single char */
-    private static final byte REOP_JUMP          = 23; /* for deoptimized closure loops */
+    static final byte REOP_DIGIT         = 14; /* match a digit char: [0-9] */
+    static final byte REOP_NONDIGIT      = 15; /* match a non-digit char: [^0-9] */
+    static final byte REOP_ALNUM         = 16; /* match an alphanumeric char: [0-9a-z_A-Z] */
+    static final byte REOP_NONALNUM      = 17; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
+    static final byte REOP_SPACE         = 18; /* match a whitespace char */
+    static final byte REOP_NONSPACE      = 19; /* match a non-whitespace char */
+    static final byte REOP_BACKREF       = 20; /* back-reference (e.g., \1) to a parenthetical */
+    static final byte REOP_FLAT          = 21; /* match a flat string */
+    static final byte REOP_FLAT1         = 22; /* match a single char */
+    static final byte REOP_JUMP          = 23; /* for deoptimized closure loops */
 //    private static final byte REOP_DOTSTAR       = 24; /* optimize .* to use a single opcode */
 //    private static final byte REOP_ANCHOR        = 25; /* like .* but skips left context to unanchored r.e. */
 //    private static final byte REOP_EOLONLY       = 26; /* $ not preceded by any pattern */
 //    private static final byte REOP_UCFLAT        = 27; /* flat Unicode string; len immediate counts chars */
-    private static final byte REOP_UCFLAT1       = 28; /* single Unicode char */
+    static final byte REOP_UCFLAT1       = 28; /* single Unicode char */
 //    private static final byte REOP_UCCLASS       = 29; /* Unicode character class, vector of chars to match */
 //    private static final byte REOP_NUCCLASS      = 30; /* negated Unicode character class */
 //    private static final byte REOP_BACKREFi      = 31; /* case-independent REOP_BACKREF */
-    private static final byte REOP_FLATi         = 32; /* case-independent REOP_FLAT */
-    private static final byte REOP_FLAT1i        = 33; /* case-independent REOP_FLAT1 */
+    static final byte REOP_FLATi         = 32; /* case-independent REOP_FLAT */
+    static final byte REOP_FLAT1i        = 33; /* case-independent REOP_FLAT1 */
 //    private static final byte REOP_UCFLATi       = 34; /* case-independent REOP_UCFLAT */
-    private static final byte REOP_UCFLAT1i      = 35; /* case-independent REOP_UCFLAT1 */
+    static final byte REOP_UCFLAT1i      = 35; /* case-independent REOP_UCFLAT1 */
 //    private static final byte REOP_ANCHOR1       = 36; /* first-char discriminating REOP_ANCHOR */
 //    private static final byte REOP_NCCLASS       = 37; /* negated 8-bit character class */
 //    private static final byte REOP_DOTSTARMIN    = 38; /* ungreedy version of REOP_DOTSTAR */
 //    private static final byte REOP_LPARENNON     = 39; /* non-capturing version of REOP_LPAREN */
 //    private static final byte REOP_RPARENNON     = 40; /* non-capturing version of REOP_RPAREN */
-    private static final byte REOP_ASSERT        = 41; /* zero width positive lookahead assertion */
-    private static final byte REOP_ASSERT_NOT    = 42; /* zero width negative lookahead assertion */
-    private static final byte REOP_ASSERTTEST    = 43; /* sentinel at end of assertion child */
-    private static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
-    private static final byte REOP_MINIMALSTAR   = 45; /* non-greedy version of * */
-    private static final byte REOP_MINIMALPLUS   = 46; /* non-greedy version of + */
-    private static final byte REOP_MINIMALOPT    = 47; /* non-greedy version of ? */
-    private static final byte REOP_MINIMALQUANT  = 48; /* non-greedy version of {} */
-    private static final byte REOP_ENDCHILD      = 49; /* sentinel at end of quantifier child */
-    private static final byte REOP_CLASS         = 50; /* character class with index */
-    private static final byte REOP_REPEAT        = 51; /* directs execution of greedy quantifier */
-    private static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
-    private static final byte REOP_END           = 53;
+    static final byte REOP_ASSERT        = 41; /* zero width positive lookahead assertion */
+    static final byte REOP_ASSERT_NOT    = 42; /* zero width negative lookahead assertion */
+    static final byte REOP_ASSERTTEST    = 43; /* sentinel at end of assertion child */
+    static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
+    static final byte REOP_MINIMALSTAR   = 45; /* non-greedy version of * */
+    static final byte REOP_MINIMALPLUS   = 46; /* non-greedy version of + */
+    static final byte REOP_MINIMALOPT    = 47; /* non-greedy version of ? */
+    static final byte REOP_MINIMALQUANT  = 48; /* non-greedy version of {} */
+    static final byte REOP_ENDCHILD      = 49; /* sentinel at end of quantifier child */
+    static final byte REOP_CLASS         = 50; /* character class with index */
+    static final byte REOP_REPEAT        = 51; /* directs execution of greedy quantifier */
+    static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
+    static final byte REOP_END           = 53;
      
 
 
@@ -208,7 +206,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
         String global = args.length > 1 && args[1] != Undefined.instance
             ? ScriptRuntime.toString(args[1])
             : null;
-        this.re = (RECompiled)compileRE(cx, s, global, false);
+        this.re = (RECompiled)RegExpCache.compile(cx, s, global, false);
         this.lastIndex = 0;
         return this;
     }
@@ -349,25 +347,166 @@ if (regexp.anchorCh >= 0) {
     System.out.println("Anchor ch = '" + (char)regexp.anchorCh + "'");
 }
 }
+        setLiteral(regexp);
         return regexp;
     }
 
+    /*
+     * Find a literal string every match must contain, looking at the
+     * terms of re that are not inside an alternative, a quantifier or an
+     * assertion. A literal the match must start with is preferred, as
+     * matchRegExp can then try only the positions where it occurs;
+     * otherwise the longest one is taken, which lets matchRegExp fail
+     * without running the program when the input does not contain it.
+     */
+    private static void setLiteral(RECompiled re)
+    {
+        if ((re.flags & JSREG_FOLD) != 0)
+            return;
+        byte[] program = re.program;
+        char[] literal = null;
+        boolean atStart = true;
+        int pc = 0;
+      scan:
+        for (;;) {
+            int opPc = pc;
+            byte op = program[pc++];
+            char[] chars = null;
+            switch (op) {
+            case REOP_FLAT:
+                {
+                    int index = getIndex(program, pc);
+                    int length = getIndex(program, pc + INDEX_LEN);
+                    chars = new char[length];
+                    System.arraycopy(re.source, index, chars, 0, length);
+                    pc += 2 * INDEX_LEN;
+                }
+                break;
+            case REOP_FLAT1:
+                chars = new char[] { (char)(program[pc] & 0xFF) };
+                ++pc;
+                break;
+            case REOP_UCFLAT1:
+                chars = new char[] { (char)getIndex(program, pc) };
+                pc += INDEX_LEN;
+                break;
+            case REOP_BOL:
+            case REOP_EOL:
+            case REOP_WBDRY:
+            case REOP_WNONBDRY:
+                continue;
+            case REOP_LPAREN:
+            case REOP_RPAREN:
+                pc += INDEX_LEN;
+                continue;
+            case REOP_ASSERT:
+            case REOP_ASSERT_NOT:
+                pc += getOffset(program, pc);
+                continue;
+            case REOP_DOT:
+            case REOP_DIGIT:
+            case REOP_NONDIGIT:
+            case REOP_ALNUM:
+            case REOP_NONALNUM:
+            case REOP_SPACE:
+            case REOP_NONSPACE:
+                break;
+            case REOP_CLASS:
+            case REOP_BACKREF:
+                pc += INDEX_LEN;
+                break;
+            case REOP_QUANT:
+            case REOP_MINIMALQUANT:
+                pc += 2 * INDEX_LEN;
+                // fallthrough
+            case REOP_STAR:
+            case REOP_PLUS:
+            case REOP_OPT:
+            case REOP_MINIMALSTAR:
+            case REOP_MINIMALPLUS:
+            case REOP_MINIMALOPT:
+                /* Step over <parencount> & <parenindex> and the child */
+                pc += 2 * INDEX_LEN;
+                pc += getOffset(program, pc);
+                break;
+            default:
+                // REOP_END or an alternative: nothing further is required
+                break scan;
+            }
+            if (chars != null) {
+                if (atStart) {
+                    literal = chars;
+                    re.literalPrefix = true;
+                    re.literalOnly = (opPc == 0
+                                      && program[pc] == REOP_END);
+                    break scan;
+                }
+                if (literal == null || chars.length > literal.length) {
+                    literal = chars;
+                }
+            }
+            atStart = false;
+        }
+        if (literal == null)
+            return;
+
+        int length = literal.length;
+        int[] skip = new int[256];
+        for (int i = 0; i != skip.length; ++i) {
+            skip[i] = length;
+        }
+        for (int i = 0; i < length - 1; ++i) {
+            skip[literal[i] & 0xFF] = length - 1 - i;
+        }
+        re.literal = literal;
+        re.literalSkip = skip;
+    }
+
+    /*
+     * Return the index of the first occurrence of re.literal in chars
+     * between from and end, or -1 if there is none, skipping ahead by
+     * the Boyer-Moore-Horspool shift of the character under the last
+     * literal position.
+     */
+    private static int
+    indexOfLiteral(RECompiled re, char[] chars, int from, int end)
+    {
+        char[] literal = re.literal;
+        int[] skip = re.literalSkip;
+        int last = literal.length - 1;
+        char lastCh = literal[last];
+        for (int i = from + last; i < end; ) {
+            char c = chars[i];
+            if (c == lastCh) {
+                int start = i - last;
+                int j = 0;
+                while (j != last && chars[start + j] == literal[j]) {
+                    ++j;
+                }
+                if (j == last)
+                    return start;
+            }
+            i += skip[c & 0xFF];
+        }
+        return -1;
+    }
+
     static boolean isDigit(char c)
     {
         return '0' <= c && c <= '9';
     }
 
-    private static boolean isWord(char c)
+    static boolean isWord(char c)
     {
         return Character.isLetter(c) || isDigit(c) || c == '_';
     }
 
-    private static boolean isLineTerm(char c)
+    static boolean isLineTerm(char c)
     {
         return ScriptRuntime.isJSLineTerminator(c);
     }
 
-    private static boolean isREWhiteSpace(int c)
+    static boolean isREWhiteSpace(int c)
     {
         return (c == '\u0020' || c == '\u0009'
                 || c == '\n' || c == '\r'
@@ -388,7 +527,7 @@ if (regexp.anchorCh >= 0) {
      *    code point value is less than decimal 128, then return ch.
      * 6. Return cu.
      */
-    private static char upcase(char ch)
+    static char upcase(char ch)
     {
         if (ch < 128) {
             if ('a' <= ch && ch <= 'z') {
@@ -1156,7 +1295,7 @@ if (regexp.anchorCh >= 0) {
         return pc + 2;
     }
 
-    private static int getIndex(byte[] array, int pc)
+    static int getIndex(byte[] array, int pc)
     {
         return ((array[pc] & 0xFF) << 8) | (array[pc + 1] & 0xFF);
     }
@@ -1291,29 +1430,131 @@ if (regexp.anchorCh >= 0) {
         return pc;
     }
 
+    /*
+     * The state stack is a linked list of records in gData.states, and
+     * the backtrack stack an array of entries in gData.backTracks, so
+     * matching allocates only when one of them has to grow. A backtrack
+     * entry remembers the state stack and the number of records in use
+     * when it was pushed; records popped after that stay intact until the
+     * entry is popped, as backtracking returns to the stack they made up.
+     */
+
+    /* Fields of a state record */
+    private static final int STATE_PREVIOUS        = 0; /* previous state or -1 */
+    private static final int STATE_MIN             = 1; /* current quantifier min */
+    private static final int STATE_MAX             = 2; /* current quantifier max */
+    private static final int STATE_INDEX           = 3; /* progress in text */
+    private static final int STATE_CONTINUATION_OP = 4;
+    private static final int STATE_CONTINUATION_PC = 5;
+    private static final int STATE_BACKTRACK       = 6; /* used by ASSERT_ to recover state */
+    private static final int STATE_SIZE            = 7;
+
+    /* Fields of a backtrack entry */
+    private static final int BACKTRACK_OP          = 0; /* where to backtrack to */
+    private static final int BACKTRACK_PC          = 1;
+    private static final int BACKTRACK_LAST_PAREN  = 2;
+    private static final int BACKTRACK_CP          = 3; /* char buffer index */
+    private static final int BACKTRACK_STATE       = 4; /* state of op that backtracked */
+    private static final int BACKTRACK_STATES_USED = 5;
+    private static final int BACKTRACK_PAREN_LOG   = 6;
+    private static final int BACKTRACK_SIZE        = 7;
+
+    /* Backtracks counted before reporting them as instructions */
+    private static final int BACKTRACK_STEPS = 1024;
+
     private static void
     pushProgState(REGlobalData gData, int min, int max,
-                  REBackTrackData backTrackLastToSave,
+                  int backTrackLastToSave,
                   int continuation_pc, int continuation_op)
     {
-        gData.stateStackTop = new REProgState(gData.stateStackTop, min, max,
-                                              gData.cp, backTrackLastToSave,
-                                              continuation_pc,
-                                              continuation_op);
+        int state = gData.statesUsed;
+        int[] states = gData.states;
+        if (state == states.length) {
+            states = new int[state * 2];
+            System.arraycopy(gData.states, 0, states, 0, state);
+            gData.states = states;
+        }
+        states[state + STATE_PREVIOUS] = gData.stateStackTop;
+        states[state + STATE_MIN] = min;
+        states[state + STATE_MAX] = max;
+        states[state + STATE_INDEX] = gData.cp;
+        states[state + STATE_CONTINUATION_OP] = continuation_op;
+        states[state + STATE_CONTINUATION_PC] = continuation_pc;
+        states[state + STATE_BACKTRACK] = backTrackLastToSave;
+        gData.statesUsed = state + STATE_SIZE;
+        gData.stateStackTop = state;
     }
 
-    private static REProgState
+    /*
+     * Pop the state stack and return the popped record, whose fields
+     * remain valid until the next push.
+     */
+    private static int
     popProgState(REGlobalData gData)
     {
-        REProgState state = gData.stateStackTop;
-        gData.stateStackTop = state.previous;
+        int state = gData.stateStackTop;
+        gData.stateStackTop = gData.states[state + STATE_PREVIOUS];
+        if (state + STATE_SIZE == gData.statesUsed) {
+            int top = gData.backTrackStackTop;
+            if (top == 0 || state >= gData.backTracks[top - BACKTRACK_SIZE
+                                                      + BACKTRACK_STATES_USED])
+            {
+                gData.statesUsed = state;
+            }
+        }
         return state;
     }
 
     private static void
     pushBackTrackState(REGlobalData gData, byte op, int target)
     {
-        gData.backTrackStackTop = new REBackTrackData(gData, op, target);
+        int entry = gData.backTrackStackTop;
+        int[] backTracks = gData.backTracks;
+        if (entry == backTracks.length) {
+            backTracks = new int[entry * 2];
+            System.arraycopy(gData.backTracks, 0, backTracks, 0, entry);
+            gData.backTracks = backTracks;
+        }
+        backTracks[entry + BACKTRACK_OP] = op;
+        backTracks[entry + BACKTRACK_PC] = target;
+        backTracks[entry + BACKTRACK_LAST_PAREN] = gData.lastParen;
+        backTracks[entry + BACKTRACK_CP] = gData.cp;
+        backTracks[entry + BACKTRACK_STATE] = gData.stateStackTop;
+        backTracks[entry + BACKTRACK_STATES_USED] = gData.statesUsed;
+        backTracks[entry + BACKTRACK_PAREN_LOG] = gData.parenLogTop;
+        gData.backTrackStackTop = entry + BACKTRACK_SIZE;
+    }
+
+    /*
+     * Pop the backtrack stack, restore the state saved in the popped
+     * entry and return the entry.
+     */
+    private static int
+    popBackTrackState(REGlobalData gData)
+    {
+        int entry = gData.backTrackStackTop - BACKTRACK_SIZE;
+        int[] backTracks = gData.backTracks;
+        gData.backTrackStackTop = entry;
+        gData.lastParen = backTracks[entry + BACKTRACK_LAST_PAREN];
+        gData.cp = backTracks[entry + BACKTRACK_CP];
+        gData.stateStackTop = backTracks[entry + BACKTRACK_STATE];
+        gData.statesUsed = backTracks[entry + BACKTRACK_STATES_USED];
+
+        // Undo the capture changes made since the entry was pushed
+        int mark = backTracks[entry + BACKTRACK_PAREN_LOG];
+        long[] parenLog = gData.parenLog;
+        for (int i = gData.parenLogTop; i != mark; ) {
+            i -= 2;
+            gData.parens[(int)parenLog[i]] = parenLog[i + 1];
+        }
+        gData.parenLogTop = mark;
+
+        if (gData.observer != null && ++gData.steps == BACKTRACK_STEPS) {
+            gData.steps = 0;
+            ScriptRuntime.addInstructionCount(gData.observer,
+                                              BACKTRACK_STEPS);
+        }
+        return entry;
     }
 
     /*
@@ -1443,7 +1684,7 @@ if (regexp.anchorCh >= 0) {
     }
 
     /* Compile the source of the class into a RECharSet */
-    private static void
+    static void
     processCharSet(REGlobalData gData, RECharSet charSet)
     {
         synchronized (charSet) {
@@ -1642,7 +1883,7 @@ if (regexp.anchorCh >= 0) {
      *   Initialize the character set if it this is the first call.
      *   Test the bit - if the ^ flag was specified, non-inclusion is a success
      */
-    private static boolean
+    static boolean
     classMatcher(REGlobalData gData, RECharSet charSet, char ch)
     {
         if (!charSet.converted) {
@@ -1831,7 +2072,7 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
                 {
                     int nextpc;
                     byte nextop;
-                    pushProgState(gData, 0, 0, null,
+                    pushProgState(gData, 0, 0, 0,
                                   currentContinuation_pc,
                                   currentContinuation_op);
                     nextpc = pc + getOffset(program, pc);
@@ -1845,9 +2086,11 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
             case REOP_JUMP:
                 {
                     int offset;
-                    REProgState state = popProgState(gData);
-                    currentContinuation_pc = state.continuation_pc;
-                    currentContinuation_op = state.continuation_op;
+                    int state = popProgState(gData);
+                    currentContinuation_pc
+                        = gData.states[state + STATE_CONTINUATION_PC];
+                    currentContinuation_op
+                        = gData.states[state + STATE_CONTINUATION_OP];
                     offset = getOffset(program, pc);
                     pc += offset;
                     op = program[pc++];
@@ -1923,11 +2166,14 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
             case REOP_ASSERTTEST:
             case REOP_ASSERTNOTTEST:
                 {
-                    REProgState state = popProgState(gData);
-                    gData.cp = state.index;
-                    gData.backTrackStackTop = state.backTrack;
-                    currentContinuation_pc = state.continuation_pc;
-                    currentContinuation_op = state.continuation_op;
+                    int state = popProgState(gData);
+                    int[] states = gData.states;
+                    gData.cp = states[state + STATE_INDEX];
+                    gData.backTrackStackTop = states[state + STATE_BACKTRACK];
+                    currentContinuation_pc
+                        = states[state + STATE_CONTINUATION_PC];
+                    currentContinuation_op
+                        = states[state + STATE_CONTINUATION_OP];
                     if (result) {
                         if (op == REOP_ASSERTTEST) {
                             result = true;
@@ -1990,7 +2236,7 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
                       default:
                         throw Kit.codeBug();
                     }
-                    pushProgState(gData, min, max, null,
+                    pushProgState(gData, min, max, 0,
                                   currentContinuation_pc,
                                   currentContinuation_op);
                     if (greedy) {
@@ -2026,44 +2272,52 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
 
             case REOP_REPEAT:
                 {
-                    REProgState state = popProgState(gData);
+                    int state = popProgState(gData);
+                    int[] states = gData.states;
+                    int state_min = states[state + STATE_MIN];
+                    int state_max = states[state + STATE_MAX];
+                    int state_index = states[state + STATE_INDEX];
+                    int state_continuation_pc
+                        = states[state + STATE_CONTINUATION_PC];
+                    int state_continuation_op
+                        = states[state + STATE_CONTINUATION_OP];
                     if (!result) {
                         //
                         // There's been a failure, see if we have enough
                         // children.
                         //
-                        if (state.min == 0)
+                        if (state_min == 0)
                             result = true;
-                        currentContinuation_pc = state.continuation_pc;
-                        currentContinuation_op = state.continuation_op;
+                        currentContinuation_pc = state_continuation_pc;
+                        currentContinuation_op = state_continuation_op;
                         pc += 2 * INDEX_LEN;  /* <parencount> & <parenindex> */
                         pc = pc + getOffset(program, pc);
                         break;
                     }
                     else {
-                        if (state.min == 0 && gData.cp == state.index) {
+                        if (state_min == 0 && gData.cp == state_index) {
                             // matched an empty string, that'll get us nowhere
                             result = false;
-                            currentContinuation_pc = state.continuation_pc;
-                            currentContinuation_op = state.continuation_op;
+                            currentContinuation_pc = state_continuation_pc;
+                            currentContinuation_op = state_continuation_op;
                             pc += 2 * INDEX_LEN;
                             pc = pc + getOffset(program, pc);
                             break;
                         }
-                        int new_min = state.min, new_max = state.max;
+                        int new_min = state_min, new_max = state_max;
                         if (new_min != 0) new_min--;
                         if (new_max != -1) new_max--;
                         if (new_max == 0) {
                             result = true;
-                            currentContinuation_pc = state.continuation_pc;
-                            currentContinuation_op = state.continuation_op;
+                            currentContinuation_pc = state_continuation_pc;
+                            currentContinuation_op = state_continuation_op;
                             pc += 2 * INDEX_LEN;
                             pc = pc + getOffset(program, pc);
                             break;
                         }
-                        pushProgState(gData, new_min, new_max, null,
-                                      state.continuation_pc,
-                                      state.continuation_op);
+                        pushProgState(gData, new_min, new_max, 0,
+                                      state_continuation_pc,
+                                      state_continuation_op);
                         currentContinuation_op = REOP_REPEAT;
                         currentContinuation_pc = pc;
                         pushBackTrackState(gData, REOP_REPEAT, pc);
@@ -2081,15 +2335,23 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
 
             case REOP_MINIMALREPEAT:
                 {
-                    REProgState state = popProgState(gData);
+                    int state = popProgState(gData);
+                    int[] states = gData.states;
+                    int state_min = states[state + STATE_MIN];
+                    int state_max = states[state + STATE_MAX];
+                    int state_index = states[state + STATE_INDEX];
+                    int state_continuation_pc
+                        = states[state + STATE_CONTINUATION_PC];
+                    int state_continuation_op
+                        = states[state + STATE_CONTINUATION_OP];
                     if (!result) {
                         //
                         // Non-greedy failure - try to consume another child.
                         //
-                        if (state.max == -1 || state.max > 0) {
-                            pushProgState(gData, state.min, state.max, null,
-                                          state.continuation_pc,
-                                          state.continuation_op);
+                        if (state_max == -1 || state_max > 0) {
+                            pushProgState(gData, state_min, state_max, 0,
+                                          state_continuation_pc,
+                                          state_continuation_op);
                             currentContinuation_op = REOP_MINIMALREPEAT;
                             currentContinuation_pc = pc;
                             int parenCount = getIndex(program, pc);
@@ -2103,24 +2365,24 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
                             continue;
                         } else {
                             // Don't need to adjust pc since we're going to pop.
-                            currentContinuation_pc = state.continuation_pc;
-                            currentContinuation_op = state.continuation_op;
+                            currentContinuation_pc = state_continuation_pc;
+                            currentContinuation_op = state_continuation_op;
                             break;
                         }
                     } else {
-                        if (state.min == 0 && gData.cp == state.index) {
+                        if (state_min == 0 && gData.cp == state_index) {
                             // Matched an empty string, that'll get us nowhere.
                             result = false;
-                            currentContinuation_pc = state.continuation_pc;
-                            currentContinuation_op = state.continuation_op;
+                            currentContinuation_pc = state_continuation_pc;
+                            currentContinuation_op = state_continuation_op;
                             break;
                         }
-                        int new_min = state.min, new_max = state.max;
+                        int new_min = state_min, new_max = state_max;
                         if (new_min != 0) new_min--;
                         if (new_max != -1) new_max--;
-                        pushProgState(gData, new_min, new_max, null,
-                                      state.continuation_pc,
-                                      state.continuation_op);
+                        pushProgState(gData, new_min, new_max, 0,
+                                      state_continuation_pc,
+                                      state_continuation_op);
                         if (new_min != 0) {
                             currentContinuation_op = REOP_MINIMALREPEAT;
                             currentContinuation_pc = pc;
@@ -2133,8 +2395,8 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
                             }
                             op = program[pc++];
                         } else {
-                            currentContinuation_pc = state.continuation_pc;
-                            currentContinuation_op = state.continuation_op;
+                            currentContinuation_pc = state_continuation_pc;
+                            currentContinuation_op = state_continuation_op;
                             pushBackTrackState(gData, REOP_MINIMALREPEAT, pc);
                             popProgState(gData);
                             pc += 2 * INDEX_LEN;
@@ -2157,28 +2419,16 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
              *  Otherwise this is a complete and utter failure.
              */
             if (!result) {
-                REBackTrackData backTrackData = gData.backTrackStackTop;
-                if (backTrackData != null) {
-                    gData.backTrackStackTop = backTrackData.previous;
-
-                    gData.lastParen = backTrackData.lastParen;
-
-                    // XXX: If backTrackData will no longer be used, then
-                    // there is no need to clone backTrackData.parens
-                    if (backTrackData.parens != null) {
-                        gData.parens = backTrackData.parens.clone();
-                    }
-
-                    gData.cp = backTrackData.cp;
-
-                    gData.stateStackTop = backTrackData.stateStackTop;
+                if (gData.backTrackStackTop != 0) {
+                    int entry = popBackTrackState(gData);
+                    int state = gData.stateStackTop;
 
                     currentContinuation_op
-                        = gData.stateStackTop.continuation_op;
+                        = gData.states[state + STATE_CONTINUATION_OP];
                     currentContinuation_pc
-                        = gData.stateStackTop.continuation_pc;
-                    pc = backTrackData.continuation_pc;
-                    op = backTrackData.continuation_op;
+                        = gData.states[state + STATE_CONTINUATION_PC];
+                    pc = gData.backTracks[entry + BACKTRACK_PC];
+                    op = gData.backTracks[entry + BACKTRACK_OP];
                     continue;
                 }
                 else
@@ -2195,19 +2445,43 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
                 char[] chars, int start, int end, boolean multiline)
     {
         if (re.parenCount != 0) {
-            gData.parens = new long[re.parenCount];
-        } else {
-            gData.parens = null;
+            if (gData.parens == null
+                || gData.parens.length != re.parenCount)
+            {
+                gData.parens = new long[re.parenCount];
+            }
         }
 
-        gData.backTrackStackTop = null;
-
-        gData.stateStackTop = null;
+        if (gData.states == null) {
+            gData.states = new int[16 * STATE_SIZE];
+            gData.backTracks = new int[16 * BACKTRACK_SIZE];
+            gData.parenLog = new long[16 * 2];
+        }
+        gData.reset();
 
         gData.multiline = multiline;
         gData.regexp = re;
         gData.lastParen = 0;
 
+        // Generated matchers do not count backtracking
+        CompiledRegExp matcher = null;
+        if (gData.observer == null) {
+            matcher = getMatcher(re);
+        }
+
+        int literalIndex = -1;
+        if (re.literal != null) {
+            literalIndex = indexOfLiteral(re, chars, start, end);
+            if (literalIndex < 0) {
+                return false;
+            }
+            if (re.literalOnly) {
+                gData.cp = literalIndex + re.literal.length;
+                gData.skipped = literalIndex - start;
+                return true;
+            }
+        }
+
         int anchorCh = gData.regexp.anchorCh;
         //
         // have to include the position beyond the last character
@@ -2219,7 +2493,15 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
             // the string until that match is made, or fail if it can't be
             // found at all.
             //
-            if (anchorCh >= 0) {
+            if (re.literalPrefix) {
+                if (i > literalIndex) {
+                    literalIndex = indexOfLiteral(re, chars, i, end);
+                    if (literalIndex < 0) {
+                        return false;
+                    }
+                }
+                i = literalIndex;
+            } else if (anchorCh >= 0) {
                 for (;;) {
                     if (i == end) {
                         return false;
@@ -2238,10 +2520,18 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
             for (int j = 0; j < re.parenCount; j++) {
                 gData.set_parens(j, -1, 0);
             }
-            boolean result = executeREBytecode(gData, chars, end);
+            boolean result;
+            if (matcher != null) {
+                int cp = matcher.match(chars, i, end, gData.parens, multiline);
+                result = (cp >= 0);
+                if (result) {
+                    gData.cp = cp;
+                }
+            } else {
+                result = executeREBytecode(gData, chars, end);
+            }
 
-            gData.backTrackStackTop = null;
-            gData.stateStackTop = null;
+            gData.reset();
             if (result) {
                 gData.skipped = i - start;
                 return true;
@@ -2250,16 +2540,57 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
         return false;
     }
 
+    /*
+     * Return the generated matcher for re, translating its program once
+     * it has been executed often enough, or null to use the interpreter.
+     */
+    private static CompiledRegExp getMatcher(RECompiled re)
+    {
+        CompiledRegExp matcher = re.matcher;
+        if (matcher == null && !re.interpretOnly) {
+            int threshold = CompiledRegExp.getCompileThreshold();
+            if (threshold != 0 && ++re.execCount >= threshold) {
+                matcher = RegExpCodegen.compile(re);
+                if (matcher != null) {
+                    re.matcher = matcher;
+                } else {
+                    re.interpretOnly = true;
+                }
+            }
+        }
+        return matcher;
+    }
+
     /*
      * indexp is assumed to be an array of length 1
      */
     Object executeRegExp(Context cx, Scriptable scopeObj, RegExpImpl res,
                          String str, int indexp[], int matchType)
     {
-        REGlobalData gData = new REGlobalData();
+        // Reuse the matching stacks of the previous call; the data is
+        // taken from res while in use in case matching is ever reentered
+        REGlobalData gData = res.globalData;
+        if (gData == null) {
+            gData = new REGlobalData();
+        } else {
+            res.globalData = null;
+        }
+        gData.observer = null;
+        if (cx.getInstructionObserverThreshold() != 0) {
+            gData.observer = cx;
+        }
 
         int start = indexp[0];
-        char[] charArray = str.toCharArray();
+        // Global matches, replace and split execute repeatedly on the
+        // same string; the chars are never modified, so share them
+        char[] charArray;
+        if (str == gData.input) {
+            charArray = gData.inputChars;
+        } else {
+            charArray = str.toCharArray();
+            gData.input = str;
+            gData.inputChars = charArray;
+        }
         int end = charArray.length;
         if (start > end)
             start = end;
@@ -2269,6 +2600,7 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
         boolean matches = matchRegExp(gData, re, charArray, start, end,
                                       res.multiline);
         if (!matches) {
+            res.globalData = gData;
             if (matchType != PREFIX) return null;
             return Undefined.instance;
         }
@@ -2305,29 +2637,31 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
         }
 
         if (re.parenCount == 0) {
-            res.parens = null;
-            res.lastParen = SubString.emptySubString;
+            res.parenCount = 0;
         } else {
-            SubString parsub = null;
-            int num;
-            res.parens = new SubString[re.parenCount];
-            for (num = 0; num < re.parenCount; num++) {
-                int cap_index = gData.parens_index(num);
-                String parstr;
-                if (cap_index != -1) {
-                    int cap_length = gData.parens_length(num);
-                    parsub = new SubString(charArray, cap_index, cap_length);
-                    res.parens[num] = parsub;
-                    if (matchType == TEST) continue;
-                    parstr = parsub.toString();
-                    obj.put(num+1, obj, parstr);
-                }
-                else {
-                    if (matchType != TEST)
+            if (matchType != TEST) {
+                for (int num = 0; num < re.parenCount; num++) {
+                    int cap_index = gData.parens_index(num);
+                    if (cap_index != -1) {
+                        String parstr = new String(charArray, cap_index,
+                                                   gData.parens_length(num));
+                        obj.put(num+1, obj, parstr);
+                    } else {
                         obj.put(num+1, obj, Undefined.instance);
+                    }
                 }
             }
-            res.lastParen = parsub;
+            /*
+             * Only keep the paren spans for the $1-style statics; their
+             * SubStrings are built when something reads them. Swap the
+             * span array with the one of the previous match instead of
+             * copying it, the matcher resets it before the next match.
+             */
+            long[] spans = gData.parens;
+            gData.parens = res.parenSpans;
+            res.parenSpans = spans;
+            res.parenChars = charArray;
+            res.parenCount = re.parenCount;
         }
 
         if (! (matchType == TEST)) {
@@ -2379,6 +2713,7 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
         res.rightContext.index = ep;
         res.rightContext.length = end - ep;
 
+        res.globalData = gData;
         return result;
     }
 
@@ -2591,19 +2926,6 @@ System.out.println("Testing at " + gData.cp + ", op = " + op);
 
 }       // class NativeRegExp
 
-class RECompiled implements Serializable
-{
-    static final long serialVersionUID = -6144956577595844213L;
-
-    char []source;          /* locked source string, sans // */
-    int parenCount;         /* number of parenthesized submatches */
-    int flags;              /* flags  */
-    byte[] program;         /* regular expression bytecode */
-    int classCount;         /* count [...] bitmaps */
-    RECharSet[] classList;  /* list of [...] bitmaps */
-    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
-}
-
 class RENode {
 
     RENode(byte op)
@@ -2663,120 +2985,3 @@ class CompilerState {
     int         progLength;   /* estimated bytecode length */
     RENode      result;
 }
-
-class REProgState
-{
-    REProgState(REProgState previous, int min, int max, int index,
-                REBackTrackData backTrack,
-                int continuation_pc, int continuation_op)
-    {
-        this.previous = previous;
-        this.min = min;
-        this.max = max;
-        this.index = index;
-        this.continuation_op = continuation_op;
-        this.continuation_pc = continuation_pc;
-        this.backTrack = backTrack;
-    }
-
-    REProgState previous; // previous state in stack
-
-    int min;                      /* current quantifier min */
-    int max;                      /* current quantifier max */
-    int index;                    /* progress in text */
-    int continuation_op;
-    int continuation_pc;
-    REBackTrackData backTrack; // used by ASSERT_  to recover state
-}
-
-class REBackTrackData {
-
-    REBackTrackData(REGlobalData gData, int op, int pc)
-    {
-        previous = gData.backTrackStackTop;
-        continuation_op = op;
-        continuation_pc = pc;
-        lastParen = gData.lastParen;
-        if (gData.parens != null) {
-            parens = gData.parens.clone();
-        }
-        cp = gData.cp;
-        stateStackTop = gData.stateStackTop;
-    }
-
-    REBackTrackData previous;
-
-    int continuation_op;                /* where to backtrack to */
-    int continuation_pc;
-    int lastParen;
-    long[] parens;                      /* parenthesis captures */
-    int cp;                             /* char buffer index */
-    REProgState stateStackTop;          /* state of op that backtracked */
-}
-
-class REGlobalData {
-    boolean multiline;
-    RECompiled regexp;              /* the RE in execution */
-    int lastParen;                  /* highest paren set so far */
-    int skipped;                    /* chars skipped anchoring this r.e. */
-
-    int cp;                         /* char buffer index */
-    long[] parens;                  /* parens captures */
-
-    REProgState stateStackTop;       /* stack of state of current ancestors */
-
-    REBackTrackData backTrackStackTop;  /* last matched-so-far position */
-
-
-    /**
-     * Get start of parenthesis capture contents, -1 for empty.
-     */
-    int parens_index(int i)
-    {
-        return (int)(parens[i]);
-    }
-
-    /**
-     * Get length of parenthesis capture contents.
-     */
-    int parens_length(int i)
-    {
-        return (int)(parens[i] >>> 32);
-    }
-
-    void set_parens(int i, int index, int length)
-    {
-        parens[i] = (index & 0xffffffffL) | ((long)length << 32);
-    }
-
-}
-
-/*
- * This struct holds a bitmap representation of a class from a regexp.
- * There's a list of these referenced by the classList field in the NativeRegExp
- * struct below. The initial state has startIndex set to the offset in the
- * original regexp source of the beginning of the class contents. The first
- * use of the class converts the source representation into a bitmap.
- *
- */
-final class RECharSet implements Serializable
-{
-    static final long serialVersionUID = 7931787979395898394L;
-
-    RECharSet(int length, int startIndex, int strlength)
-    {
-        this.length = length;
-        this.startIndex = startIndex;
-        this.strlength = strlength;
-    }
-
-    int length;
-    int startIndex;
-    int strlength;
-
-    volatile transient boolean converted;
-    volatile transient boolean sense;
-    volatile transient byte[] bits;
-}
-
-
@@ -243,7 +243,7 @@ class NativeRegExpCtor extends BaseFunction
 
               case Id_lastParen:
               case Id_PLUS:
-                stringResult = impl.lastParen;
+                stringResult = impl.getLastParen();
                 break;
 
               case Id_leftContext:
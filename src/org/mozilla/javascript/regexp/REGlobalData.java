@@ -0,0 +1,108 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.regexp;
+
+import org.mozilla.javascript.Context;
+
+class REGlobalData {
+    boolean multiline;
+    RECompiled regexp;              /* the RE in execution */
+    int lastParen;                  /* highest paren set so far */
+    int skipped;                    /* chars skipped anchoring this r.e. */
+
+    int cp;                         /* char buffer index */
+    long[] parens;                  /* parens captures */
+
+    int[] states;                   /* state records, see NativeRegExp */
+    int statesUsed;                 /* ints of state records in use */
+    int stateStackTop = -1;         /* stack of state of current ancestors */
+
+    int[] backTracks;               /* backtrack entries */
+    int backTrackStackTop;          /* ints of backtrack entries in use */
+
+    long[] parenLog;                /* (paren, old value) pairs to undo */
+    int parenLogTop;                /* longs of parenLog in use */
+
+    String input;                   /* last string matched against */
+    char[] inputChars;              /* chars of input */
+
+    Context observer;               /* counts backtracking as instructions */
+    int steps;                      /* backtracks not yet counted */
+
+    void reset()
+    {
+        stateStackTop = -1;
+        statesUsed = 0;
+        backTrackStackTop = 0;
+        parenLogTop = 0;
+    }
+
+    /**
+     * Get start of parenthesis capture contents, -1 for empty.
+     */
+    int parens_index(int i)
+    {
+        return (int)(parens[i]);
+    }
+
+    /**
+     * Get length of parenthesis capture contents.
+     */
+    int parens_length(int i)
+    {
+        return (int)(parens[i] >>> 32);
+    }
+
+    void set_parens(int i, int index, int length)
+    {
+        if (backTrackStackTop != 0) {
+            // Log the old value for backtracking
+            int top = parenLogTop;
+            if (top == parenLog.length) {
+                long[] log = new long[top * 2];
+                System.arraycopy(parenLog, 0, log, 0, top);
+                parenLog = log;
+            }
+            parenLog[top] = i;
+            parenLog[top + 1] = parens[i];
+            parenLogTop = top + 2;
+        }
+        parens[i] = (index & 0xffffffffL) | ((long)length << 32);
+    }
+
+}
@@ -0,0 +1,227 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.regexp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mozilla.javascript.Context;
+
+/**
+ * Process-wide cache of compiled regular expressions.
+ * <p>
+ * Compiled programs are immutable once built, so one program can back
+ * any number of RegExp objects in any number of threads; state such as
+ * <tt>lastIndex</tt> stays in each {@link NativeRegExp}. The cache is
+ * used for regular expression literals, <tt>new RegExp(...)</tt>,
+ * <tt>RegExp.prototype.compile</tt> and string patterns passed to the
+ * String methods <tt>match</tt>, <tt>search</tt>, <tt>replace</tt> and
+ * <tt>split</tt>.
+ * <p>
+ * The cache is split into segments chosen by the hash of the pattern,
+ * each a small least recently used map with its own lock, so lookups from
+ * different threads rarely contend.
+ */
+public final class RegExpCache
+{
+    private static final int SEGMENT_COUNT = 16;
+
+    private static final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    static {
+        for (int i = 0; i != SEGMENT_COUNT; ++i) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private static volatile int maxSize = 512;
+
+    private RegExpCache() { }
+
+    /**
+     * Return the maximum number of compiled regular expressions kept.
+     */
+    public static int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum number of compiled regular expressions kept.
+     * Zero disables the cache. Each segment holds an equal share, rounded
+     * up, and evicts its least recently used entries beyond that.
+     */
+    public static void setMaxSize(int size)
+    {
+        if (size < 0) throw new IllegalArgumentException();
+        maxSize = size;
+        for (int i = 0; i != SEGMENT_COUNT; ++i) {
+            Segment s = segments[i];
+            synchronized (s) {
+                s.trim(segmentSize(size));
+            }
+        }
+    }
+
+    /**
+     * Return the number of compiled regular expressions in the cache.
+     */
+    public static int size()
+    {
+        int n = 0;
+        for (int i = 0; i != SEGMENT_COUNT; ++i) {
+            Segment s = segments[i];
+            synchronized (s) {
+                n += s.size();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return the number of compilations served from the cache.
+     */
+    public static long getHitCount()
+    {
+        long n = 0;
+        for (int i = 0; i != SEGMENT_COUNT; ++i) {
+            Segment s = segments[i];
+            synchronized (s) {
+                n += s.hits;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return the number of compilations that missed the cache, including
+     * those made while it was disabled.
+     */
+    public static long getMissCount()
+    {
+        long n = 0;
+        for (int i = 0; i != SEGMENT_COUNT; ++i) {
+            Segment s = segments[i];
+            synchronized (s) {
+                n += s.misses;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Remove all entries and reset the hit and miss counts.
+     */
+    public static void clear()
+    {
+        for (int i = 0; i != SEGMENT_COUNT; ++i) {
+            Segment s = segments[i];
+            synchronized (s) {
+                s.clear();
+                s.hits = 0;
+                s.misses = 0;
+            }
+        }
+    }
+
+    /**
+     * Return the compiled form of the pattern, compiling it on a miss.
+     *
+     * @see NativeRegExp#compileRE(Context, String, String, boolean)
+     */
+    static Object compile(Context cx, String source, String flags,
+                          boolean flat)
+    {
+        String key = (flat ? "F" : "R") + (flags == null ? "" : flags)
+                     + '/' + source;
+        Segment s = segments[key.hashCode() & (SEGMENT_COUNT - 1)];
+        int limit = segmentSize(maxSize);
+        if (limit != 0) {
+            synchronized (s) {
+                Object cached = s.get(key);
+                if (cached != null) {
+                    ++s.hits;
+                    return cached;
+                }
+            }
+        }
+        // Compile outside the lock; a concurrent miss may compile the same
+        // pattern twice, which is harmless.
+        Object compiled = NativeRegExp.compileRE(cx, source, flags, flat);
+        synchronized (s) {
+            ++s.misses;
+            if (compiled != null && limit != 0) {
+                s.limit = limit;
+                s.put(key, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    private static int segmentSize(int size)
+    {
+        return (size + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+    }
+
+    private static final class Segment extends LinkedHashMap
+    {
+        static final long serialVersionUID = -2310764932573917383L;
+
+        int limit;
+        long hits;
+        long misses;
+
+        Segment()
+        {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(Map.Entry eldest)
+        {
+            return size() > limit;
+        }
+
+        void trim(int newLimit)
+        {
+            limit = newLimit;
+            while (size() > limit) {
+                remove(keySet().iterator().next());
+            }
+        }
+    }
+}
@@ -0,0 +1,626 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript.regexp;
+
+import java.util.ArrayList;
+
+import org.mozilla.classfile.ByteCode;
+import org.mozilla.classfile.ClassFileWriter;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.SecurityController;
+
+/**
+ * Translates the program of a regular expression into a subclass of
+ * {@link CompiledRegExp}.
+ * <p>
+ * The program must be a plain sequence of terms: single characters,
+ * flat strings, character classes, anchors, word boundaries, capturing
+ * parentheses that are not quantified, and quantifiers over a single
+ * character. Each quantifier that can match a varying number of
+ * characters pushes a choice point of three ints, its number, the
+ * position where it started and the count it matched, on an int array;
+ * a failing term pops the last choice point and resumes that quantifier
+ * with one character less (greedy) or one more (non-greedy).
+ */
+final class RegExpCodegen
+{
+    private static final String SUPER_CLASS
+        = "org.mozilla.javascript.regexp.CompiledRegExp";
+
+    private static final int MAX_TERMS = 128;
+    private static final int MAX_FLAT_LENGTH = 1024;
+
+    // Local variable slots of the generated match method
+    private static final int
+        CHARS_ARG     = 1,
+        START_ARG     = 2,
+        END_ARG       = 3,
+        PARENS_ARG    = 4,
+        MULTILINE_ARG = 5,
+        POS_LOCAL     = 6,
+        TOP_LOCAL     = 7,
+        STACK_LOCAL   = 8,
+        BASE_LOCAL    = 9,
+        COUNT_LOCAL   = 10,
+        LOCALS_COUNT  = 11;
+
+    private static int serial;
+
+    private static final class Term
+    {
+        byte op;
+        int index;              /* char, class, paren index or flat offset */
+        int length;             /* length of a flat string */
+        boolean quantified;
+        int min;
+        int max;                /* -1 if unbounded */
+        boolean greedy;
+        int choice = -1;        /* choice point number, -1 if none */
+        int next;               /* label of the following term */
+    }
+
+    private final RECompiled re;
+    private Term[] terms;
+    private int choiceCount;
+    private ClassFileWriter cfw;
+    private int failLabel;
+
+    private RegExpCodegen(RECompiled re)
+    {
+        this.re = re;
+    }
+
+    /**
+     * Return a matcher for <tt>re</tt>, or null if its program can not be
+     * translated.
+     */
+    static CompiledRegExp compile(RECompiled re)
+    {
+        RegExpCodegen gen = new RegExpCodegen(re);
+        if (!gen.parseProgram())
+            return null;
+
+        String className;
+        synchronized (RegExpCodegen.class) {
+            className = "org.mozilla.javascript.gen.re" + (++serial);
+        }
+        byte[] classBytes = gen.generate(className);
+
+        if (re.classCount != 0) {
+            REGlobalData gData = new REGlobalData();
+            gData.regexp = re;
+            for (int i = 0; i != re.classCount; ++i) {
+                NativeRegExp.processCharSet(gData, re.classList[i]);
+            }
+        }
+
+        CompiledRegExp matcher;
+        try {
+            // The generated class refers only to CompiledRegExp, which
+            // must be accessible through this class loader
+            ClassLoader rhinoLoader = RegExpCodegen.class.getClassLoader();
+            GeneratedClassLoader loader;
+            loader = SecurityController.createLoader(rhinoLoader, null);
+            Class cl = loader.defineClass(className, classBytes);
+            loader.linkClass(cl);
+            matcher = (CompiledRegExp)cl.newInstance();
+        } catch (Exception ex) {
+            // Keep using the interpreter
+            return null;
+        }
+        matcher.classList = re.classList;
+        return matcher;
+    }
+
+    private boolean parseProgram()
+    {
+        byte[] program = re.program;
+        ArrayList list = new ArrayList();
+        int pc = 0;
+        for (;;) {
+            Term t = new Term();
+            t.op = program[pc++];
+            switch (t.op) {
+            case NativeRegExp.REOP_END:
+                terms = new Term[list.size()];
+                list.toArray(terms);
+                return true;
+
+            case NativeRegExp.REOP_BOL:
+            case NativeRegExp.REOP_EOL:
+            case NativeRegExp.REOP_WBDRY:
+            case NativeRegExp.REOP_WNONBDRY:
+                break;
+
+            case NativeRegExp.REOP_LPAREN:
+            case NativeRegExp.REOP_RPAREN:
+                t.index = NativeRegExp.getIndex(program, pc);
+                pc += 2;
+                break;
+
+            case NativeRegExp.REOP_FLAT:
+            case NativeRegExp.REOP_FLATi:
+                t.index = NativeRegExp.getIndex(program, pc);
+                t.length = NativeRegExp.getIndex(program, pc + 2);
+                pc += 4;
+                if (t.length > MAX_FLAT_LENGTH)
+                    return false;
+                break;
+
+            case NativeRegExp.REOP_STAR:
+            case NativeRegExp.REOP_MINIMALSTAR:
+                t.min = 0;
+                t.max = -1;
+                pc = parseQuantified(program, pc, t);
+                break;
+
+            case NativeRegExp.REOP_PLUS:
+            case NativeRegExp.REOP_MINIMALPLUS:
+                t.min = 1;
+                t.max = -1;
+                pc = parseQuantified(program, pc, t);
+                break;
+
+            case NativeRegExp.REOP_OPT:
+            case NativeRegExp.REOP_MINIMALOPT:
+                t.min = 0;
+                t.max = 1;
+                pc = parseQuantified(program, pc, t);
+                break;
+
+            case NativeRegExp.REOP_QUANT:
+            case NativeRegExp.REOP_MINIMALQUANT:
+                t.min = NativeRegExp.getIndex(program, pc);
+                t.max = NativeRegExp.getIndex(program, pc + 2) - 1;
+                pc = parseQuantified(program, pc + 4, t);
+                break;
+
+            default:
+                pc = parseAtom(program, pc, t);
+                break;
+            }
+            if (pc < 0)
+                return false;
+            list.add(t);
+            if (list.size() > MAX_TERMS)
+                return false;
+        }
+    }
+
+    private int parseQuantified(byte[] program, int pc, Term t)
+    {
+        byte op = t.op;
+        t.greedy = (op == NativeRegExp.REOP_STAR
+                    || op == NativeRegExp.REOP_PLUS
+                    || op == NativeRegExp.REOP_OPT
+                    || op == NativeRegExp.REOP_QUANT);
+        t.quantified = true;
+        // parenCount, parenIndex, offset of the next term
+        if (NativeRegExp.getIndex(program, pc) != 0)
+            return -1;
+        pc += 6;
+        t.op = program[pc++];
+        pc = parseAtom(program, pc, t);
+        if (pc < 0 || program[pc] != NativeRegExp.REOP_ENDCHILD)
+            return -1;
+        if (t.max < 0 || t.min < t.max)
+            t.choice = choiceCount++;
+        return pc + 1;
+    }
+
+    private static int parseAtom(byte[] program, int pc, Term t)
+    {
+        switch (t.op) {
+        case NativeRegExp.REOP_DOT:
+        case NativeRegExp.REOP_DIGIT:
+        case NativeRegExp.REOP_NONDIGIT:
+        case NativeRegExp.REOP_ALNUM:
+        case NativeRegExp.REOP_NONALNUM:
+        case NativeRegExp.REOP_SPACE:
+        case NativeRegExp.REOP_NONSPACE:
+            return pc;
+
+        case NativeRegExp.REOP_FLAT1:
+        case NativeRegExp.REOP_FLAT1i:
+            t.index = program[pc] & 0xFF;
+            return pc + 1;
+
+        case NativeRegExp.REOP_UCFLAT1:
+        case NativeRegExp.REOP_UCFLAT1i:
+        case NativeRegExp.REOP_CLASS:
+            t.index = NativeRegExp.getIndex(program, pc);
+            return pc + 2;
+        }
+        return -1;
+    }
+
+    private byte[] generate(String className)
+    {
+        cfw = new ClassFileWriter(className, SUPER_CLASS, null);
+
+        cfw.startMethod("<init>", "()V", ClassFileWriter.ACC_PUBLIC);
+        cfw.addLoadThis();
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, SUPER_CLASS, "<init>", "()V");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short)1);
+
+        cfw.startMethod("match", "([CII[JZ)I", ClassFileWriter.ACC_PUBLIC);
+        failLabel = cfw.acquireLabel();
+        cfw.addILoad(START_ARG);
+        cfw.addIStore(POS_LOCAL);
+        if (choiceCount != 0) {
+            cfw.addPush(3 * choiceCount);
+            cfw.add(ByteCode.NEWARRAY, ByteCode.T_INT);
+            cfw.addAStore(STACK_LOCAL);
+            cfw.addPush(0);
+            cfw.addIStore(TOP_LOCAL);
+        }
+
+        for (int i = 0; i != terms.length; ++i) {
+            Term t = terms[i];
+            t.next = cfw.acquireLabel();
+            if (!t.quantified) {
+                generateTerm(t);
+            } else if (t.greedy || t.choice < 0) {
+                generateGreedy(t);
+            } else {
+                generateMinimal(t);
+            }
+            cfw.markLabel(t.next);
+        }
+        cfw.addILoad(POS_LOCAL);
+        cfw.add(ByteCode.IRETURN);
+
+        cfw.markLabel(failLabel);
+        if (choiceCount == 0) {
+            cfw.add(ByteCode.ICONST_M1);
+            cfw.add(ByteCode.IRETURN);
+        } else {
+            generateBacktrack();
+        }
+        cfw.stopMethod((short)LOCALS_COUNT);
+
+        return cfw.toByteArray();
+    }
+
+    private void generateTerm(Term t)
+    {
+        switch (t.op) {
+        case NativeRegExp.REOP_BOL:
+            cfw.addALoad(CHARS_ARG);
+            cfw.addILoad(POS_LOCAL);
+            addMultiline();
+            addHelper("isBOL", "([CIZ)Z");
+            cfw.add(ByteCode.IFEQ, failLabel);
+            break;
+
+        case NativeRegExp.REOP_EOL:
+            cfw.addALoad(CHARS_ARG);
+            cfw.addILoad(POS_LOCAL);
+            cfw.addILoad(END_ARG);
+            addMultiline();
+            addHelper("isEOL", "([CIIZ)Z");
+            cfw.add(ByteCode.IFEQ, failLabel);
+            break;
+
+        case NativeRegExp.REOP_WBDRY:
+        case NativeRegExp.REOP_WNONBDRY:
+            cfw.addALoad(CHARS_ARG);
+            cfw.addILoad(POS_LOCAL);
+            cfw.addILoad(END_ARG);
+            addHelper("isWordBoundary", "([CII)Z");
+            cfw.add(t.op == NativeRegExp.REOP_WBDRY
+                    ? ByteCode.IFEQ : ByteCode.IFNE, failLabel);
+            break;
+
+        case NativeRegExp.REOP_LPAREN:
+        case NativeRegExp.REOP_RPAREN:
+            cfw.addALoad(PARENS_ARG);
+            cfw.addPush(t.index);
+            cfw.addILoad(POS_LOCAL);
+            addHelper(t.op == NativeRegExp.REOP_LPAREN
+                      ? "openParen" : "closeParen", "([JII)V");
+            break;
+
+        case NativeRegExp.REOP_FLAT:
+        case NativeRegExp.REOP_FLATi:
+            cfw.addALoad(CHARS_ARG);
+            cfw.addILoad(POS_LOCAL);
+            cfw.addILoad(END_ARG);
+            cfw.addPush(new String(re.source, t.index, t.length));
+            addHelper(t.op == NativeRegExp.REOP_FLAT
+                      ? "matchFlat" : "matchFlatFold",
+                      "([CIILjava/lang/String;)Z");
+            cfw.add(ByteCode.IFEQ, failLabel);
+            addAdvance(POS_LOCAL, t.length);
+            break;
+
+        default:
+            addCharTest(t, failLabel);
+            addAdvance(POS_LOCAL, 1);
+            break;
+        }
+    }
+
+    /**
+     * Match as many characters as allowed, then push a choice point if
+     * fewer would also do.
+     */
+    private void generateGreedy(Term t)
+    {
+        int loop = cfw.acquireLabel();
+        int done = cfw.acquireLabel();
+
+        cfw.addILoad(POS_LOCAL);
+        cfw.addIStore(BASE_LOCAL);
+        cfw.markLabel(loop);
+        if (t.max >= 0) {
+            cfw.addILoad(POS_LOCAL);
+            cfw.addILoad(BASE_LOCAL);
+            cfw.add(ByteCode.ISUB);
+            cfw.addPush(t.max);
+            cfw.add(ByteCode.IF_ICMPGE, done);
+        }
+        addCharTest(t, done);
+        addAdvance(POS_LOCAL, 1);
+        cfw.add(ByteCode.GOTO, loop);
+        cfw.markLabel(done);
+
+        cfw.addILoad(POS_LOCAL);
+        cfw.addILoad(BASE_LOCAL);
+        cfw.add(ByteCode.ISUB);
+        cfw.addIStore(COUNT_LOCAL);
+        if (t.min > 0) {
+            cfw.addILoad(COUNT_LOCAL);
+            cfw.addPush(t.min);
+            cfw.add(ByteCode.IF_ICMPLT, failLabel);
+        }
+        if (t.choice >= 0) {
+            cfw.addILoad(COUNT_LOCAL);
+            cfw.addPush(t.min);
+            cfw.add(ByteCode.IF_ICMPLE, t.next);
+            addPushChoice(t);
+        }
+    }
+
+    /**
+     * Match the minimum number of characters and push a choice point to
+     * come back for more.
+     */
+    private void generateMinimal(Term t)
+    {
+        cfw.addILoad(POS_LOCAL);
+        cfw.addIStore(BASE_LOCAL);
+        if (t.min > 0) {
+            int loop = cfw.acquireLabel();
+            int done = cfw.acquireLabel();
+            cfw.addPush(0);
+            cfw.addIStore(COUNT_LOCAL);
+            cfw.markLabel(loop);
+            cfw.addILoad(COUNT_LOCAL);
+            cfw.addPush(t.min);
+            cfw.add(ByteCode.IF_ICMPGE, done);
+            addCharTest(t, failLabel);
+            addAdvance(POS_LOCAL, 1);
+            addAdvance(COUNT_LOCAL, 1);
+            cfw.add(ByteCode.GOTO, loop);
+            cfw.markLabel(done);
+        } else {
+            cfw.addPush(0);
+            cfw.addIStore(COUNT_LOCAL);
+        }
+        addPushChoice(t);
+    }
+
+    /**
+     * Pop the last choice point and jump to the code resuming its
+     * quantifier, or return -1 if there is none left.
+     */
+    private void generateBacktrack()
+    {
+        int pop = cfw.acquireLabel();
+        cfw.addILoad(TOP_LOCAL);
+        cfw.add(ByteCode.IFNE, pop);
+        cfw.add(ByteCode.ICONST_M1);
+        cfw.add(ByteCode.IRETURN);
+
+        cfw.markLabel(pop);
+        addAdvance(TOP_LOCAL, -3);
+        cfw.addALoad(STACK_LOCAL);
+        cfw.addILoad(TOP_LOCAL);
+        cfw.add(ByteCode.IALOAD);
+        int switchStart = cfw.addTableSwitch(0, choiceCount - 1);
+        cfw.markTableSwitchDefault(switchStart);
+        cfw.add(ByteCode.ICONST_M1);
+        cfw.add(ByteCode.IRETURN);
+
+        for (int i = 0; i != terms.length; ++i) {
+            Term t = terms[i];
+            if (t.choice < 0)
+                continue;
+            cfw.markTableSwitchCase(switchStart, t.choice);
+            addLoadChoice(1, BASE_LOCAL);
+            addLoadChoice(2, COUNT_LOCAL);
+            if (t.greedy) {
+                // Give back one character
+                addAdvance(COUNT_LOCAL, -1);
+                addSetPosition();
+                cfw.addILoad(COUNT_LOCAL);
+                cfw.addPush(t.min);
+                cfw.add(ByteCode.IF_ICMPLE, t.next);
+            } else {
+                // Take one more character
+                addSetPosition();
+                addCharTest(t, failLabel);
+                addAdvance(POS_LOCAL, 1);
+                addAdvance(COUNT_LOCAL, 1);
+                if (t.max >= 0) {
+                    cfw.addILoad(COUNT_LOCAL);
+                    cfw.addPush(t.max);
+                    cfw.add(ByteCode.IF_ICMPGE, t.next);
+                }
+            }
+            addPushChoice(t);
+            cfw.add(ByteCode.GOTO, t.next);
+        }
+    }
+
+    /**
+     * Test the character at the current position against a single
+     * character term, jumping to <tt>noMatch</tt> at the end of input or
+     * if it does not match.
+     */
+    private void addCharTest(Term t, int noMatch)
+    {
+        cfw.addILoad(POS_LOCAL);
+        cfw.addILoad(END_ARG);
+        cfw.add(ByteCode.IF_ICMPGE, noMatch);
+        if (t.op == NativeRegExp.REOP_CLASS) {
+            cfw.addLoadThis();
+        }
+        cfw.addALoad(CHARS_ARG);
+        cfw.addILoad(POS_LOCAL);
+        cfw.add(ByteCode.CALOAD);
+        switch (t.op) {
+        case NativeRegExp.REOP_FLAT1:
+        case NativeRegExp.REOP_UCFLAT1:
+            cfw.addPush(t.index);
+            cfw.add(ByteCode.IF_ICMPNE, noMatch);
+            break;
+        case NativeRegExp.REOP_FLAT1i:
+        case NativeRegExp.REOP_UCFLAT1i:
+            addHelper("upcase", "(C)C");
+            cfw.addPush(NativeRegExp.upcase((char)t.index));
+            cfw.add(ByteCode.IF_ICMPNE, noMatch);
+            break;
+        case NativeRegExp.REOP_DOT:
+            addHelper("isLineTerm", "(C)Z");
+            cfw.add(ByteCode.IFNE, noMatch);
+            break;
+        case NativeRegExp.REOP_DIGIT:
+        case NativeRegExp.REOP_NONDIGIT:
+            addHelper("isDigit", "(C)Z");
+            cfw.add(t.op == NativeRegExp.REOP_DIGIT
+                    ? ByteCode.IFEQ : ByteCode.IFNE, noMatch);
+            break;
+        case NativeRegExp.REOP_ALNUM:
+        case NativeRegExp.REOP_NONALNUM:
+            addHelper("isWord", "(C)Z");
+            cfw.add(t.op == NativeRegExp.REOP_ALNUM
+                    ? ByteCode.IFEQ : ByteCode.IFNE, noMatch);
+            break;
+        case NativeRegExp.REOP_SPACE:
+        case NativeRegExp.REOP_NONSPACE:
+            addHelper("isSpace", "(C)Z");
+            cfw.add(t.op == NativeRegExp.REOP_SPACE
+                    ? ByteCode.IFEQ : ByteCode.IFNE, noMatch);
+            break;
+        case NativeRegExp.REOP_CLASS:
+            cfw.addPush(t.index);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS,
+                          "inClass", "(CI)Z");
+            cfw.add(ByteCode.IFEQ, noMatch);
+            break;
+        default:
+            throw new IllegalStateException(String.valueOf(t.op));
+        }
+    }
+
+    private void addPushChoice(Term t)
+    {
+        cfw.addALoad(STACK_LOCAL);
+        cfw.addILoad(TOP_LOCAL);
+        cfw.addPush(t.choice);
+        cfw.add(ByteCode.IASTORE);
+        addStoreChoice(1, BASE_LOCAL);
+        addStoreChoice(2, COUNT_LOCAL);
+        addAdvance(TOP_LOCAL, 3);
+    }
+
+    private void addStoreChoice(int offset, int local)
+    {
+        cfw.addALoad(STACK_LOCAL);
+        cfw.addILoad(TOP_LOCAL);
+        cfw.addPush(offset);
+        cfw.add(ByteCode.IADD);
+        cfw.addILoad(local);
+        cfw.add(ByteCode.IASTORE);
+    }
+
+    private void addLoadChoice(int offset, int local)
+    {
+        cfw.addALoad(STACK_LOCAL);
+        cfw.addILoad(TOP_LOCAL);
+        cfw.addPush(offset);
+        cfw.add(ByteCode.IADD);
+        cfw.add(ByteCode.IALOAD);
+        cfw.addIStore(local);
+    }
+
+    private void addSetPosition()
+    {
+        cfw.addILoad(BASE_LOCAL);
+        cfw.addILoad(COUNT_LOCAL);
+        cfw.add(ByteCode.IADD);
+        cfw.addIStore(POS_LOCAL);
+    }
+
+    private void addAdvance(int local, int delta)
+    {
+        // ClassFileWriter only emits IINC in its wide form
+        cfw.addILoad(local);
+        cfw.addPush(delta);
+        cfw.add(ByteCode.IADD);
+        cfw.addIStore(local);
+    }
+
+    private void addMultiline()
+    {
+        if ((re.flags & NativeRegExp.JSREG_MULTILINE) != 0) {
+            cfw.addPush(true);
+        } else {
+            cfw.addILoad(MULTILINE_ARG);
+        }
+    }
+
+    private void addHelper(String name, String descriptor)
+    {
+        cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS, name, descriptor);
+    }
+}
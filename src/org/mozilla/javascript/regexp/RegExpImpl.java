@@ -50,7 +50,7 @@ public class RegExpImpl implements RegExpProxy {
 
     public Object compileRegExp(Context cx, String source, String flags)
     {
-        return NativeRegExp.compileRE(cx, source, flags, false);
+        return RegExpCache.compile(cx, source, flags, false);
     }
 
     public Scriptable wrapRegExp(Context cx, Scriptable scope,
@@ -136,7 +136,7 @@ public class RegExpImpl implements RegExpProxy {
         Scriptable topScope = ScriptableObject.getTopLevelScope(scope);
 
         if (args.length == 0) {
-            Object compiled = NativeRegExp.compileRE(cx, "", "", false);
+            Object compiled = RegExpCache.compile(cx, "", "", false);
             re = new NativeRegExp(topScope, compiled);
         } else if (args[0] instanceof NativeRegExp) {
             re = (NativeRegExp) args[0];
@@ -149,7 +149,7 @@ public class RegExpImpl implements RegExpProxy {
             } else {
                 opt = null;
             }
-            Object compiled = NativeRegExp.compileRE(cx, src, opt, forceFlat);
+            Object compiled = RegExpCache.compile(cx, src, opt, forceFlat);
             re = new NativeRegExp(topScope, compiled);
         }
         data.regexp = re;
@@ -261,7 +261,11 @@ public class RegExpImpl implements RegExpProxy {
             result = i - matchlen[0];
             break;
         }
-        int size = (parens == null) ? 0 : parens.length;
+        int size = parenCount;
+        if (size == 0) {
+            parensp[0] = ScriptRuntime.emptyStrings;
+            return result;
+        }
         parensp[0] = new String[size];
         for (int num = 0; num < size; num++) {
             SubString parsub = getParenSubString(num);
@@ -276,13 +280,48 @@ public class RegExpImpl implements RegExpProxy {
      */
     SubString getParenSubString(int i)
     {
-        if (parens != null && i < parens.length) {
-            SubString parsub = parens[i];
-            if (parsub != null) {
-                return parsub;
+        SubString parsub = new SubString();
+        if (!getParenSubString(i, parsub)) {
+            return SubString.emptySubString;
+        }
+        return parsub;
+    }
+
+    /*
+     * Point parsub at paren i of the last match without allocating.
+     * Returns false if the paren did not take part in the match.
+     */
+    boolean getParenSubString(int i, SubString parsub)
+    {
+        if (i >= parenCount) {
+            return false;
+        }
+        long span = parenSpans[i];
+        int index = (int)span;
+        if (index == -1) {
+            return false;
+        }
+        parsub.charArray = parenChars;
+        parsub.index = index;
+        parsub.length = (int)(span >>> 32);
+        return true;
+    }
+
+    /**
+     * Return the last paren that took part in the last match (perl $+),
+     * null if none did.
+     */
+    SubString getLastParen()
+    {
+        if (parenCount == 0) {
+            return SubString.emptySubString;
+        }
+        for (int i = parenCount - 1; i >= 0; i--) {
+            if ((int)parenSpans[i] != -1) {
+                return getParenSubString(i);
             }
         }
-        return SubString.emptySubString;
+        return null;
     }
 
     /*
@@ -308,18 +347,26 @@ public class RegExpImpl implements RegExpProxy {
                                      Scriptable scope, RegExpImpl reImpl,
                                      int leftIndex, int leftlen)
     {
-        int replen;
         String lambdaStr;
         if (rdata.lambda != null) {
             // invoke lambda function with args lastMatch, $1, $2, ... $n,
             // leftContext.length, whole string.
-            SubString[] parens = reImpl.parens;
-            int parenCount = (parens == null) ? 0 : parens.length;
-            Object[] args = new Object[parenCount + 3];
+            int parenCount = reImpl.parenCount;
+            Object[] args = rdata.lambdaArgs;
+            if (args == null || args.length != parenCount + 3) {
+                args = new Object[parenCount + 3];
+                // One array can serve every call unless the function keeps
+                // it, as in the "arguments" object of its activation
+                if (rdata.lambda instanceof NativeFunction
+                    && !((NativeFunction)rdata.lambda).mayRetainArguments(cx))
+                {
+                    rdata.lambdaArgs = args;
+                }
+            }
             args[0] = reImpl.lastMatch.toString();
+            SubString sub = rdata.parsub;
             for (int i=0; i < parenCount; i++) {
-                SubString sub = parens[i];
-                if (sub != null) {
+                if (reImpl.getParenSubString(i, sub)) {
                     args[i+1] = sub.toString();
                 } else {
                     args[i+1] = Undefined.instance;
@@ -332,7 +379,16 @@ public class RegExpImpl implements RegExpProxy {
             // regexp that are used later by the engine.
             // TODO: redesign is necessary
             if (reImpl != ScriptRuntime.getRegExpProxy(cx)) Kit.codeBug();
-            RegExpImpl re2 = new RegExpImpl();
+            RegExpImpl re2 = rdata.lambdaRegExpImpl;
+            if (re2 == null) {
+                re2 = new RegExpImpl();
+                rdata.lambdaRegExpImpl = re2;
+            } else {
+                re2.parenCount = 0;
+                re2.lastMatch = null;
+                re2.leftContext = null;
+                re2.rightContext = null;
+            }
             re2.multiline = reImpl.multiline;
             re2.input = reImpl.input;
             ScriptRuntime.setRegExpProxy(cx, re2);
@@ -343,34 +399,18 @@ public class RegExpImpl implements RegExpProxy {
             } finally {
                 ScriptRuntime.setRegExpProxy(cx, reImpl);
             }
-            replen = lambdaStr.length();
         } else {
             lambdaStr = null;
-            replen = rdata.repstr.length();
-            if (rdata.dollar >= 0) {
-                int[] skip = new int[1];
-                int dp = rdata.dollar;
-                do {
-                    SubString sub = interpretDollar(cx, reImpl, rdata.repstr,
-                                                    dp, skip);
-                    if (sub != null) {
-                        replen += sub.length - skip[0];
-                        dp += skip[0];
-                    } else {
-                        ++dp;
-                    }
-                    dp = rdata.repstr.indexOf('$', dp);
-                } while (dp >= 0);
-            }
         }
 
-        int growth = leftlen + replen + reImpl.rightContext.length;
         StringBuffer charBuf = rdata.charBuf;
         if (charBuf == null) {
-            charBuf = new StringBuffer(growth);
+            // Size the buffer once for the common case of replacements no
+            // longer than the text they replace and let it grow otherwise.
+            int replen = (lambdaStr != null) ? lambdaStr.length()
+                                             : rdata.repstr.length();
+            charBuf = new StringBuffer(rdata.str.length() + replen);
             rdata.charBuf = charBuf;
-        } else {
-            charBuf.ensureCapacity(rdata.charBuf.length() + growth);
         }
 
         charBuf.append(reImpl.leftContext.charArray, leftIndex, leftlen);
@@ -382,7 +422,8 @@ public class RegExpImpl implements RegExpProxy {
     }
 
     private static SubString interpretDollar(Context cx, RegExpImpl res,
-                                             String da, int dp, int[] skip)
+                                             String da, int dp, int[] skip,
+                                             SubString parsub)
     {
         char dc;
         int num, tmp;
@@ -421,7 +462,7 @@ public class RegExpImpl implements RegExpProxy {
                 }
             }
             else {  /* ECMA 3, 1-9 or 01-99 */
-                int parenCount = (res.parens == null) ? 0 : res.parens.length;
+                int parenCount = res.parenCount;
                 num = dc - '0';
                 if (num > parenCount)
                     return null;
@@ -441,7 +482,10 @@ public class RegExpImpl implements RegExpProxy {
             /* Adjust num from 1 $n-origin to 0 array-index-origin. */
             num--;
             skip[0] = cp - dp;
-            return res.getParenSubString(num);
+            if (!res.getParenSubString(num, parsub)) {
+                return SubString.emptySubString;
+            }
+            return parsub;
         }
 
         skip[0] = 2;
@@ -451,7 +495,7 @@ public class RegExpImpl implements RegExpProxy {
           case '&':
             return res.lastMatch;
           case '+':
-            return res.lastParen;
+            return res.getLastParen();
           case '`':
             if (version == Context.VERSION_1_2) {
                 /*
@@ -482,13 +526,13 @@ public class RegExpImpl implements RegExpProxy {
         String da = rdata.repstr;
         int dp = rdata.dollar;
         if (dp != -1) {
-            int[] skip = new int[1];
+            int[] skip = rdata.skip;
             do {
                 int len = dp - cp;
-                charBuf.append(da.substring(cp, dp));
+                charBuf.append(da, cp, dp);
                 cp = dp;
                 SubString sub = interpretDollar(cx, regExpImpl, da,
-                                                dp, skip);
+                                                dp, skip, rdata.parsub);
                 if (sub != null) {
                     len = sub.length;
                     if (len > 0) {
@@ -504,18 +548,21 @@ public class RegExpImpl implements RegExpProxy {
         }
         int daL = da.length();
         if (daL > cp) {
-            charBuf.append(da.substring(cp, daL));
+            charBuf.append(da, cp, daL);
         }
     }
 
     String          input;         /* input string to match (perl $_, GC root) */
     boolean         multiline;     /* whether input contains newlines (perl $*) */
-    SubString[]     parens;        /* Vector of SubString; last set of parens
-                                      matched (perl $1, $2) */
+    int             parenCount;    /* number of parens of the last match */
+    long[]          parenSpans;    /* index and length of each paren of the
+                                      last match, index -1 if unmatched
+                                      (perl $1, $2, $+) */
+    char[]          parenChars;    /* input the paren spans refer to */
     SubString       lastMatch;     /* last string matched (perl $&) */
-    SubString       lastParen;     /* last paren matched (perl $+) */
     SubString       leftContext;   /* input to left of last match (perl $`) */
     SubString       rightContext;  /* input to right of last match (perl $') */
+    REGlobalData    globalData;    /* matching stacks kept between matches */
 }
 
 
@@ -538,4 +585,8 @@ final class GlobData
     int           dollar = -1;   /* -1 or index of first $ in repstr */
     StringBuffer  charBuf;       /* result characters, null initially */
     int           leftIndex;     /* leftContext index, always 0 for JS1.2 */
+    int[]         skip = new int[1]; /* do_replace scratch for interpretDollar */
+    SubString     parsub = new SubString(); /* scratch for $1-style parens */
+    Object[]      lambdaArgs;    /* reused lambda arguments or null */
+    RegExpImpl    lambdaRegExpImpl; /* regexp statics seen by the lambda */
 }
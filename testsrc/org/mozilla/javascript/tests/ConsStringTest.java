@@ -0,0 +1,274 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.tests;
+
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.ConsString;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.FunctionObject;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Regression test for strings built by '+': Java host functions and
+ * Java code reading properties or array elements must only see them as
+ * java.lang.String, and Context.javaToJS must keep them JavaScript strings.
+ */
+public class ConsStringTest
+{
+    // Long enough for '+' to build a ConsString
+    static final String BUILD
+        = "var s = ''; for (var i = 0; i != 20; ++i) { s += 'abcdefgh'; }\n";
+
+    public static void main(String[] args) throws Exception
+    {
+        int[] levels = { -1, 0, 9 };
+        for (int i = 0; i != levels.length; ++i) {
+            testHostFunctionArguments(levels[i]);
+            testFunctionObjectArguments(levels[i]);
+            testPropertyValues(levels[i]);
+            testJavaToJS(levels[i]);
+            testHostCharSequence(levels[i]);
+            testDeepTrees(levels[i]);
+        }
+        System.out.println("ConsStringTest: OK");
+    }
+
+    static void testHostFunctionArguments(int optLevel)
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.initStandardObjects();
+            HostFunction host = new HostFunction();
+            ScriptRuntime.setFunctionProtoAndParent(host, scope);
+            ScriptableObject.putProperty(scope, "host", host);
+            String[] calls = {
+                "host(s)", "host(1, s)", "host(1, 2, s)", "host(1, 2, 3, s)",
+                "host.call(null, s)", "host.apply(null, [s])", "new host(s) != null",
+                "var o = { f: host }; o.f(s)",
+                "function direct(x) { return x; }"
+                + " function caller(x) { return direct(x); }"
+                + " direct = host; caller(s)"
+            };
+            for (int i = 0; i != calls.length; ++i) {
+                Object result = cx.evaluateString(scope, BUILD + calls[i],
+                                                  "test", 1, null);
+                check(result == Boolean.TRUE,
+                      calls[i] + " passed a non-String argument");
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    static void testFunctionObjectArguments(int optLevel) throws Exception
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.initStandardObjects();
+            FunctionObject f = new FunctionObject(
+                "isString",
+                ConsStringTest.class.getMethod("isString",
+                                               new Class[] { Object.class }),
+                scope);
+            ScriptableObject.putProperty(scope, "isString", f);
+            Object result = cx.evaluateString(scope, BUILD + "isString(s)",
+                                              "test", 1, null);
+            check(result == Boolean.TRUE,
+                  "FunctionObject received a non-String argument");
+        } finally {
+            Context.exit();
+        }
+    }
+
+    static void testPropertyValues(int optLevel)
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.initStandardObjects();
+            cx.evaluateString(scope, BUILD
+                + "var g = s + 'g';"
+                + " var o = { v: s + 'v' }; o.w = s + 'w';"
+                + " function f(x) { x.w = s + 'w'; } f(o); f(o); f(o);"
+                + " var arr = [s + 'z', 1]; arr[1] = s + 'q';"
+                + " arr.push(s + 'p'); arr[3] = s + 'd';"
+                + " var big = [];"
+                + " for (var i = 0; i != 100; ++i) { big[i] = s + i; }",
+                "test", 1, null);
+            Scriptable o = (Scriptable)scope.get("o", scope);
+            Scriptable arr = (Scriptable)scope.get("arr", scope);
+            Scriptable big = (Scriptable)scope.get("big", scope);
+            checkString(scope.get("g", scope), "global variable");
+            checkString(ScriptableObject.getProperty(scope, "s"),
+                        "getProperty of a global variable");
+            checkString(o.get("v", o), "object literal property");
+            checkString(ScriptableObject.getProperty(o, "v"),
+                        "getProperty of an object literal property");
+            checkString(o.get("w", o), "assigned property");
+            for (int i = 0; i != 4; ++i) {
+                checkString(arr.get(i, arr), "array element " + i);
+                checkString(ScriptableObject.getProperty(arr, i),
+                            "getProperty of array element " + i);
+            }
+            checkString(big.get(99, big), "array element set in a loop");
+        } finally {
+            Context.exit();
+        }
+    }
+
+    static void testJavaToJS(int optLevel)
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.initStandardObjects();
+            String half = "abcdefghabcdefghabcdefghabcdefghabcdefgh";
+            CharSequence s = ConsString.concat(half, half);
+            check(s instanceof ConsString, "concat did not build a ConsString");
+            ScriptableObject.putProperty(scope, "s", s.toString());
+            ScriptableObject.putProperty(scope, "t",
+                                         Context.javaToJS(s, scope));
+            Object result = cx.evaluateString(scope, "typeof t + (t == s)",
+                                              "test", 1, null);
+            check("stringtrue".equals(result),
+                  "javaToJS changed a string into " + result);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public static Object isString(Object arg)
+    {
+        return (arg instanceof String) ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    static void testHostCharSequence(int optLevel)
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.initStandardObjects();
+            // Only String and ConsString are JavaScript strings, other
+            // CharSequences are Java objects missing a javaToJS call
+            ScriptableObject.putProperty(scope, "sb",
+                                         new StringBuilder("abc"));
+            try {
+                cx.evaluateString(scope, "typeof sb", "test", 1, null);
+                throw new RuntimeException("typeof treated a StringBuilder"
+                                           + " as a string");
+            } catch (EvaluatorException ex) {
+                // expected
+            }
+            Object result = cx.evaluateString(scope,
+                "typeof sb.length + (sb == 'abc')", "test", 1, null);
+            check("functionfalse".equals(result),
+                  "a StringBuilder was used as a string: " + result);
+            CharSequence s = ConsString.concat(new StringBuilder("ab"), "c");
+            check("abc".equals(s), "concat of a StringBuilder gave " + s);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    static void testDeepTrees(int optLevel)
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.initStandardObjects();
+            // Appends on both sides, so that flattening has to keep many
+            // pending left operands
+            Object result = cx.evaluateString(scope,
+                "var s = ''; for (var i = 0; i != 5000; ++i) {\n"
+                + "  s = (i % 10) + s + 'abcdefgh';\n"
+                + "}\n"
+                + "s", "test", 1, null);
+            StringBuffer expected = new StringBuffer();
+            for (int i = 0; i != 5000; ++i) {
+                expected.insert(0, i % 10).append("abcdefgh");
+            }
+            checkString(result, "deep tree");
+            check(expected.toString().equals(result),
+                  "flattening a deep tree gave the wrong characters");
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static void checkString(Object value, String what)
+    {
+        check(value instanceof String, what + " is a "
+              + (value == null ? "null" : value.getClass().getName()));
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    /**
+     * Host function that reports whether its last argument is a String.
+     */
+    static class HostFunction extends BaseFunction
+    {
+        public Object call(Context cx, Scriptable scope, Scriptable thisObj,
+                           Object[] args)
+        {
+            Object last = args[args.length - 1];
+            return (last instanceof String) ? Boolean.TRUE : Boolean.FALSE;
+        }
+
+        public Scriptable construct(Context cx, Scriptable scope,
+                                    Object[] args)
+        {
+            if (!(args[0] instanceof String)) {
+                throw new RuntimeException("new host(s) passed a non-String"
+                                           + " argument");
+            }
+            return cx.newObject(scope);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript.tests;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Regression test for Date.parse on the ES5 date time string format: a day
+ * past the end of its month must give NaN instead of rolling over into the
+ * next month, with February following the Gregorian leap year rule.
+ */
+public class DateParseTest
+{
+    // Date.parse argument and the expected time as a Date.UTC expression,
+    // or null for NaN
+    static final String[][] CASES = {
+        { "2009-01-31", "Date.UTC(2009, 0, 31)" },
+        { "2009-02-28", "Date.UTC(2009, 1, 28)" },
+        { "2008-02-29", "Date.UTC(2008, 1, 29)" },
+        { "2000-02-29", "Date.UTC(2000, 1, 29)" },
+        { "2009-04-30", "Date.UTC(2009, 3, 30)" },
+        { "2009-12-31T23:59:59Z", "Date.UTC(2009, 11, 31, 23, 59, 59)" },
+        { "+002008-02-29", "Date.UTC(2008, 1, 29)" },
+        { "2009-02-29", null },
+        { "2009-02-30", null },
+        { "1900-02-29", null },
+        { "2100-02-29", null },
+        { "2009-04-31", null },
+        { "2009-06-31T12:00Z", null },
+        { "2009-01-32", null },
+        { "2009-01-00", null },
+        { "2009-00-10", null },
+        { "2009-13-01", null },
+        { "+002009-02-29", null }
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            for (int i = 0; i != CASES.length; ++i) {
+                String expected = CASES[i][1];
+                if (expected == null) {
+                    expected = "NaN";
+                }
+                Object result = cx.evaluateString(scope,
+                    "var t = Date.parse('" + CASES[i][0] + "'), e = "
+                    + expected + "; t === e || (t !== t && e !== e)",
+                    "DateParseTest", 1, null);
+                if (result != Boolean.TRUE) {
+                    Object actual = cx.evaluateString(scope,
+                        "Date.parse('" + CASES[i][0] + "')",
+                        "DateParseTest", 1, null);
+                    throw new RuntimeException("Date.parse(\""
+                        + CASES[i][0] + "\"): expected " + expected
+                        + ", got " + Context.toString(actual));
+                }
+            }
+        } finally {
+            Context.exit();
+        }
+        System.out.println("DateParseTest: OK");
+    }
+}
@@ -0,0 +1,144 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript.tests;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Random;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+/**
+ * Regression test for number to string conversion: the Grisu3 fast path
+ * of ScriptRuntime.numberToString must give the same strings as
+ * DToA.JS_dtostr, which it falls back on when it cannot prove its digits.
+ */
+public class FastDtoaTest
+{
+    static final String[][] KNOWN = {
+        { "0.1", "0.1" },
+        { "-1.5", "-1.5" },
+        { "0.000001", "0.000001" },
+        { "1e-7", "1e-7" },
+        { "1.2345e-7", "1.2345e-7" },
+        { "123456789012345680000", "123456789012345680000" },
+        { "1e21", "1e+21" },
+        { "1.7976931348623157e308", "1.7976931348623157e+308" },
+        { "2.2250738585072014e-308", "2.2250738585072014e-308" },
+        { "9007199254740993", "9007199254740992" },
+        { "0.30000000000000004", "0.30000000000000004" },
+        { "5e-324", "5e-324" }
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        testKnownValues();
+        testAgainstDToA();
+        System.out.println("FastDtoaTest: OK");
+    }
+
+    static void testKnownValues()
+    {
+        for (int i = 0; i != KNOWN.length; ++i) {
+            double d = Double.parseDouble(KNOWN[i][0]);
+            check(ScriptRuntime.numberToString(d, 10), KNOWN[i][1], d);
+        }
+        check(ScriptRuntime.numberToString(1.0 / 3, 10),
+              "0.3333333333333333", 1.0 / 3);
+    }
+
+    static void testAgainstDToA() throws Exception
+    {
+        // DToA is package private, reach JS_dtostr through reflection
+        Class dtoa = Class.forName("org.mozilla.javascript.DToA");
+        Method dtostr = dtoa.getDeclaredMethod("JS_dtostr",
+            new Class[] { StringBuffer.class, Integer.TYPE, Integer.TYPE,
+                          Double.TYPE });
+        dtostr.setAccessible(true);
+        Field standard = dtoa.getDeclaredField("DTOSTR_STANDARD");
+        standard.setAccessible(true);
+        Integer mode = Integer.valueOf(standard.getInt(null));
+
+        Random random = new Random(20091017L);
+        for (int i = 0; i != 200000; ++i) {
+            double d;
+            switch (i % 4) {
+              case 0:
+                // Any bit pattern
+                d = Double.longBitsToDouble(random.nextLong());
+                break;
+              case 1:
+                // Short decimals, like most values scripts print
+                d = random.nextInt(1000000)
+                    / Math.pow(10, random.nextInt(12));
+                break;
+              case 2:
+                // Neighbours of powers of two
+                d = Math.scalb(1.0, random.nextInt(2000) - 1000);
+                d = (random.nextBoolean()) ? Math.nextUp(d)
+                                           : -Math.nextUp(-d);
+                break;
+              default:
+                d = random.nextDouble() * Math.pow(10, random.nextInt(40));
+                break;
+            }
+            // JS_dtostr gives wrong digits for subnormals
+            if (Double.isNaN(d) || Double.isInfinite(d)
+                || Math.abs(d) < Double.MIN_NORMAL)
+            {
+                continue;
+            }
+            StringBuffer expected = new StringBuffer();
+            dtostr.invoke(null, new Object[] { expected, mode,
+                                               Integer.valueOf(0),
+                                               Double.valueOf(d) });
+            check(ScriptRuntime.numberToString(d, 10), expected.toString(),
+                  d);
+        }
+    }
+
+    static void check(String actual, String expected, double d)
+    {
+        if (!expected.equals(actual)) {
+            throw new RuntimeException("numberToString("
+                + Long.toHexString(Double.doubleToRawLongBits(d))
+                + "): expected " + expected + ", got " + actual);
+        }
+    }
+}
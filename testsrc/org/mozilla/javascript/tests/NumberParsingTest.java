@@ -0,0 +1,196 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript.tests;
+
+import java.util.Random;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Regression test for ToNumber and parseFloat on strings, which share one
+ * decimal scanner: edge cases of the syntax, values on both sides of the
+ * direct conversion of short literals, and random literals compared with
+ * Double.parseDouble.
+ */
+public class NumberParsingTest
+{
+    static final double NaN = Double.NaN;
+
+    // ToNumber input and expected value
+    static final Object[][] TO_NUMBER = {
+        { "", 0.0 },
+        { " \t\n", 0.0 },
+        { "0", 0.0 },
+        { "-0", -0.0 },
+        { "+1", 1.0 },
+        { " 12 ", 12.0 },
+        { "007", 7.0 },
+        { ".5", 0.5 },
+        { "5.", 5.0 },
+        { "-.5e1", -5.0 },
+        { "1.5E3", 1500.0 },
+        { "1e-3", 0.001 },
+        { "0x1F", 31.0 },
+        { "-0x10", -16.0 },
+        { "Infinity", Double.POSITIVE_INFINITY },
+        { "-Infinity", Double.NEGATIVE_INFINITY },
+        { "+Infinity", Double.POSITIVE_INFINITY },
+        { "1e400", Double.POSITIVE_INFINITY },
+        { "1e-400", 0.0 },
+        { "-1e-400", -0.0 },
+        { "123456789", 123456789.0 },
+        { "1234567890", 1234567890.0 },
+        { "999999999999999999", 999999999999999999.0 },
+        { "9007199254740993", 9007199254740992.0 },
+        { "0.1", 0.1 },
+        { "1e22", 1e22 },
+        { "1e23", 1e23 },
+        { "123456789012345678e-30", 123456789012345678e-30 },
+        { "2.2250738585072011e-308", 2.2250738585072011e-308 },
+        { ".", NaN },
+        { "e1", NaN },
+        { "1e", NaN },
+        { "1e+", NaN },
+        { "+", NaN },
+        { "--1", NaN },
+        { "1 2", NaN },
+        { "1d", NaN },
+        { "1f", NaN },
+        { "infinity", NaN },
+        { "Infinityx", NaN },
+        { "NaN", NaN },
+        { "0x", NaN },
+        { "1_000", NaN }
+    };
+
+    // parseFloat argument, as a script literal, and expected value
+    static final Object[][] PARSE_FLOAT = {
+        { "'3.14abc'", 3.14 },
+        { "'  -.5x'", -0.5 },
+        { "'1e'", 1.0 },
+        { "'7e+'", 7.0 },
+        { "'5E.3'", 5.0 },
+        { "'1e2e3'", 100.0 },
+        { "'Infinityx'", Double.POSITIVE_INFINITY },
+        { "'-0'", -0.0 },
+        { "'0x10'", 0.0 },
+        { "'1d'", 1.0 },
+        { "'.e1'", NaN },
+        { "'abc'", NaN },
+        { "''", NaN },
+        { "'-'", NaN }
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        testToNumber();
+        testParseFloat();
+        testRandomLiterals();
+        System.out.println("NumberParsingTest: OK");
+    }
+
+    static void testToNumber()
+    {
+        for (int i = 0; i != TO_NUMBER.length; ++i) {
+            String s = (String)TO_NUMBER[i][0];
+            check("ToNumber", s, ScriptRuntime.toNumber(s),
+                  ((Double)TO_NUMBER[i][1]).doubleValue());
+        }
+    }
+
+    static void testParseFloat()
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            for (int i = 0; i != PARSE_FLOAT.length; ++i) {
+                String arg = (String)PARSE_FLOAT[i][0];
+                Object result = cx.evaluateString(scope,
+                    "parseFloat(" + arg + ")", "parseFloat", 1, null);
+                check("parseFloat", arg, Context.toNumber(result),
+                      ((Double)PARSE_FLOAT[i][1]).doubleValue());
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    static void testRandomLiterals()
+    {
+        Random random = new Random(20091017L);
+        for (int i = 0; i != 100000; ++i) {
+            StringBuffer sb = new StringBuffer();
+            if (random.nextInt(4) == 0) {
+                sb.append('-');
+            }
+            // Up to 25 digits, so both sides of the 18 digit limit of the
+            // direct conversion are covered
+            int digits = 1 + random.nextInt(25);
+            int point = random.nextInt(digits + 2) - 1;
+            for (int j = 0; j != digits; ++j) {
+                if (j == point) {
+                    sb.append('.');
+                }
+                sb.append((char)('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                sb.append('e');
+                sb.append(random.nextInt(700) - 350);
+            }
+            String s = sb.toString();
+            check("ToNumber", s, ScriptRuntime.toNumber(s),
+                  Double.parseDouble(s));
+        }
+    }
+
+    static void check(String what, String input, double actual,
+                      double expected)
+    {
+        // Compare bits so that NaN equals NaN and -0 differs from 0
+        if (Double.doubleToLongBits(actual)
+            != Double.doubleToLongBits(expected))
+        {
+            throw new RuntimeException(what + "(\"" + input
+                + "\"): expected " + expected + ", got " + actual);
+        }
+    }
+}
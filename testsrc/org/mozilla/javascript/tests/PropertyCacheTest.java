@@ -0,0 +1,185 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.tests;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Regression test for the interpreter's property access cache: a site
+ * whose cached receiver has been garbage collected must not match a null
+ * receiver, and a site that sees a new receiver on every call but hits
+ * within the call must keep caching.
+ */
+public class PropertyCacheTest
+{
+    public static void main(String[] args) throws Exception
+    {
+        testGetAfterReceiverCollected();
+        testPutAfterReceiverCollected();
+        testNewReceiverPerCall();
+        System.out.println("PropertyCacheTest: OK");
+    }
+
+    static void testGetAfterReceiverCollected()
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(-1);
+            Scriptable scope = cx.initStandardObjects();
+            cx.evaluateString(scope, "function f(o) { return o.x; }",
+                              "test", 1, null);
+            collect(cx.evaluateString(scope,
+                "var o = new Object(); o.x = 42;"
+                + " f(o); f(o); f(o); var r = o; o = null; r",
+                "test", 1, null), cx, scope);
+            expectTypeError(cx, scope, "f(null)");
+        } finally {
+            Context.exit();
+        }
+    }
+
+    static void testPutAfterReceiverCollected()
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(-1);
+            Scriptable scope = cx.initStandardObjects();
+            cx.evaluateString(scope, "function g(o, v) { o.y = v; }",
+                              "test", 1, null);
+            collect(cx.evaluateString(scope,
+                "var o = new Object(); o.y = 1;"
+                + " g(o, 2); g(o, 3); g(o, 4); var r = o; o = null; r",
+                "test", 1, null), cx, scope);
+            expectTypeError(cx, scope, "g(null, 3)");
+        } finally {
+            Context.exit();
+        }
+    }
+
+    static void testNewReceiverPerCall() throws Exception
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(-1);
+            Scriptable scope = cx.initStandardObjects();
+            // The o.x site of f hits twice per call, the one of g never
+            cx.evaluateString(scope,
+                "function f(o) {\n"
+                + "  var s = 0; for (var i = 0; i != 3; ++i) s += o.x;\n"
+                + "  return s;\n"
+                + "}\n"
+                + "function g(o) { return o.x; }\n"
+                + "for (var n = 0; n != 50; ++n) {\n"
+                + "  var o = new Object(); o.x = n; f(o); g(o);\n"
+                + "}", "test", 1, null);
+            if (countMegamorphicSites(scope, "f") != 0) {
+                throw new RuntimeException("f stopped caching");
+            }
+            if (countMegamorphicSites(scope, "g") != 1) {
+                throw new RuntimeException("g kept caching");
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Return the number of cache sites of an interpreted function that
+     * gave up caching. The cache is internal, so reach it by reflection.
+     */
+    private static int countMegamorphicSites(Scriptable scope, String name)
+        throws Exception
+    {
+        Object fun = scope.get(name, scope);
+        Field idataField = fun.getClass().getDeclaredField("idata");
+        idataField.setAccessible(true);
+        Object idata = idataField.get(fun);
+        Field cacheField = idata.getClass()
+                               .getDeclaredField("itsPropertyCache");
+        cacheField.setAccessible(true);
+        Object[] cache = (Object[])cacheField.get(idata);
+        int n = 0;
+        for (int i = 0; i != cache.length; ++i) {
+            // The megamorphic marker is a plain Object
+            if (cache[i] != null && cache[i].getClass() == Object.class) {
+                ++n;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Drop every script reference to obj and wait until it is collected.
+     */
+    private static void collect(Object obj, Context cx, Scriptable scope)
+    {
+        WeakReference ref = new WeakReference(obj);
+        obj = null;
+        cx.evaluateString(scope, "r = null;", "test", 1, null);
+        for (int i = 0; ref.get() != null; ++i) {
+            if (i == 100) {
+                throw new RuntimeException("Receiver was not collected");
+            }
+            System.gc();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) { }
+        }
+    }
+
+    private static void expectTypeError(Context cx, Scriptable scope,
+                                        String source)
+    {
+        try {
+            Object result = cx.evaluateString(scope, source, "test", 1, null);
+            throw new RuntimeException(source + " returned "
+                                       + Context.toString(result)
+                                       + " instead of throwing TypeError");
+        } catch (EcmaError ex) {
+            if (!"TypeError".equals(ex.getName())) {
+                throw ex;
+            }
+        }
+    }
+}
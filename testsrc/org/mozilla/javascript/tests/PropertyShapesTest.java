@@ -0,0 +1,114 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript.tests;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Regression test for objects in shape mode: for-in must list their
+ * properties in the same order as without shapes, at every optimization
+ * level and after the object returns to the hash table.
+ */
+public class PropertyShapesTest
+{
+    static final String SCRIPT =
+        "function keys(o) {\n"
+        + "  var r = []; for (var k in o) r.push(k); return r.join();\n"
+        + "}\n"
+        + "var out = [];\n"
+        + "var o = { zeta: 1, alpha: 2, mid: 3 }; o.b = 4;\n"
+        + "out.push(keys(o));\n"
+        + "delete o.mid; o.mid = 5;\n"
+        + "out.push(keys(o));\n"
+        + "var p = {};\n"
+        + "for (var i = 0; i != 20; ++i) p['k' + (i * 7 % 20)] = i;\n"
+        + "out.push(keys(p));\n"
+        + "function C() { this.q = 1; this.a = 2; this.zz = 3; this.m = 4;"
+        + " this.c = 5; this.d = 6; this.e = 7; this.f = 8; this.g = 9; }\n"
+        + "var c = new C();\n"
+        + "out.push(keys(c));\n"
+        + "c.h = 1; delete c.a;\n"
+        + "out.push(keys(c));\n"
+        + "out.join(' | ')";
+
+    public static void main(String[] args) throws Exception
+    {
+        String expected = run(false, -1);
+        int[] levels = { -1, 0, 9 };
+        for (int i = 0; i != levels.length; ++i) {
+            check(run(false, levels[i]), expected, false, levels[i]);
+            check(run(true, levels[i]), expected, true, levels[i]);
+        }
+        System.out.println("PropertyShapesTest: OK");
+    }
+
+    static String run(final boolean shapes, int optLevel)
+    {
+        ContextFactory factory = new ContextFactory() {
+            protected boolean hasFeature(Context cx, int featureIndex)
+            {
+                if (featureIndex == Context.FEATURE_PROPERTY_SHAPES) {
+                    return shapes;
+                }
+                return super.hasFeature(cx, featureIndex);
+            }
+        };
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, SCRIPT,
+                                                      "test", 1, null));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static void check(String actual, String expected,
+                              boolean shapes, int optLevel)
+    {
+        if (!expected.equals(actual)) {
+            throw new RuntimeException("Order with shapes " + shapes
+                                       + " at opt " + optLevel + ": "
+                                       + actual + ", expected " + expected);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript.tests;
+
+import java.lang.reflect.Field;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.regexp.CompiledRegExp;
+
+/**
+ * Regression test for regular expressions translated to JVM bytecode: once
+ * a pattern has run more than CompiledRegExp.getCompileThreshold() times,
+ * exec, replace, split and the RegExp statics must give the same results
+ * as the interpreter gives with the translation disabled.
+ * <p>
+ * (a*?)+?c is left out: the interpreter does not terminate on it.
+ */
+public class RegExpCompileTest
+{
+    // Pattern source, flags and whether RegExpCodegen translates it. The
+    // others, with alternatives, quantified groups, back references or
+    // lookahead, stay interpreted; they cover unmatched captures and the
+    // matching loop shared by both
+    static final String[][] PATTERNS = {
+        { "a+?b", "g", "true" },
+        { "(a+)(b*)", "g", "true" },
+        { "(\\\\w+)\\\\s(\\\\w+)", "", "true" },
+        { "x*", "g", "true" },
+        { "(a|ab)(c|bcd)(d*)", "", "false" },
+        { "^abc$", "m", "true" },
+        { "^abc$", "gim", "true" },
+        { "^\\\\w+", "gm", "true" },
+        { "\\\\w+$", "gm", "true" },
+        { "\\\\bfoo\\\\b", "g", "true" },
+        { "\\\\Bo", "g", "true" },
+        { "[a-z]+", "gi", "true" },
+        { "(x)?y", "g", "false" },
+        { "(a)|(b)", "g", "false" },
+        { "\\\\d{2,4}?", "g", "true" },
+        { "\\\\d{2,4}", "g", "true" },
+        { "(?:ab){2,}", "gi", "false" },
+        { "(.)\\\\1", "g", "false" },
+        { "[^,\\\\n]+", "g", "true" },
+        { "(\\\\d+)-(\\\\d+)", "g", "true" },
+        { "o{1,2}?", "g", "true" },
+        { "a(?=b)", "g", "false" },
+        { "a(?!b)", "gi", "false" },
+        { "^$", "gm", "true" },
+        { "[\\\\s\\\\S]*?c", "", "true" },
+        { "(a*)*b", "", "false" },
+        { "(a*?)+c", "", "false" },
+        { "(\\\\w)(\\\\w)?(\\\\w)?", "g", "false" },
+        { "ABC", "gi", "true" },
+        { "fo+", "g", "true" }
+    };
+
+    static final String[] INPUTS = {
+        "aab ab abbb",
+        "foo food foo.bar\\nfoo",
+        "abc\\nABC\\nabc",
+        "12-345 6789-0 1",
+        "xyz y xy",
+        "AbAbab abab",
+        "",
+        "aaac, a,,b\\nbb"
+    };
+
+    static final String PROBE =
+        "function str(a) {\n"
+        + "  var r = [];\n"
+        + "  for (var i = 0; i != a.length; ++i)\n"
+        + "    r.push(a[i] === undefined ? 'U' : a[i]);\n"
+        + "  return r.join('/');\n"
+        + "}\n"
+        + "function statics() {\n"
+        + "  return [RegExp.$1, RegExp.$2, RegExp.lastMatch,\n"
+        + "          RegExp.lastParen, RegExp.leftContext,\n"
+        + "          RegExp.rightContext].join('|');\n"
+        + "}\n"
+        + "function probe(re, s) {\n"
+        + "  var out = [], m, n = 0;\n"
+        + "  re.lastIndex = 0;\n"
+        + "  do {\n"
+        + "    m = re.exec(s);\n"
+        + "    out.push(m == null ? 'null'\n"
+        + "             : m.index + ':' + str(m) + ':' + statics());\n"
+        + "    if (m != null && m[0].length == 0) ++re.lastIndex;\n"
+        + "  } while (re.global && m != null && ++n != 50);\n"
+        + "  out.push(re.test(s) + ':' + statics());\n"
+        + "  out.push(s.replace(re, '[$1|$2|$&|$`|$\\']'));\n"
+        + "  out.push(s.replace(re, function() {\n"
+        + "    return '<' + str(arguments) + '>';\n"
+        + "  }));\n"
+        + "  out.push(str(s.split(re)) + ':' + statics());\n"
+        + "  return out.join('\\n');\n"
+        + "}\n"
+        + "function probeAll(res, inputs) {\n"
+        + "  var out = [];\n"
+        + "  for (var i = 0; i != res.length; ++i)\n"
+        + "    for (var j = 0; j != inputs.length; ++j)\n"
+        + "      out.push(probe(res[i], inputs[j]));\n"
+        + "  return out;\n"
+        + "}\n";
+
+    public static void main(String[] args) throws Exception
+    {
+        int threshold = CompiledRegExp.getCompileThreshold();
+        try {
+            CompiledRegExp.setCompileThreshold(0);
+            String[] expected = run(1, false);
+            CompiledRegExp.setCompileThreshold(4);
+            String[] actual = run(CompiledRegExp.getCompileThreshold() + 2,
+                                  true);
+            for (int i = 0; i != expected.length; ++i) {
+                if (!expected[i].equals(actual[i])) {
+                    int p = i / INPUTS.length;
+                    throw new RuntimeException("/" + PATTERNS[p][0] + "/"
+                        + PATTERNS[p][1] + " on \""
+                        + INPUTS[i % INPUTS.length] + "\":\nexpected\n"
+                        + expected[i] + "\ngot\n" + actual[i]);
+                }
+            }
+        } finally {
+            CompiledRegExp.setCompileThreshold(threshold);
+        }
+        System.out.println("RegExpCompileTest: OK");
+    }
+
+    /**
+     * Probe every pattern on every input the given number of times and
+     * return the results of the last round, which must equal all others.
+     */
+    static String[] run(int rounds, boolean checkCompiled) throws Exception
+    {
+        Context cx = new ContextFactory().enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            StringBuffer sb = new StringBuffer(PROBE);
+            sb.append("var res = [");
+            for (int i = 0; i != PATTERNS.length; ++i) {
+                sb.append(i == 0 ? "" : ", ").append("new RegExp('")
+                  .append(PATTERNS[i][0]).append("', '")
+                  .append(PATTERNS[i][1]).append("')");
+            }
+            sb.append("];\nvar inputs = [");
+            for (int i = 0; i != INPUTS.length; ++i) {
+                sb.append(i == 0 ? "'" : ", '").append(INPUTS[i])
+                  .append("'");
+            }
+            sb.append("];\n");
+            cx.evaluateString(scope, sb.toString(), "test", 1, null);
+
+            String[] first = null;
+            for (int round = 0; round != rounds; ++round) {
+                Scriptable out = (Scriptable)cx.evaluateString(scope,
+                    "probeAll(res, inputs)", "test", 1, null);
+                int n = PATTERNS.length * INPUTS.length;
+                String[] results = new String[n];
+                for (int i = 0; i != n; ++i) {
+                    results[i] = Context.toString(out.get(i, out));
+                }
+                if (first == null) {
+                    first = results;
+                } else {
+                    for (int i = 0; i != n; ++i) {
+                        if (!first[i].equals(results[i])) {
+                            throw new RuntimeException("Round " + round
+                                + " of /" + PATTERNS[i / INPUTS.length][0]
+                                + "/ changed:\n" + first[i] + "\ngot\n"
+                                + results[i]);
+                        }
+                    }
+                }
+            }
+            if (checkCompiled) {
+                checkCompiled((Scriptable)scope.get("res", scope));
+            }
+            return first;
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Check that exactly the patterns marked as translated were, so that
+     * the comparison did test the generated matchers. The fields are
+     * internal, so reach them by reflection.
+     */
+    private static void checkCompiled(Scriptable res) throws Exception
+    {
+        for (int i = 0; i != PATTERNS.length; ++i) {
+            Object regexp = res.get(i, res);
+            Field reField = regexp.getClass().getDeclaredField("re");
+            reField.setAccessible(true);
+            Object re = reField.get(regexp);
+            Field matcherField = re.getClass().getDeclaredField("matcher");
+            matcherField.setAccessible(true);
+            boolean translated = (matcherField.get(re) != null);
+            if (translated != "true".equals(PATTERNS[i][2])) {
+                throw new RuntimeException("/" + PATTERNS[i][0] + "/ was "
+                                           + (translated ? "" : "not ")
+                                           + "translated");
+            }
+        }
+    }
+}